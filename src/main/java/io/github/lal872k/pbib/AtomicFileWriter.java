@@ -0,0 +1,280 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Saves a file without ever leaving it half written. The contents are written to a buffered
+ * temporary file in the same folder, forced onto the disk and then renamed over the file in 
+ * one step, so if anything goes wrong while writing the old file is still there.
+ * <p>
+ * Before the file is replaced the old version can be kept as a backup, with the most recent 
+ * backup ending in <code>.bak1</code>. How long the write took and how fast it was is sent 
+ * to <code>{@link lal.pbib.BibConsole#debugln(String)}</code>.
+ * @author L. Arthur Lewis II
+ */
+public final class AtomicFileWriter {
+    
+    private static final int BUFFER_SIZE = 64*1024;
+    
+    private final File file;
+    
+    private int backups;
+    
+    private long lastBytes;
+    private long lastNanos;
+    
+    /**
+     * writes the contents of a file.
+     */
+    public interface FileContents {
+        /**
+         * @param out where the contents are written, this doesn't need to be closed.
+         * @throws IOException writing issue.
+         */
+        public void writeTo(OutputStream out) throws IOException;
+    }
+    
+    /**
+     * @param file the file that will be replaced.
+     */
+    public AtomicFileWriter(File file){
+        this.file = file.getAbsoluteFile();
+    }
+    
+    /**
+     * writes the file.
+     * @param contents what is written to the file.
+     * @throws IOException writing issue, the old file is left as it was.
+     */
+    public void write(FileContents contents) throws IOException {
+        File folder = file.getParentFile();
+        File temp = newTempFile(folder);
+        boolean moved = false;
+        long start = System.nanoTime();
+        try {
+            long bytes;
+            try (FileOutputStream fileOut = new FileOutputStream(temp)){
+                CountingOutputStream out = new CountingOutputStream(
+                        new BufferedOutputStream(fileOut, BUFFER_SIZE));
+                contents.writeTo(out);
+                out.flush();
+                // make sure it is on the disk before it replaces the old file
+                fileOut.getFD().sync();
+                bytes = out.count;
+            }
+            
+            if (file.exists()){
+                copyPermissions(file, temp);
+                if (backups>0){
+                    backup();
+                }
+            }
+            
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, 
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                BibConsole.debugln("Atomic rename isn't supported here, replacing "+
+                        file.getName()+" normally.");
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            syncFolder(folder);
+            
+            lastBytes = bytes;
+            lastNanos = System.nanoTime()-start;
+            report();
+        } finally {
+            if (!moved){
+                temp.delete();
+            }
+        }
+    }
+    
+    /**
+     * moves each backup back one place and makes the old file the newest backup. A hard link 
+     * is used when possible so the old file doesn't have to be copied.
+     */
+    private void backup() throws IOException {
+        File oldest = getBackup(backups);
+        Files.deleteIfExists(oldest.toPath());
+        for (int q = backups-1; q >= 1; q--){
+            File backup = getBackup(q);
+            if (backup.exists()){
+                Files.move(backup.toPath(), getBackup(q+1).toPath(), 
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        File newest = getBackup(1);
+        try {
+            Files.createLink(newest.toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException ex) {
+            Files.copy(file.toPath(), newest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * makes an empty temporary file next to the file. Unlike 
+     * <code>File.createTempFile</code> it gets the same permissions as any new file, so a 
+     * file that didn't exist before isn't left readable only by its owner.
+     */
+    private File newTempFile(File folder) throws IOException {
+        while (true){
+            File temp = new File(folder, "."+file.getName()+"."+
+                    Long.toHexString(ThreadLocalRandom.current().nextLong())+".tmp");
+            if (temp.createNewFile()){
+                return temp;
+            }
+        }
+    }
+    
+    /**
+     * gives the temporary file the permissions of the file it replaces, since temporary 
+     * files are made so only the owner can read them. Where the permissions can't be changed
+     * the temporary file keeps its own.
+     */
+    private static void copyPermissions(File from, File to){
+        PosixFileAttributeView target = Files.getFileAttributeView(to.toPath(), 
+                PosixFileAttributeView.class);
+        if (target==null){
+            // not a posix file system, where temporary files get the normal permissions
+            return;
+        }
+        try {
+            PosixFileAttributes attributes = Files.readAttributes(from.toPath(), 
+                    PosixFileAttributes.class);
+            target.setPermissions(attributes.permissions());
+            try {
+                target.setGroup(attributes.group());
+            } catch (IOException ex) {
+                // only allowed for groups the user is in
+            }
+        } catch (IOException | UnsupportedOperationException ex) {
+            BibConsole.debugln("Unable to copy the permissions of "+from.getName()+": "+ex.getMessage());
+        }
+    }
+    
+    /**
+     * makes the rename itself permanent, this isn't possible on every system so any issue is 
+     * ignored.
+     */
+    private static void syncFolder(File folder){
+        try (FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ)){
+            channel.force(true);
+        } catch (IOException ex) {
+            // not supported for folders on some systems
+        }
+    }
+    
+    private void report(){
+        double millis = lastNanos/1000000.0;
+        double kilobytesPerSecond = millis==0 ? 0 : (lastBytes/1024.0)/(millis/1000.0);
+        BibConsole.debugln(String.format("Saved %s: %d bytes in %.1f ms (%.0f KB/s).", 
+                file.getName(), lastBytes, millis, kilobytesPerSecond));
+    }
+    
+    /**
+     * @param number which backup, 1 is the newest.
+     * @return the file used for that backup.
+     */
+    public File getBackup(int number){
+        return new File(file.getParentFile(), file.getName()+".bak"+number);
+    }
+    
+    /**
+     * @param backups how many old versions of the file to keep, 0 to not keep any.
+     */
+    public void setBackups(int backups){
+        this.backups = Math.max(backups, 0);
+    }
+    
+    public int getBackups(){
+        return backups;
+    }
+    
+    /**
+     * @return number of bytes written by the last write.
+     */
+    public long getLastBytes(){
+        return lastBytes;
+    }
+    
+    /**
+     * @return how long the last write took in nanoseconds, including the rename.
+     */
+    public long getLastNanos(){
+        return lastNanos;
+    }
+    
+    public File getFile(){
+        return file;
+    }
+    
+    /**
+     * counts the bytes written and doesn't close the file, so it can still be forced onto the
+     * disk after the contents are done.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        
+        private long count;
+        
+        CountingOutputStream(OutputStream out){
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    
+    }
+
+}
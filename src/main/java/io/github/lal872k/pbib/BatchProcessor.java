@@ -0,0 +1,379 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import nu.xom.Builder;
+import nu.xom.Document;
+import nu.xom.Element;
+import nu.xom.Elements;
+import nu.xom.ParsingException;
+
+/**
+ * Adds bibliographies and footnotes to many documents without any windows. The documents and
+ * their citations are read from a manifest and each document is done on its own thread from
+ * a pool with a fixed number of threads.
+ * <p>
+ * The manifest looks like this, paths are relative to the manifest and the attributes of 
+ * <code>batch</code> are optional:
+ * <pre>
+ * &lt;batch threads="4" streaming="true" backups="1"&gt;
+ *     &lt;document path="paper.docx" bibliography="true"&gt;
+ *         &lt;citation name="Smith" category="Books" type="Single Author" hand="primary"&gt;
+ *             &lt;field name="author" val="Smith, John"/&gt;
+ *             &lt;footnote pos="120"/&gt;
+ *         &lt;/citation&gt;
+ *     &lt;/document&gt;
+ * &lt;/batch&gt;
+ * </pre>
+ * @author L. Arthur Lewis II
+ */
+public final class BatchProcessor {
+    
+    private final SourceLibrary library;
+    
+    private int threads;
+    private DocumentSession.Mode mode;
+    private int backups;
+    
+    /**
+     * the changes to make to one document.
+     */
+    public static final class Job {
+        
+        private final File file;
+        private final Citation[] bibliography;
+        private final Footnote[] footnotes;
+        
+        /**
+         * @param file the document.
+         * @param bibliography citations for the bibliography, or null for no bibliography.
+         * @param footnotes footnotes to add.
+         */
+        public Job(File file, Citation[] bibliography, Footnote[] footnotes){
+            this.file = file;
+            this.bibliography = bibliography;
+            this.footnotes = footnotes;
+        }
+        
+        public File getFile(){
+            return file;
+        }
+        
+        public Citation[] getBibliography(){
+            return bibliography;
+        }
+        
+        public Footnote[] getFootnotes(){
+            return footnotes;
+        }
+    
+    }
+    
+    /**
+     * how one document went.
+     */
+    public static final class Result {
+        
+        private final Job job;
+        private final long nanos;
+        private final String error;
+        
+        Result(Job job, long nanos, String error){
+            this.job = job;
+            this.nanos = nanos;
+            this.error = error;
+        }
+        
+        public Job getJob(){
+            return job;
+        }
+        
+        /**
+         * @return how long the document took, including loading and saving.
+         */
+        public long getNanos(){
+            return nanos;
+        }
+        
+        /**
+         * @return the error message, or null if it worked.
+         */
+        public String getError(){
+            return error;
+        }
+        
+        public boolean succeeded(){
+            return error==null;
+        }
+    
+    }
+    
+    /**
+     * @param library library the source types in the manifest are looked up in.
+     */
+    public BatchProcessor(SourceLibrary library){
+        this.library = library;
+        threads = Runtime.getRuntime().availableProcessors();
+        mode = DocumentSession.Mode.IN_MEMORY;
+    }
+    
+    /**
+     * reads the documents and citations from a manifest. Settings on the <code>batch</code>
+     * element replace the current ones, entries that have problems are skipped. A document 
+     * can only be listed once since the jobs run at the same time, so any later entry for the
+     * same file is skipped too.
+     * @param manifest the manifest file.
+     * @return the documents to change.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    public ArrayList<Job> readManifest(File manifest) throws ParsingException, IOException {
+        BibConsole.println("Reading batch manifest: "+manifest.getName());
+        File folder = manifest.getAbsoluteFile().getParentFile();
+        
+        Builder build = new Builder();
+        Document doc = build.build(manifest);
+        Element root = doc.getRootElement();
+        
+        if (root.getAttribute("threads")!=null){
+            setThreads(Integer.parseInt(root.getAttributeValue("threads")));
+        }
+        if (root.getAttribute("streaming")!=null){
+            setMode(root.getAttributeValue("streaming").toLowerCase().equals("true") ? 
+                    DocumentSession.Mode.STREAMING : DocumentSession.Mode.IN_MEMORY);
+        }
+        if (root.getAttribute("backups")!=null){
+            setBackups(Integer.parseInt(root.getAttributeValue("backups")));
+        }
+        
+        ArrayList<Job> jobs = new ArrayList();
+        HashSet<File> files = new HashSet();
+        Elements documents = root.getChildElements("document");
+        for (int q = 0; q < documents.size(); q++){
+            Element document = documents.get(q);
+            String path = document.getAttributeValue("path");
+            if (path==null){
+                BibConsole.printlnError("Document #"+(q+1)+" is missing a path attribute.");
+                continue;
+            }
+            File file = new File(path);
+            if (!file.isAbsolute()){
+                file = new File(folder, path);
+            }
+            if (!files.add(file.getCanonicalFile())){
+                BibConsole.printlnError("Document #"+(q+1)+" ("+path+") is already in the "
+                        + "manifest, put all of its citations in one document element.");
+                continue;
+            }
+            
+            ArrayList<Citation> cites = new ArrayList();
+            ArrayList<Footnote> footnotes = new ArrayList();
+            Elements citations = document.getChildElements("citation");
+            for (int w = 0; w < citations.size(); w++){
+                Citation cite = readCitation(citations.get(w), path, w);
+                if (cite==null){
+                    continue;
+                }
+                cites.add(cite);
+                Elements notes = citations.get(w).getChildElements("footnote");
+                for (int e = 0; e < notes.size(); e++){
+                    try {
+                        int pos = Integer.parseInt(notes.get(e).getAttributeValue("pos"));
+                        footnotes.add(new Footnote(cite, pos));
+                    } catch (NumberFormatException ex) {
+                        BibConsole.printlnError("Footnote #"+(e+1)+" of "+cite.getName()+
+                                " in "+path+" doesn't have a valid pos attribute.");
+                    }
+                }
+            }
+            
+            boolean bibliography = !"false".equals(document.getAttributeValue("bibliography"));
+            jobs.add(new Job(file, bibliography && !cites.isEmpty() ? 
+                    cites.toArray(new Citation[0]) : null, footnotes.toArray(new Footnote[0])));
+        }
+        return jobs;
+    }
+    
+    /**
+     * @return the citation, or null if there was a problem with it.
+     */
+    private Citation readCitation(Element citation, String path, int index){
+        String category = citation.getAttributeValue("category");
+        String type = citation.getAttributeValue("type");
+        String name = citation.getAttributeValue("name");
+        if (name==null){
+            name = "Citation #"+(index+1);
+        }
+        if (category==null || type==null){
+            BibConsole.printlnError(name+" in "+path+" is missing a category or type attribute.");
+            return null;
+        }
+        SourceCategory sourceCategory = library.getSource(category);
+        Source sourceType = sourceCategory==null ? null : sourceCategory.getSourceType(type);
+        if (sourceType==null){
+            BibConsole.printlnError(name+" in "+path+" uses an unknown source type: "+
+                    category+" / "+type);
+            return null;
+        }
+        
+        HashMap<String, String> values = new HashMap();
+        Elements fields = citation.getChildElements("field");
+        for (int q = 0; q < fields.size(); q++){
+            Element field = fields.get(q);
+            String fieldName = field.getAttributeValue("name");
+            String value = field.getAttributeValue("val");
+            if (fieldName==null || value==null){
+                BibConsole.printlnError("Field #"+(q+1)+" of "+name+" in "+path+
+                        " is missing a name or val attribute.");
+                continue;
+            }
+            values.put(fieldName, value);
+        }
+        
+        Citation.TypeOfSource hand = "secondary".equalsIgnoreCase(
+                citation.getAttributeValue("hand")) ? 
+                Citation.TypeOfSource.SECONDARY : Citation.TypeOfSource.PRIMARY;
+        return new Citation(name, sourceType.getFilledCopy(values), hand);
+    }
+    
+    /**
+     * changes all of the documents and prints how long each one took.
+     * @param jobs the documents to change.
+     * @return how each document went, in the same order as the jobs.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public ArrayList<Result> run(List<Job> jobs) throws InterruptedException {
+        BibConsole.println("Processing "+jobs.size()+" document(s) on "+threads+" thread(s)...");
+        ArrayList<Callable<Result>> tasks = new ArrayList(jobs.size());
+        for (Job job : jobs){
+            tasks.add(() -> process(job));
+        }
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Result> results = new ArrayList(jobs.size());
+        try {
+            List<Future<Result>> futures = pool.invokeAll(tasks);
+            for (int q = 0; q < futures.size(); q++){
+                try {
+                    results.add(futures.get(q).get());
+                } catch (ExecutionException ex) {
+                    results.add(new Result(jobs.get(q), 0, String.valueOf(ex.getCause())));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+    
+    private Result process(Job job){
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            DocumentSession session = new DocumentSession(job.getFile(), mode);
+            session.setBackups(backups);
+            session.queueFootnotes(job.getFootnotes());
+            if (job.getBibliography()!=null){
+                session.queueBibliography(job.getBibliography());
+            }
+            session.commit();
+        } catch (IOException | RuntimeException ex) {
+            error = ex.toString();
+        }
+        Result result = new Result(job, System.nanoTime()-start, error);
+        int citations = job.getBibliography()==null ? 0 : job.getBibliography().length;
+        BibConsole.println(String.format("[%s] %s %.1f ms (%d citation(s), %d footnote(s))%s", 
+                result.succeeded() ? "done" : "FAILED", job.getFile().getName(), 
+                result.getNanos()/1000000.0, citations, job.getFootnotes().length, 
+                result.succeeded() ? "" : ": "+error));
+        return result;
+    }
+    
+    /**
+     * prints how many documents worked and how long they took.
+     * @param results results from <code>{@link lal.pbib.BatchProcessor#run(List)}</code>.
+     * @param totalNanos how long the whole batch took.
+     */
+    public static void printSummary(List<Result> results, long totalNanos){
+        int failed = 0;
+        long sum = 0;
+        Result slowest = null;
+        for (Result result : results){
+            if (!result.succeeded()){
+                failed++;
+            }
+            sum += result.getNanos();
+            if (slowest==null || result.getNanos()>slowest.getNanos()){
+                slowest = result;
+            }
+        }
+        BibConsole.println(String.format("Processed %d document(s) in %.1f ms: %d succeeded, "+
+                "%d failed.", results.size(), totalNanos/1000000.0, results.size()-failed, 
+                failed));
+        if (slowest!=null){
+            BibConsole.println(String.format("Average %.1f ms per document, slowest was %s "+
+                    "at %.1f ms.", sum/1000000.0/results.size(), 
+                    slowest.getJob().getFile().getName(), slowest.getNanos()/1000000.0));
+        }
+    }
+    
+    /**
+     * @param threads number of documents done at the same time.
+     */
+    public void setThreads(int threads){
+        this.threads = Math.max(threads, 1);
+    }
+    
+    public int getThreads(){
+        return threads;
+    }
+    
+    public void setMode(DocumentSession.Mode mode){
+        this.mode = mode;
+    }
+    
+    public DocumentSession.Mode getMode(){
+        return mode;
+    }
+    
+    public void setBackups(int backups){
+        this.backups = backups;
+    }
+    
+    public int getBackups(){
+        return backups;
+    }
+
+}
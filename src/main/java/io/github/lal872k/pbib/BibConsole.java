@@ -28,6 +28,7 @@ import io.github.lal872k.console.extensions.command.Command;
 import io.github.lal872k.console.extensions.command.CommandHandler;
 import io.github.lal872k.console.extensions.jconsole.JavaConsole;
 import java.awt.Color;
+import java.awt.GraphicsEnvironment;
 
 /**
  *
@@ -35,12 +36,25 @@ import java.awt.Color;
  */
 public class BibConsole {
     
-    private static final Console CONSOLE;
-    private static final CommandHandler COMMAND_HANDLER;
+    private static Console CONSOLE;
+    private static CommandHandler COMMAND_HANDLER;
     private static boolean debugging = true;
     public static final Color DEBUG_TEXT = new Color(67, 233, 242);
     
-    static {
+    /**
+     * when true everything is printed to the standard output instead of the console window, 
+     * which is used when there is no display.
+     */
+    private static volatile boolean headless = GraphicsEnvironment.isHeadless();
+    
+    /**
+     * makes the console window the first time it is needed, so nothing is made when running
+     * without a display.
+     */
+    private static synchronized void init(){
+        if (CONSOLE!=null){
+            return;
+        }
         CONSOLE = new Console();
         CONSOLE.setWindowTitle("Console - PBib");
         COMMAND_HANDLER = new CommandHandler();
@@ -66,28 +80,69 @@ public class BibConsole {
     }
     
     public static void println(String msg){
-        getConsole().println(msg);
+        if (headless){
+            System.out.println(msg);
+        } else {
+            getConsole().println(msg);
+        }
     }
     
     public static void println(){
-        getConsole().println();
+        if (headless){
+            System.out.println();
+        } else {
+            getConsole().println();
+        }
     }
     
     public static void print(String msg){
-        getConsole().print(msg);
+        if (headless){
+            System.out.print(msg);
+        } else {
+            getConsole().print(msg);
+        }
+    }
+    
+    public static void printlnError(String msg){
+        if (headless){
+            System.err.println(msg);
+        } else {
+            getConsole().printlnError(msg);
+        }
     }
     
     public static void debugln(String msg){
         if (debugging){
-            getConsole().println(msg, DEBUG_TEXT);
+            if (headless){
+                System.out.println(msg);
+            } else {
+                getConsole().println(msg, DEBUG_TEXT);
+            }
         }
     }
     
+    /**
+     * @param headless true to print to the standard output instead of the console window.
+     */
+    public static void setHeadless(boolean headless){
+        BibConsole.headless = headless;
+    }
+    
+    public static boolean isHeadless(){
+        return headless;
+    }
+    
+    public static void setDebugging(boolean debugging){
+        BibConsole.debugging = debugging;
+    }
+    
     public static Console getConsole(){
+        init();
         return CONSOLE;
     }
     
     public static CommandHandler getCommandHandler(){
+        init();
         return COMMAND_HANDLER;
     }
     
@@ -25,7 +25,8 @@ package io.github.lal872k.pbib;
 
 /**
  * This class represents a filled out source that can be used to get a bibliography and footnote
- * from.
+ * from. The values of the source are copied when the citation is made, so each citation keeps
+ * its own values and can be rendered from any thread.
  * @author L. Arthur Lewis II
  */
 public class Citation {
@@ -71,6 +72,13 @@ public class Citation {
         return source;
     }
     
+    /**
+     * @return the values the citation was made with.
+     */
+    public CitationValues getValues(){
+        return source.getValues();
+    }
+    
     public TypeOfSource getTypeOfSource(){
         return hand;
     }
@@ -43,10 +43,8 @@ public class CitationRetriever extends Retriever<Citation>{
     }
     
     @Override
-    public Retriever.ReturnStatus retrieve() {
-        Retriever.ReturnStatus val = super.retrieve();
+    protected void retrieved(Citation contents) {
         index++;
-        return val;
     }
     
 }
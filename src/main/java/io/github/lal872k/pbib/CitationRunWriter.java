@@ -0,0 +1,44 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+/**
+ * Receives the runs of a citation one at a time from
+ * <code>{@link lal.pbib.CompiledReferenceCode#writeCitation(
+ * CitationValues, CitationRunWriter)}</code>, used when the citation isn't going into a word paragraph or a 
+ * <code>StringBuilder</code>.
+ * @author L. Arthur Lewis II
+ */
+public interface CitationRunWriter {
+    
+    /**
+     * called for each run of the citation in order.
+     * @param text text of the run.
+     * @param bold whether the run is bold.
+     * @param italic whether the run is italic.
+     * @throws Exception any issue while writing the run, passed on to the caller.
+     */
+    public void writeRun(String text, boolean bold, boolean italic) throws Exception;
+    
+}
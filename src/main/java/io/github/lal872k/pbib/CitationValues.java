@@ -0,0 +1,128 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The values of the fields of one citation, stored as an array in the same order as the 
+ * inputs of its <code>{@link lal.pbib.Source}</code>. The values can't be changed, so they 
+ * can be made into citations from any thread without any Swing components.
+ * @author L. Arthur Lewis II
+ */
+public final class CitationValues {
+    
+    private final Source type;
+    private final String[] values;
+    
+    /**
+     * @param type the source type the values are for.
+     * @param values one value per input of the source type, this array is kept so it can't be
+     * changed afterwards.
+     */
+    CitationValues(Source type, String[] values){
+        this.type = type;
+        this.values = values;
+    }
+    
+    /**
+     * @param type the source type the values are for.
+     * @param values value of each input by its name, inputs that aren't given are left empty.
+     * @return the values in the order of the inputs.
+     */
+    public static CitationValues of(Source type, Map<String, String> values){
+        String[] array = new String[type.getInputsLength()];
+        Arrays.fill(array, "");
+        // only the values given are looked up, names that aren't inputs are ignored
+        for (Map.Entry<String, String> value : values.entrySet()){
+            int index = type.getInputIndex(value.getKey());
+            if (index!=CompiledReferenceCode.UNKNOWN_FIELD && value.getValue()!=null){
+                array[index] = value.getValue();
+            }
+        }
+        return new CitationValues(type, array);
+    }
+    
+    /**
+     * @param type the source type the values are for.
+     * @return values where every input is empty.
+     */
+    public static CitationValues empty(Source type){
+        String[] array = new String[type.getInputsLength()];
+        Arrays.fill(array, "");
+        return new CitationValues(type, array);
+    }
+    
+    /**
+     * @return the source type the values are for.
+     */
+    public Source getSourceType(){
+        return type;
+    }
+    
+    /**
+     * @param index index of the input.
+     * @return the value of the input, never null.
+     */
+    public String getValue(int index){
+        return values[index];
+    }
+    
+    /**
+     * @return number of values.
+     */
+    public int size(){
+        return values.length;
+    }
+    
+    /**
+     * @return a copy of the values.
+     */
+    public String[] toArray(){
+        return values.clone();
+    }
+    
+    /**
+     * @param obj object to compare with.
+     * @return true if the object is values for the same source type with the same text.
+     */
+    @Override
+    public boolean equals(Object obj){
+        if (obj==this){
+            return true;
+        }
+        if (!(obj instanceof CitationValues)){
+            return false;
+        }
+        CitationValues other = (CitationValues) obj;
+        return type==other.type && Arrays.equals(values, other.values);
+    }
+    
+    @Override
+    public int hashCode(){
+        return System.identityHashCode(type)*31+Arrays.hashCode(values);
+    }
+
+}
@@ -0,0 +1,556 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.xmlbeans.impl.xb.xmlschema.SpaceAttribute;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTRPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
+
+/**
+ * A <code>{@link lal.pbib.ReferenceCode}</code> that has been parsed once into a list of
+ * segments (plain text, references to a field and if statements) so it can be turned into a
+ * citation by walking the list instead of searching the code every time.
+ * <p>
+ * The citation can either be made into a word paragraph with
+ * <code>{@link lal.pbib.CompiledReferenceCode#getCitation(CitationValues)}</code> or into 
+ * plain text with <code>{@link lal.pbib.CompiledReferenceCode#appendCitationText(
+ * CitationValues, StringBuilder)}</code>, which is used for previews and sorting.
+ * <p>
+ * The references to fields are looked up when the code is compiled, so the values given to
+ * <code>{@link lal.pbib.CompiledReferenceCode#getCitation(CitationValues)}</code> have to be 
+ * in the same order as the inputs the code was compiled with.
+ * <p>
+ * Compiling also records which segments depend on each field: a reference depends on the 
+ * value of its field and an if statement only on whether the fields in its condition are 
+ * filled in. A <code>{@link lal.pbib.CompiledReferenceCode.TextCache}</code> uses this to 
+ * keep the text of each segment and only make the segments of the fields that changed again.
+ * @author L. Arthur Lewis II
+ */
+public final class CompiledReferenceCode {
+    
+    /**
+     * index used for a reference to a field that doesn't exist.
+     */
+    public static final int UNKNOWN_FIELD = -1;
+    
+    /**
+     * bit set reused by each thread for which fields are filled in, so making a citation 
+     * doesn't allocate one every time.
+     */
+    private static final ThreadLocal<BitSet> FILLED = ThreadLocal.withInitial(BitSet::new);
+    
+    private final String code;
+    
+    private final Segment[] segments;
+    
+    /**
+     * for each field the indexes of the segments that use its value.
+     */
+    private final int[][] valueDependents;
+    
+    /**
+     * for each field the indexes of the segments that use whether it is filled in.
+     */
+    private final int[][] filledDependents;
+    
+    private CompiledReferenceCode(String code, Segment[] segments, int fields){
+        this.code = code;
+        this.segments = segments;
+        
+        ArrayList<ArrayList<Integer>> values = new ArrayList(), filled = new ArrayList();
+        for (int q = 0; q < fields; q++){
+            values.add(new ArrayList());
+            filled.add(new ArrayList());
+        }
+        BitSet used = new BitSet(fields);
+        for (int q = 0; q < segments.length; q++){
+            used.clear();
+            segments[q].addFields(used, false);
+            for (int field = used.nextSetBit(0); field>=0; field = used.nextSetBit(field+1)){
+                values.get(field).add(q);
+            }
+            used.clear();
+            segments[q].addFields(used, true);
+            for (int field = used.nextSetBit(0); field>=0; field = used.nextSetBit(field+1)){
+                filled.get(field).add(q);
+            }
+        }
+        valueDependents = toArrays(values);
+        filledDependents = toArrays(filled);
+    }
+    
+    private static int[][] toArrays(ArrayList<ArrayList<Integer>> lists){
+        int[][] arrays = new int[lists.size()][];
+        for (int q = 0; q < arrays.length; q++){
+            ArrayList<Integer> list = lists.get(q);
+            arrays[q] = new int[list.size()];
+            for (int w = 0; w < arrays[q].length; w++){
+                arrays[q][w] = list.get(w);
+            }
+        }
+        return arrays;
+    }
+    
+    /**
+     * parses a reference code into segments.
+     * @param code reference code, should already be checked with
+     * <code>{@link lal.pbib.ReferenceCode#validateCode(String)}</code>.
+     * @param fields the fields in the order the values will be given when making the 
+     * citation.
+     * @return the compiled code.
+     */
+    public static CompiledReferenceCode compile(String code, InputDefinition[] fields){
+        HashMap<String, Integer> names = new HashMap(fields.length*2);
+        for (int q = 0; q < fields.length; q++){
+            // the first field with a name is the one that is referenced
+            names.putIfAbsent(fields[q].getName(), q);
+        }
+        ArrayList<Segment> segments = new ArrayList();
+        StringBuilder text = new StringBuilder();
+        int q = 0;
+        while (q < code.length()){
+            char letter = code.charAt(q);
+            int end = letter=='{' ? code.indexOf('}', q) : -1;
+            // not the start of a pair of curly brackets
+            if (end==-1){
+                text.append(letter);
+                q++;
+                continue;
+            }
+            // get just the contents of the brackets
+            String contents = code.substring(q+1, end);
+            Segment segment = null;
+            if (contents.length()>0 && contents.charAt(0)==ReferenceCode.NAME_REFERENCE){
+                int index = indexOf(contents.substring(1), names);
+                // the style of the field is looked up now instead of for every citation
+                segment = index==UNKNOWN_FIELD ? new FieldSegment(index, false, false) : 
+                        new FieldSegment(index, fields[index].isBold(), fields[index].isItalic());
+            } else if (contents.length()>0 && contents.charAt(0)==ReferenceCode.IF){
+                int separator = contents.indexOf(ReferenceCode.CONDITION_AND_OUTPUT_SEPARATOR);
+                // if statements without a separator are left as they are
+                if (separator!=-1){
+                    segment = new IfSegment(ReferenceCondition.parse(
+                            contents.substring(1, separator), names),
+                            contents.substring(separator+1));
+                }
+            }
+            if (segment==null){
+                // not something that can be replaced so keep the text
+                text.append(code, q, end+1);
+            } else {
+                if (text.length()>0){
+                    segments.add(new TextSegment(text.toString()));
+                    text.setLength(0);
+                }
+                segments.add(segment);
+            }
+            q = end+1;
+        }
+        if (text.length()>0){
+            segments.add(new TextSegment(text.toString()));
+        }
+        return new CompiledReferenceCode(code, segments.toArray(new Segment[0]), fields.length);
+    }
+    
+    /**
+     * @param name name of the field.
+     * @param names index of each field by its name.
+     * @return index of the name or <code>{@link lal.pbib.CompiledReferenceCode#UNKNOWN_FIELD}
+     * </code> if it doesn't exist.
+     */
+    private static int indexOf(String name, Map<String, Integer> names){
+        Integer index = names.get(name);
+        return index==null ? UNKNOWN_FIELD : index;
+    }
+    
+    /**
+     * turns the compiled code into a paragraph.
+     * @param values values in the same order as the inputs the code was compiled with.
+     * @return paragraph containing the code with references.
+     */
+    public CTP getCitation(CitationValues values){
+        CTP output = CTP.Factory.newInstance();
+        addCitation(output, values);
+        return output;
+    }
+    
+    /**
+     * adds the runs of the citation to the end of a paragraph. The runs are made in order 
+     * while going through the segments once, so nothing in the paragraph has to be moved.
+     * @param ctp paragraph the citation is added to.
+     * @param values values in the same order as the inputs the code was compiled with.
+     */
+    public void addCitation(CTP ctp, CitationValues values){
+        BitSet filled = getFilledFields(values, FILLED.get());
+        for (Segment segment : segments){
+            segment.addTo(ctp, values, filled);
+        }
+    }
+    
+    /**
+     * turns the compiled code into plain text without making a paragraph.
+     * @param values values in the same order as the inputs the code was compiled with.
+     * @return text of the citation.
+     */
+    public String getCitationText(CitationValues values){
+        StringBuilder text = new StringBuilder();
+        appendCitationText(values, text);
+        return text.toString();
+    }
+    
+    /**
+     * adds the plain text of the citation to the end of a <code>StringBuilder</code> so the 
+     * same one can be reused for many citations.
+     * @param values values in the same order as the inputs the code was compiled with.
+     * @param text where the citation is added to.
+     */
+    public void appendCitationText(CitationValues values, StringBuilder text){
+        BitSet filled = getFilledFields(values, FILLED.get());
+        for (Segment segment : segments){
+            segment.appendTo(text, values, filled);
+        }
+    }
+    
+    /**
+     * gives each run of the citation to a writer in order.
+     * @param values values in the same order as the inputs the code was compiled with.
+     * @param writer where the runs are sent to.
+     * @throws Exception any issue from the writer.
+     */
+    public void writeCitation(CitationValues values, CitationRunWriter writer) throws Exception {
+        BitSet filled = getFilledFields(values, FILLED.get());
+        for (Segment segment : segments){
+            segment.writeTo(writer, values, filled);
+        }
+    }
+    
+    /**
+     * @return a new cache for making the text of one citation again and again as its values 
+     * change, like while the form is being filled in.
+     */
+    public TextCache newTextCache(){
+        return new TextCache();
+    }
+    
+    /**
+     * keeps the text of each segment from the last time the citation was made, so when some 
+     * of the values change only the segments that depend on them are made again and put 
+     * together with the rest. An if statement is only checked again when one of its fields 
+     * goes from empty to filled in (or back), not on every change to the text of the field.
+     */
+    public final class TextCache {
+        
+        private final String[] parts;
+        
+        private CitationValues last;
+        private BitSet lastFilled = new BitSet();
+        private BitSet filled = new BitSet();
+        private String text;
+        
+        private TextCache(){
+            parts = new String[segments.length];
+        }
+        
+        /**
+         * @param values values in the same order as the inputs the code was compiled with.
+         * @return text of the citation, the same as 
+         * <code>{@link lal.pbib.CompiledReferenceCode#getCitationText(CitationValues)}</code>.
+         */
+        public synchronized String getCitationText(CitationValues values){
+            if (values==last){
+                return text;
+            }
+            BitSet filled = getFilledFields(values, this.filled);
+            if (last==null || last.getSourceType()!=values.getSourceType() || 
+                    values.size()!=valueDependents.length){
+                for (int q = 0; q < segments.length; q++){
+                    parts[q] = segments[q].getText(values, filled);
+                }
+            } else {
+                boolean changed = false;
+                for (int field = 0; field < values.size(); field++){
+                    if (values.getValue(field).equals(last.getValue(field))){
+                        continue;
+                    }
+                    changed = true;
+                    update(valueDependents[field], values, filled);
+                    if (filled.get(field)!=lastFilled.get(field)){
+                        update(filledDependents[field], values, filled);
+                    }
+                }
+                if (!changed){
+                    last = values;
+                    return text;
+                }
+            }
+            last = values;
+            this.filled = lastFilled;
+            lastFilled = filled;
+            
+            int length = 0;
+            for (String part : parts){
+                length += part.length();
+            }
+            StringBuilder joined = new StringBuilder(length);
+            for (String part : parts){
+                joined.append(part);
+            }
+            text = joined.toString();
+            return text;
+        }
+        
+        private void update(int[] dependents, CitationValues values, BitSet filled){
+            for (int segment : dependents){
+                parts[segment] = segments[segment].getText(values, filled);
+            }
+        }
+    
+    }
+    
+    /**
+     * @param values values in the same order as the inputs the code was compiled with.
+     * @return bit set where a bit is set if the value with that index was filled in.
+     */
+    public static BitSet getFilledFields(CitationValues values){
+        return getFilledFields(values, new BitSet(values.size()));
+    }
+    
+    /**
+     * @param values values in the same order as the inputs the code was compiled with.
+     * @param filled bit set that is cleared and then used for the result.
+     * @return <code>filled</code>, with a bit set if the value with that index was filled in.
+     */
+    private static BitSet getFilledFields(CitationValues values, BitSet filled){
+        filled.clear();
+        for (int q = 0; q < values.size(); q++){
+            if (!values.getValue(q).isEmpty()){
+                filled.set(q);
+            }
+        }
+        return filled;
+    }
+    
+    /**
+     * @return the reference code this was compiled from.
+     */
+    public String getCode(){
+        return code;
+    }
+    
+    /**
+     * adds a run with the text to the paragraph.
+     * @param ctp paragraph to add to.
+     * @param text text inside the run.
+     * @return the new run.
+     */
+    private static CTR addRun(CTP ctp, String text){
+        CTR ctr = ctp.addNewR();
+        CTText t = ctr.addNewT();
+        t.setStringValue(text);
+        t.setSpace(SpaceAttribute.Space.PRESERVE);
+        return ctr;
+    }
+    
+    /**
+     * part of the reference code.
+     */
+    private static abstract class Segment {
+        
+        abstract void addTo(CTP ctp, CitationValues values, BitSet filled);
+        
+        abstract void appendTo(StringBuilder text, CitationValues values, BitSet filled);
+        
+        abstract void writeTo(CitationRunWriter writer, CitationValues values, BitSet filled) 
+                throws Exception;
+        
+        /**
+         * @return the text this segment adds to the citation.
+         */
+        abstract String getText(CitationValues values, BitSet filled);
+        
+        /**
+         * sets the bits of the fields this segment depends on.
+         * @param fields where the bits are set.
+         * @param filledOnly true for the fields where only being filled in matters, false for
+         * the fields whose value is used.
+         */
+        abstract void addFields(BitSet fields, boolean filledOnly);
+    
+    }
+    
+    /**
+     * text that is copied straight into the citation.
+     */
+    private static final class TextSegment extends Segment {
+        
+        private final String text;
+        
+        TextSegment(String text){
+            this.text = text;
+        }
+        
+        @Override
+        void addTo(CTP ctp, CitationValues values, BitSet filled){
+            addRun(ctp, text);
+        }
+        
+        @Override
+        void appendTo(StringBuilder text, CitationValues values, BitSet filled){
+            text.append(this.text);
+        }
+        
+        @Override
+        void writeTo(CitationRunWriter writer, CitationValues values, BitSet filled) 
+                throws Exception {
+            writer.writeRun(text, false, false);
+        }
+        
+        @Override
+        String getText(CitationValues values, BitSet filled){
+            return text;
+        }
+        
+        @Override
+        void addFields(BitSet fields, boolean filledOnly){}
+    
+    }
+    
+    /**
+     * reference to the data inside of a field.
+     */
+    private static final class FieldSegment extends Segment {
+        
+        private final int index;
+        private final boolean bold, italic;
+        
+        FieldSegment(int index, boolean bold, boolean italic){
+            this.index = index;
+            this.bold = bold;
+            this.italic = italic;
+        }
+        
+        @Override
+        void addTo(CTP ctp, CitationValues values, BitSet filled){
+            if (index==UNKNOWN_FIELD || !filled.get(index)){
+                return;
+            }
+            CTR ctr = addRun(ctp, values.getValue(index));
+            // add any styles (bold/italic)
+            if (bold || italic){
+                CTRPr rpr = ctr.addNewRPr();
+                if (bold){
+                    rpr.addNewB();
+                }
+                if (italic){
+                    rpr.addNewI();
+                }
+            }
+        }
+        
+        @Override
+        void appendTo(StringBuilder text, CitationValues values, BitSet filled){
+            if (index!=UNKNOWN_FIELD && filled.get(index)){
+                text.append(values.getValue(index));
+            }
+        }
+        
+        @Override
+        void writeTo(CitationRunWriter writer, CitationValues values, BitSet filled) 
+                throws Exception {
+            if (index!=UNKNOWN_FIELD && filled.get(index)){
+                writer.writeRun(values.getValue(index), bold, italic);
+            }
+        }
+        
+        @Override
+        String getText(CitationValues values, BitSet filled){
+            return index!=UNKNOWN_FIELD && filled.get(index) ? values.getValue(index) : "";
+        }
+        
+        @Override
+        void addFields(BitSet fields, boolean filledOnly){
+            if (!filledOnly && index!=UNKNOWN_FIELD){
+                fields.set(index);
+            }
+        }
+    
+    }
+    
+    /**
+     * if statement, the output is only added when the condition is true.
+     */
+    private static final class IfSegment extends Segment {
+        
+        private final ReferenceCondition condition;
+        
+        private final String output;
+        
+        IfSegment(ReferenceCondition condition, String output){
+            this.condition = condition;
+            this.output = output;
+        }
+        
+        @Override
+        void addTo(CTP ctp, CitationValues values, BitSet filled){
+            if (!output.isEmpty() && condition.isTrue(filled)){
+                addRun(ctp, output);
+            }
+        }
+        
+        @Override
+        void appendTo(StringBuilder text, CitationValues values, BitSet filled){
+            if (condition.isTrue(filled)){
+                text.append(output);
+            }
+        }
+        
+        @Override
+        void writeTo(CitationRunWriter writer, CitationValues values, BitSet filled) 
+                throws Exception {
+            if (!output.isEmpty() && condition.isTrue(filled)){
+                writer.writeRun(output, false, false);
+            }
+        }
+        
+        @Override
+        String getText(CitationValues values, BitSet filled){
+            return condition.isTrue(filled) ? output : "";
+        }
+        
+        @Override
+        void addFields(BitSet fields, boolean filledOnly){
+            if (filledOnly){
+                condition.addFields(fields);
+            }
+        }
+    
+    }
+
+}
@@ -23,14 +23,21 @@
  */
 package io.github.lal872k.pbib;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.List;
 import org.apache.poi.xwpf.usermodel.ParagraphAlignment;
 import org.apache.poi.xwpf.usermodel.UnderlinePatterns;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
@@ -55,10 +62,29 @@ import org.openxmlformats.schemas.wordprocessingml.x2006.main.STVerticalAlignRun
  */
 public final class DocumentIO {
     
+    /**
+     * words that are skipped at the start of a bibliography when sorting.
+     */
+    private static final String[] ARTICLES = {"The", "A", "An"};
+    
     private File file;
     
     private XWPFDocument doc;
     
+    private DocumentPositionIndex positionIndex;
+    
+    /**
+     * next id to give to a footnote, 0 if the footnotes haven't been looked at yet.
+     */
+    private long nextFootnoteID;
+    
+    private boolean footnotesChecked;
+    
+    /**
+     * number of old versions of the file kept when saving.
+     */
+    private int backups;
+    
     public DocumentIO(File file){
         this.file = file;
     }
@@ -71,15 +97,65 @@ public final class DocumentIO {
      * @throws IOException reading issue.
      */
     public void loadDocument() throws IOException {
-        doc = new XWPFDocument(new FileInputStream(file));
+        loadDocument(DocumentProgress.NONE);
     }
     
     /**
-     * saves the changes made to the file.
+     * loads the contents of the file into memory, telling the progress how many bytes of the
+     * file have been read.
+     * @param progress told about the bytes read, and able to stop the loading.
+     * @throws IOException reading issue, or an <code>InterruptedIOException</code> if the 
+     * progress was canceled, in which case the document that was loaded before is kept.
+     */
+    public void loadDocument(DocumentProgress progress) throws IOException {
+        // the whole document is read in so the file can be closed right away
+        try (InputStream in = new BufferedInputStream(ProgressStreams.reading(
+                new FileInputStream(file), file.length(), progress))){
+            doc = new XWPFDocument(in);
+        }
+        positionIndex = null;
+        nextFootnoteID = 0;
+        footnotesChecked = false;
+    }
+    
+    /**
+     * saves the changes made to the file. The document is written to a temporary file first 
+     * which then replaces the file, so the file is never left half written.
      * @throws IOException writing issue.
      */
     public void saveDocument() throws IOException {
-        doc.write(new FileOutputStream(file));
+        saveDocument(DocumentProgress.NONE);
+    }
+    
+    /**
+     * saves the changes made to the file, telling the progress how many bytes have been 
+     * written. The size of the file before saving is used as the total.
+     * @param progress told about the bytes written, and able to stop the saving.
+     * @throws IOException writing issue, or an <code>InterruptedIOException</code> if the 
+     * progress was canceled, either way the file is left as it was.
+     */
+    public void saveDocument(DocumentProgress progress) throws IOException {
+        AtomicFileWriter writer = new AtomicFileWriter(file);
+        writer.setBackups(backups);
+        writer.write(out -> {
+            OutputStream counted = new BufferedOutputStream(
+                    ProgressStreams.writing(out, file.length(), progress));
+            doc.write(counted);
+            counted.flush();
+            progress.checkCanceled();
+            progress.replacing();
+        });
+    }
+    
+    /**
+     * @param backups how many old versions of the file to keep when saving, 0 to not keep any.
+     */
+    public void setBackups(int backups){
+        this.backups = backups;
+    }
+    
+    public int getBackups(){
+        return backups;
     }
     
     /**
@@ -97,6 +173,9 @@ public final class DocumentIO {
             }
         }
         
+        // new paragraphs are added so the positions have to be found again
+        positionIndex = null;
+        
         XWPFParagraph bibTitle = doc.createParagraph();
         bibTitle.setAlignment(ParagraphAlignment.CENTER);
         XWPFRun bibTitle_text = bibTitle.createRun();
@@ -117,46 +196,15 @@ public final class DocumentIO {
         }
         
         // organize by alphabetical
-        Comparator<Citation> abc = (o1, o2) -> {
-            String regex = "The\\s|A\\s|An\\s";
-            String o1Text = o1.getSource().getBibCitationPreview().replaceAll(regex, "");
-            String o2Text = o2.getSource().getBibCitationPreview().replaceAll(regex, "");
-            int o1Index = 0, o2Index = 0;
-            while (true){
-                if (!Character.isLetter(o1Text.charAt(o1Index))){
-                    o1Index++;
-                    continue;
-                }
-                if (!Character.isLetter(o2Text.charAt(o2Index))){
-                    o2Index++;
-                    continue;
-                }
-                
-                char o1Char = o1Text.charAt(o1Index);
-                char o2Char = o2Text.charAt(o2Index);
-                
-                if (o1Char == o2Char){
-                    return 0;
-                }
-                
-                if (Character.toLowerCase(o1Char) < Character.toLowerCase(o2Char)){
-                    return -1;
-                } else {
-                    return 1;
-                }
-            }
-        };
-        
-        Collections.sort(firstHand, abc);
-        Collections.sort(secondHand, abc);
+        sortAlphabetically(firstHand);
+        sortAlphabetically(secondHand);
         
         for (int q = 0; q < firstHand.size(); q++){
             XWPFParagraph para = doc.createParagraph();
             para.setIndentationHanging(720);
             // setIndentationLeft() is more like addIndentationLeft()
             para.setIndentationLeft(720);
-            insertRinParagraphInOrder(para.getCTP(), 
-                    firstHand.get(q).getSource().getBibCitation().getRArray(), 0);
+            firstHand.get(q).getSource().addBibCitation(para.getCTP());
             if (q+1<firstHand.size()){
                 // spacing
                 doc.createParagraph();
@@ -177,8 +225,7 @@ public final class DocumentIO {
             XWPFParagraph para = doc.createParagraph();
             para.setIndentationHanging(720);
             para.setIndentationLeft(720);
-            insertRinParagraphInOrder(para.getCTP(), 
-                    secondHand.get(q).getSource().getBibCitation().getRArray(), 0);
+            secondHand.get(q).getSource().addBibCitation(para.getCTP());
             if (q+1<secondHand.size()){
                 // spacing
                 doc.createParagraph();
@@ -187,15 +234,100 @@ public final class DocumentIO {
     }
     
     /**
-     * calls the <code>{@link lal.pbib.DocumentIO#addFootnote(lal.BibMaker.Footnote)}</code>
-     * on all of the footnotes to add them to the document.
+     * sorts the citations by the text of their bibliography. Each citation is only made into 
+     * text once, then it is turned into a <code>CollationKey</code> so that the sorting is 
+     * done with the rules of the current language and compares the full text.
+     * @param cites citations to sort.
+     */
+    public static void sortAlphabetically(ArrayList<Citation> cites){
+        Collator collator = Collator.getInstance();
+        // upper and lower case letters are sorted together
+        collator.setStrength(Collator.SECONDARY);
+        
+        ArrayList<BibSortKey> keys = new ArrayList(cites.size());
+        StringBuilder text = new StringBuilder();
+        for (Citation cite : cites){
+            text.setLength(0);
+            cite.getSource().appendBibCitationPreview(text);
+            keys.add(new BibSortKey(collator.getCollationKey(getSortText(text)), cite));
+        }
+        
+        // stable so citations with the same text stay in the order they were given
+        Collections.sort(keys);
+        
+        cites.clear();
+        for (BibSortKey key : keys){
+            cites.add(key.cite);
+        }
+    }
+    
+    /**
+     * removes anything before the first letter and a leading "The", "A" or "An".
+     * @param text text of the bibliography.
+     * @return the text that the citation should be sorted by.
+     */
+    public static String getSortText(CharSequence text){
+        int start = skipToLetter(text, 0);
+        for (String article : ARTICLES){
+            int end = start+article.length();
+            if (end<text.length() && Character.isWhitespace(text.charAt(end)) && 
+                    article.equalsIgnoreCase(text.subSequence(start, end).toString())){
+                start = skipToLetter(text, end);
+                break;
+            }
+        }
+        return text.subSequence(start, text.length()).toString();
+    }
+    
+    private static int skipToLetter(CharSequence text, int index){
+        while (index<text.length() && !Character.isLetter(text.charAt(index))){
+            index++;
+        }
+        return index;
+    }
+    
+    /**
+     * a citation together with the key it is sorted by.
+     */
+    private static final class BibSortKey implements Comparable<BibSortKey> {
+        
+        private final CollationKey key;
+        private final Citation cite;
+        
+        BibSortKey(CollationKey key, Citation cite){
+            this.key = key;
+            this.cite = cite;
+        }
+        
+        @Override
+        public int compareTo(BibSortKey other){
+            return key.compareTo(other.key);
+        }
+        
+    }
+    
+    /**
+     * adds all of the footnotes to the document. The footnotes are sorted by their position 
+     * and then all of the references are added while going through the document once, 
+     * instead of going through it from the start for each footnote.
      * @param footnotes footnotes to be added to the document.
      */
     public void addFootnote(Footnote[] footnotes) {
         checkFootnoteStatus();
-        for (Footnote foot : footnotes){
-            addFootnote(foot);
+        
+        // stable so footnotes at the same position stay in the order they were given
+        Footnote[] sorted = footnotes.clone();
+        Arrays.sort(sorted, (o1, o2) -> Integer.compare(o1.getPosition(), o2.getPosition()));
+        
+        // make the footnote objects in the order they show up in the document
+        BigInteger[] ids = new BigInteger[sorted.length];
+        int[] positions = new int[sorted.length];
+        for (int q = 0; q < sorted.length; q++){
+            ids[q] = addFootnoteObject(sorted[q].getSource());
+            positions[q] = sorted[q].getPosition();
         }
+        
+        addFootnoteReferences(ids, positions);
     }
     
     /**
@@ -206,17 +338,22 @@ public final class DocumentIO {
      */
     public void addFootnote(Footnote footnote) {
         checkFootnoteStatus();
-        BigInteger id = addFootnoteObject(footnote.getSource().getFootnoteCitation());
+        BigInteger id = addFootnoteObject(footnote.getSource());
         addFootnoteReference(id, footnote.getPosition());
     }
     
     /**
      * adds the footnotes if they are not present. Adds the styles if they haven't been added
-     * already.
+     * already. This is only checked the first time it is called after loading the document.
      */
     public void checkFootnoteStatus(){
+        // only needs to be done once after the document is loaded
+        if (footnotesChecked){
+            return;
+        }
         addFootnotesIfAbsent();
         addFootnoteStylesIfAbsent();
+        footnotesChecked = true;
     }
     
     /**
@@ -228,10 +365,10 @@ public final class DocumentIO {
         }
     }
     
-    private BigInteger addFootnoteObject(CTP text) {
+    private BigInteger addFootnoteObject(Source source) {
         CTFtnEdn main = CTFtnEdn.Factory.newInstance();
         
-        BigInteger id = new BigInteger(String.valueOf(getOpenFootnoteID()));
+        BigInteger id = BigInteger.valueOf(getOpenFootnoteID());
         
         BibConsole.debugln("Adding footnote object with id:"+id);
         
@@ -244,88 +381,207 @@ public final class DocumentIO {
         ctr.addNewRPr().addNewRStyle().setVal("FootnoteReference");
         ctr.addNewFootnoteRef();
         
-        for (CTR textCTR : text.getRArray()){
-            for (CTText t : textCTR.getTArray()){
-                t.setSpace(SpaceAttribute.Space.PRESERVE);
-            }
-        }
-        
-        insertRinParagraphInOrder(ctp, text.getRArray(), ctp.getRArray().length);
+        // the runs are added after the reference and already preserve their spaces
+        source.addFootnoteCitation(ctp);
         
         doc.addFootnote(main);
         
         return id;
     }
     
-    /*
-    thought: is the length++ suposed to go after the para.
-    */
-    
-    private void addFootnoteReference(BigInteger id, int pos) {
+    /**
+     * adds the references for many footnotes while going through the document once. Runs 
+     * that contain one or more positions are split, keeping their formatting, and each 
+     * paragraph that changes has its runs set once.
+     * @param ids ids of the footnote objects.
+     * @param positions position of each reference, sorted from smallest to largest.
+     */
+    private void addFootnoteReferences(BigInteger[] ids, int[] positions) {
+        int next = 0;
         int length = 0;
+        StringBuilder rText = new StringBuilder();
         
-        CTR ref = CTP.Factory.newInstance().addNewR();
-        CTRPr rpr = ref.addNewRPr();
-        rpr.addNewRStyle().setVal("FootnoteReference");
-        ref.addNewFootnoteReference().setId(id);
-        
-        for (int t = 0; t < doc.getParagraphs().size(); t++){
-            XWPFParagraph current = doc.getParagraphs().get(t);
-            // all of the r's
-            for (int q = 0; q < current.getCTP().getRArray().length; q++){
-                CTR currentCTR = current.getCTP().getRArray()[q];
-                String rText = "";
-                // the text inside the r (cttext)
-                for (CTText ctText : currentCTR.getTArray()){
-                    rText += ctText.getStringValue();
+        List<XWPFParagraph> paragraphs = doc.getParagraphs();
+        for (int p = 0; p < paragraphs.size(); p++){
+            if (next==ids.length){
+                return;
+            }
+            CTP ctp = paragraphs.get(p).getCTP();
+            CTR[] runs = ctp.getRArray();
+            
+            // only made once a reference has to go inside the paragraph
+            ArrayList<CTR> newRuns = null;
+            
+            for (int q = 0; q < runs.length; q++){
+                CTR run = runs[q];
+                rText.setLength(0);
+                for (CTText ctText : run.getTArray()){
+                    rText.append(ctText.getStringValue());
                 }
-                if (pos<=rText.length()+length){
-                    // the length into the paragraph where we want to split it
-                    int lengthIntoPara = pos-length;
-                    
-                    // the first half of the split
-                    CTR half1 = CTR.Factory.newInstance();
-                    CTText half1Text = half1.addNewT();
-                    half1Text.setStringValue(rText.substring(0, lengthIntoPara));
-                    half1Text.setSpace(SpaceAttribute.Space.PRESERVE);
-                    
-                    // the second half of the split
-                    CTR half2 = CTR.Factory.newInstance();
-                    CTText half2Text = half2.addNewT();
-                    half2Text.setStringValue(rText.substring(lengthIntoPara, rText.length()));
-                    half2Text.setSpace(SpaceAttribute.Space.PRESERVE);
-                    
-                    // get the current paragraph
-                    CTP ctp = current.getCTP();
-
-                    // remove the old r that the split is in
-                    ctp.removeR(q);
-                    
-                    insertRinParagraph(ctp, new CTR[]{half2, ref, half1}, q);
-                    return;
-                } 
-                // doesn't have any text
-                else if (rText.length()==0 && pos<=length){
-                    // get the current paragraph
-                    CTP ctp = current.getCTP();
-
-                    // remove the old r that the split is in
-                    ctp.removeR(q);
-
-                    insertRinParagraph(ctp, new CTR[]{ref}, q);
-                    return;
+                int runLength = rText.length();
+                
+                if (next==ids.length || positions[next]>length+runLength){
+                    if (newRuns!=null){
+                        newRuns.add(keep(run));
+                    }
+                    length += runLength;
+                    continue;
+                }
+                
+                if (newRuns==null){
+                    newRuns = new ArrayList(runs.length+ids.length-next);
+                    for (int w = 0; w < q; w++){
+                        newRuns.add(keep(runs[w]));
+                    }
                 }
-                // add length of text from the run
-                length += rText.length();
+                
+                // the runs without text (like tabs and pictures) are kept after the references
+                if (runLength==0){
+                    while (next<ids.length && positions[next]<=length){
+                        newRuns.add(newFootnoteReference(ids[next]));
+                        next++;
+                    }
+                    newRuns.add(keep(run));
+                    continue;
+                }
+                
+                // split the run at each position inside of it
+                int cut = 0;
+                while (next<ids.length && positions[next]<=length+runLength){
+                    int at = Math.max(positions[next]-length, 0);
+                    if (at>cut){
+                        newRuns.add(at==runLength && cut==0 ? keep(run) : 
+                                newTextRun(run, rText.substring(cut, at)));
+                        cut = at;
+                    }
+                    newRuns.add(newFootnoteReference(ids[next]));
+                    next++;
+                }
+                if (cut<runLength){
+                    newRuns.add(cut==0 ? keep(run) : newTextRun(run, rText.substring(cut)));
+                }
+                length += runLength;
             }
+            
             // doesn't contain any r's
-            if (current.getCTP().getRArray().length==0 && pos<=length){
-                insertRinParagraph(current.getCTP(), new CTR[]{ref}, 0);
-                return;
+            if (runs.length==0){
+                while (next<ids.length && positions[next]<=length){
+                    if (newRuns==null){
+                        newRuns = new ArrayList();
+                    }
+                    newRuns.add(newFootnoteReference(ids[next]));
+                    next++;
+                }
             }
+            
+            if (newRuns!=null){
+                ctp.setRArray(newRuns.toArray(new CTR[0]));
+                if (positionIndex!=null){
+                    positionIndex.runsChanged(p);
+                }
+            }
+            
             // add one because going to next paragraph
             length++;
         }
+        
+        if (next<ids.length){
+            BibConsole.debugln((ids.length-next)+" footnote reference(s) were past the end of the document.");
+        }
+    }
+    
+    /**
+     * <code>setRArray</code> copies the runs into the paragraph one at a time, so a run that 
+     * is still in the paragraph could be written over before it is copied if it moves.
+     * @param run run of the paragraph that is kept.
+     * @return copy of the run that isn't part of the paragraph.
+     */
+    private static CTR keep(CTR run){
+        return (CTR) run.copy();
+    }
+    
+    /**
+     * @param id id of the footnote object.
+     * @return run that contains a reference to the footnote.
+     */
+    private static CTR newFootnoteReference(BigInteger id){
+        CTR ref = CTR.Factory.newInstance();
+        ref.addNewRPr().addNewRStyle().setVal("FootnoteReference");
+        ref.addNewFootnoteReference().setId(id);
+        return ref;
+    }
+    
+    /**
+     * @param style run that the formatting is copied from.
+     * @param text text of the new run.
+     * @return new run with the formatting of the other run.
+     */
+    private static CTR newTextRun(CTR style, String text){
+        CTR ctr = CTR.Factory.newInstance();
+        if (style.isSetRPr()){
+            ctr.setRPr(style.getRPr());
+        }
+        CTText t = ctr.addNewT();
+        t.setStringValue(text);
+        t.setSpace(SpaceAttribute.Space.PRESERVE);
+        return ctr;
+    }
+    
+    /**
+     * adds one footnote reference by looking up its position in the 
+     * <code>{@link lal.pbib.DocumentPositionIndex}</code> instead of going through the document.
+     * @param id id of the footnote object.
+     * @param pos position of the reference.
+     */
+    private void addFootnoteReference(BigInteger id, int pos) {
+        DocumentPositionIndex positions = getPositionIndex();
+        DocumentPositionIndex.Position at = positions.find(pos);
+        if (at==null){
+            BibConsole.debugln("Footnote reference at "+pos+" is past the end of the document.");
+            return;
+        }
+        CTP ctp = positions.getParagraph(at.getParagraph());
+        CTR ref = newFootnoteReference(id);
+        
+        // doesn't contain any r's
+        if (at.getRun()==-1){
+            ctp.addNewR().set(ref);
+            positions.runsChanged(at.getParagraph());
+            return;
+        }
+        
+        int q = at.getRun();
+        CTR run = ctp.getRArray(q);
+        StringBuilder rText = new StringBuilder();
+        for (CTText ctText : run.getTArray()){
+            rText.append(ctText.getStringValue());
+        }
+        
+        if (at.getOffset()==0){
+            // before the run, this also keeps runs without text (like tabs and pictures)
+            ctp.insertNewR(q).set(ref);
+        } else if (at.getOffset()==rText.length()){
+            ctp.insertNewR(q+1).set(ref);
+        } else {
+            // split the run in two keeping its formatting
+            CTR half1 = newTextRun(run, rText.substring(0, at.getOffset()));
+            CTR half2 = newTextRun(run, rText.substring(at.getOffset()));
+            run.set(half1);
+            ctp.insertNewR(q+1).set(ref);
+            ctp.insertNewR(q+2).set(half2);
+        }
+        positions.runsChanged(at.getParagraph());
+    }
+    
+    /**
+     * @return the index used to look up positions in the document, it is made the first time 
+     * it is needed after the document is loaded.
+     */
+    public DocumentPositionIndex getPositionIndex(){
+        if (positionIndex==null){
+            positionIndex = new DocumentPositionIndex(doc.getParagraphs());
+        }
+        return positionIndex;
     }
     
     /**
@@ -379,15 +635,23 @@ public final class DocumentIO {
         ctp.setRArray(ctrList.toArray(new CTR[0]));
     }
     
+    /**
+     * the footnotes already in the document are only looked at the first time, after that the 
+     * ids are given out in order.
+     * @return id that isn't used by any other footnote.
+     */
     private long getOpenFootnoteID(){
-        long minValue = 1;
-        for (XWPFFootnote current : doc.getFootnotes()){
-            long id = current.getCTFtnEdn().getId().longValue();
-            if (id>=minValue){
-                minValue=id+1l;
+        if (nextFootnoteID==0){
+            long minValue = 1;
+            for (XWPFFootnote current : doc.getFootnotes()){
+                long id = current.getCTFtnEdn().getId().longValue();
+                if (id>=minValue){
+                    minValue=id+1l;
+                }
             }
+            nextFootnoteID = minValue;
         }
-        return minValue;
+        return nextFootnoteID++;
     }
     
     public void addFootnoteStylesIfAbsent() {
@@ -468,14 +732,38 @@ public final class DocumentIO {
      * @return the text of the document.
      */
     public String getText(){
+        try {
+            return getText(DocumentProgress.NONE);
+        } catch (InterruptedIOException ex) {
+            // never canceled
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    /**
+     * gets the text of the document, giving each paragraph to the progress as it is gone 
+     * through.
+     * @param progress told about each paragraph, and able to stop.
+     * @return the text of the document.
+     * @throws InterruptedIOException if the progress was canceled.
+     */
+    public String getText(DocumentProgress progress) throws InterruptedIOException {
+        List<XWPFParagraph> paragraphs = doc.getParagraphs();
         StringBuilder text = new StringBuilder();
-        for (XWPFParagraph current : doc.getParagraphs()){
-            for (CTR currentCTR : current.getCTP().getRArray()){
+        StringBuilder paragraph = new StringBuilder();
+        for (int q = 0; q < paragraphs.size(); q++){
+            progress.checkCanceled();
+            paragraph.setLength(0);
+            for (CTR currentCTR : paragraphs.get(q).getCTP().getRArray()){
                 for (CTText ctText : currentCTR.getTArray()){
-                    text.append(ctText.getStringValue());
+                    paragraph.append(ctText.getStringValue());
                 }
             }
-            text.append("\n");
+            text.append(paragraph).append("\n");
+            if (progress!=DocumentProgress.NONE){
+                progress.paragraphRead(paragraph.toString());
+            }
+            progress.progress(DocumentProgress.Stage.PARAGRAPHS, q+1, paragraphs.size());
         }
         // remove 1 because we will have one extra \n
         return text.substring(0, text.toString().length()-1);
@@ -0,0 +1,244 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.util.List;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
+
+/**
+ * Maps the positions used by <code>{@link lal.pbib.Footnote#getPosition()}</code> (the index
+ * of a character in <code>{@link lal.pbib.DocumentIO#getText()}</code>) to a paragraph and a
+ * run, by keeping where each paragraph and each run ends and using a binary search.
+ * <p>
+ * Splitting runs doesn't change the text, so when that happens only the runs of that one
+ * paragraph have to be looked at again with
+ * <code>{@link lal.pbib.DocumentPositionIndex#runsChanged(int)}</code>.
+ * @author L. Arthur Lewis II
+ */
+public final class DocumentPositionIndex {
+    
+    private final CTP[] paragraphs;
+    
+    /**
+     * position of the first character of each paragraph.
+     */
+    private final int[] paragraphStarts;
+    
+    /**
+     * number of characters in each paragraph, not counting the new line after it.
+     */
+    private final int[] paragraphLengths;
+    
+    /**
+     * for each paragraph the position inside of the paragraph where each run ends.
+     */
+    private final int[][] runEnds;
+    
+    /**
+     * a place inside of the document.
+     */
+    public static final class Position {
+        
+        private final int paragraph, run, offset;
+        
+        Position(int paragraph, int run, int offset){
+            this.paragraph = paragraph;
+            this.run = run;
+            this.offset = offset;
+        }
+        
+        /**
+         * @return index of the paragraph in the body of the document.
+         */
+        public int getParagraph(){
+            return paragraph;
+        }
+        
+        /**
+         * @return index of the run inside of the paragraph, or -1 if the paragraph has no runs.
+         */
+        public int getRun(){
+            return run;
+        }
+        
+        /**
+         * @return number of characters into the run.
+         */
+        public int getOffset(){
+            return offset;
+        }
+    
+    }
+    
+    /**
+     * goes through all of the paragraphs once to find where they start.
+     * @param paragraphs paragraphs of the document.
+     */
+    public DocumentPositionIndex(List<XWPFParagraph> paragraphs){
+        int size = paragraphs.size();
+        this.paragraphs = new CTP[size];
+        paragraphStarts = new int[size];
+        paragraphLengths = new int[size];
+        runEnds = new int[size][];
+        
+        int length = 0;
+        for (int q = 0; q < size; q++){
+            this.paragraphs[q] = paragraphs.get(q).getCTP();
+            indexRuns(q);
+            paragraphStarts[q] = length;
+            // add one because of the new line between paragraphs
+            length += paragraphLengths[q]+1;
+        }
+    }
+    
+    private void indexRuns(int paragraph){
+        CTR[] runs = paragraphs[paragraph].getRArray();
+        int[] ends = new int[runs.length];
+        int length = 0;
+        for (int q = 0; q < runs.length; q++){
+            for (CTText t : runs[q].getTArray()){
+                length += t.getStringValue().length();
+            }
+            ends[q] = length;
+        }
+        runEnds[paragraph] = ends;
+        paragraphLengths[paragraph] = length;
+    }
+    
+    /**
+     * looks at the runs of a paragraph again after they have been split or changed. The text
+     * of the paragraph has to stay the same.
+     * @param paragraph index of the paragraph.
+     */
+    public void runsChanged(int paragraph){
+        indexRuns(paragraph);
+    }
+    
+    /**
+     * finds where a position is. Positions right between two runs belong to the first one,
+     * and the position of the new line after a paragraph belongs to that paragraph.
+     * @param pos position in the text of the document.
+     * @return where the position is, or null if it is past the end of the document.
+     */
+    public Position find(int pos){
+        int paragraph = findParagraph(pos);
+        if (paragraph==-1){
+            return null;
+        }
+        int inParagraph = Math.max(pos-paragraphStarts[paragraph], 0);
+        int[] ends = runEnds[paragraph];
+        if (ends.length==0){
+            return new Position(paragraph, -1, 0);
+        }
+        int run = firstAtLeast(ends, inParagraph);
+        int runStart = run==0 ? 0 : ends[run-1];
+        return new Position(paragraph, run, inParagraph-runStart);
+    }
+    
+    /**
+     * @param pos position in the text of the document.
+     * @return index of the paragraph that contains the position, or -1 if it is past the end.
+     */
+    public int findParagraph(int pos){
+        // first paragraph that ends at or after the position
+        int low = 0, high = paragraphs.length-1, found = -1;
+        while (low<=high){
+            int mid = (low+high) >>> 1;
+            if (paragraphStarts[mid]+paragraphLengths[mid]>=pos){
+                found = mid;
+                high = mid-1;
+            } else {
+                low = mid+1;
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * @param values sorted values.
+     * @param value value to look for.
+     * @return index of the first value that is at least the value given, the last index if
+     * none are.
+     */
+    private static int firstAtLeast(int[] values, int value){
+        int low = 0, high = values.length-1, found = values.length-1;
+        while (low<=high){
+            int mid = (low+high) >>> 1;
+            if (values[mid]>=value){
+                found = mid;
+                high = mid-1;
+            } else {
+                low = mid+1;
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * @param paragraph index of the paragraph.
+     * @return the paragraph.
+     */
+    public CTP getParagraph(int paragraph){
+        return paragraphs[paragraph];
+    }
+    
+    /**
+     * @return number of paragraphs.
+     */
+    public int getParagraphCount(){
+        return paragraphs.length;
+    }
+    
+    /**
+     * @param paragraph index of the paragraph.
+     * @return position of the first character of the paragraph.
+     */
+    public int getParagraphStart(int paragraph){
+        return paragraphStarts[paragraph];
+    }
+    
+    /**
+     * @param paragraph index of the paragraph.
+     * @return number of characters in the paragraph.
+     */
+    public int getParagraphLength(int paragraph){
+        return paragraphLengths[paragraph];
+    }
+    
+    /**
+     * @return number of characters in the text of the document, including the new lines
+     * between paragraphs.
+     */
+    public int getLength(){
+        if (paragraphs.length==0){
+            return 0;
+        }
+        int last = paragraphs.length-1;
+        return paragraphStarts[last]+paragraphLengths[last];
+    }
+
+}
@@ -0,0 +1,101 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Told how far along reading or saving a document is, and asked whether it should stop. Used
+ * by <code>{@link lal.pbib.DocumentSession#getText(DocumentProgress)}</code> and 
+ * <code>{@link lal.pbib.DocumentSession#commit(DocumentProgress)}</code> so a window can show
+ * a progress bar and the text of the document as it is read.
+ * <p>
+ * The methods are called on the thread doing the work, which is usually not the Event 
+ * Dispatch Thread. When <code>{@link lal.pbib.DocumentProgress#isCanceled()}</code> is true
+ * the work stops with an <code>InterruptedIOException</code> the next time it checks, unless
+ * <code>{@link lal.pbib.DocumentProgress#replacing()}</code> was already called.
+ * @author L. Arthur Lewis II
+ */
+public interface DocumentProgress {
+    
+    /**
+     * progress that isn't shown anywhere and is never canceled.
+     */
+    public static final DocumentProgress NONE = (stage, done, total) -> {};
+    
+    /**
+     * what is being done to the document.
+     */
+    public enum Stage {
+        /**
+         * bytes of the file are being read.
+         */
+        READING,
+        /**
+         * the paragraphs of the document are being gone through.
+         */
+        PARAGRAPHS,
+        /**
+         * bytes of the file are being written.
+         */
+        WRITING;
+    }
+    
+    /**
+     * @param stage what is being done.
+     * @param done how many bytes or paragraphs are done.
+     * @param total how many there are in all, or -1 if it isn't known.
+     */
+    public void progress(Stage stage, long done, long total);
+    
+    /**
+     * called with each paragraph of the text of the document in order, the text is the 
+     * paragraphs joined by new lines.
+     * @param text text of the paragraph.
+     */
+    public default void paragraphRead(String text){}
+    
+    /**
+     * called once the new file has been written, right before it replaces the old one. The
+     * work doesn't check whether it was canceled after this.
+     */
+    public default void replacing(){}
+    
+    /**
+     * @return true if the work should stop.
+     */
+    public default boolean isCanceled(){
+        return false;
+    }
+    
+    /**
+     * @throws InterruptedIOException if the work should stop.
+     */
+    public default void checkCanceled() throws InterruptedIOException {
+        if (isCanceled()){
+            throw new InterruptedIOException("Canceled");
+        }
+    }
+
+}
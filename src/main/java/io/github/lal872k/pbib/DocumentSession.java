@@ -0,0 +1,235 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Keeps one document open while citations are being added to it. The document is only read
+ * the first time it is needed, the bibliography and footnotes are queued up, and everything 
+ * is written to the file once when <code>{@link lal.pbib.DocumentSession#commit()}</code> is
+ * called, instead of loading and saving the whole document for each change.
+ * <p>
+ * The document can either be kept in memory with a <code>{@link lal.pbib.DocumentIO}</code>
+ * or rewritten on commit with a <code>{@link lal.pbib.StreamingDocumentIO}</code>, which 
+ * only keeps the text of the document in memory.
+ * @author L. Arthur Lewis II
+ */
+public final class DocumentSession {
+    
+    /**
+     * how the document is read and written.
+     */
+    public enum Mode {
+        /**
+         * the whole document is loaded with <code>{@link lal.pbib.DocumentIO}</code>.
+         */
+        IN_MEMORY, 
+        /**
+         * the document is copied with the changes with 
+         * <code>{@link lal.pbib.StreamingDocumentIO}</code>.
+         */
+        STREAMING;
+    }
+    
+    private final File file;
+    private final Mode mode;
+    
+    private DocumentIO dio;
+    private StreamingDocumentIO sio;
+    
+    /**
+     * text of the document as it was before any of the queued changes.
+     */
+    private String text;
+    
+    private Citation[] bibliography;
+    private final ArrayList<Footnote> footnotes;
+    
+    private int backups;
+    
+    public DocumentSession(File file){
+        this(file, Mode.IN_MEMORY);
+    }
+    
+    public DocumentSession(File file, Mode mode){
+        this.file = file;
+        this.mode = mode;
+        footnotes = new ArrayList();
+    }
+    
+    /**
+     * @return the text of the document, which is what the positions of the footnotes are 
+     * based on. The document is read the first time this is called.
+     * @throws IOException reading issue.
+     */
+    public synchronized String getText() throws IOException {
+        return getText(DocumentProgress.NONE);
+    }
+    
+    /**
+     * gets the text of the document, telling the progress how much has been read. Each 
+     * paragraph is given to the progress, even if the text was already read before.
+     * @param progress told about the reading, and able to stop it.
+     * @return the text of the document.
+     * @throws IOException reading issue, or an <code>InterruptedIOException</code> if the 
+     * progress was canceled. The text is read again the next time.
+     */
+    public synchronized String getText(DocumentProgress progress) throws IOException {
+        if (text==null){
+            if (mode==Mode.STREAMING){
+                text = getStreamingDocument().getText(progress);
+            } else {
+                text = getDocument(progress).getText(progress);
+            }
+        } else if (progress!=DocumentProgress.NONE){
+            int start = 0;
+            for (int end; (end = text.indexOf('\n', start))!=-1; start = end+1){
+                progress.paragraphRead(text.substring(start, end));
+            }
+            progress.paragraphRead(text.substring(start));
+        }
+        return text;
+    }
+    
+    /**
+     * queues a bibliography to be added on commit. Queuing a bibliography replaces one that 
+     * was queued but not committed yet.
+     * @param cites citations in the bibliography.
+     */
+    public synchronized void queueBibliography(Citation[] cites){
+        bibliography = cites.clone();
+    }
+    
+    /**
+     * queues footnotes to be added on commit. The positions of the footnotes are in the text 
+     * given by <code>{@link lal.pbib.DocumentSession#getText()}</code>.
+     * @param footnotes footnotes to be added.
+     */
+    public synchronized void queueFootnotes(Footnote[] footnotes){
+        for (Footnote footnote : footnotes){
+            this.footnotes.add(footnote);
+        }
+    }
+    
+    /**
+     * @return true if there are changes that haven't been written to the file.
+     */
+    public synchronized boolean hasPendingChanges(){
+        return bibliography!=null || !footnotes.isEmpty();
+    }
+    
+    /**
+     * adds everything that was queued and saves the document once. The footnotes are added 
+     * before the bibliography so their positions are still in the same text.
+     * @throws IOException reading or writing issue, the queued changes are kept so committing
+     * can be tried again.
+     */
+    public synchronized void commit() throws IOException {
+        commit(DocumentProgress.NONE);
+    }
+    
+    /**
+     * adds everything that was queued and saves the document once, telling the progress how
+     * much has been read and written.
+     * @param progress told about the reading and writing, and able to stop it.
+     * @throws IOException reading or writing issue, or an <code>InterruptedIOException</code>
+     * if the progress was canceled. Either way the file and the queued changes are left as 
+     * they were.
+     */
+    public synchronized void commit(DocumentProgress progress) throws IOException {
+        if (!hasPendingChanges()){
+            return;
+        }
+        Footnote[] queued = footnotes.toArray(new Footnote[0]);
+        if (mode==Mode.STREAMING){
+            StreamingDocumentIO streaming = getStreamingDocument();
+            streaming.setBackups(backups);
+            streaming.write(bibliography, queued, progress);
+        } else {
+            DocumentIO document = getDocument(progress);
+            if (queued.length>0){
+                document.addFootnote(queued);
+            }
+            if (bibliography!=null){
+                document.addBibliography(bibliography);
+            }
+            document.setBackups(backups);
+            try {
+                document.saveDocument(progress);
+            } catch (IOException ex) {
+                // the changes are already in the loaded document, so start over from the file
+                dio = null;
+                text = null;
+                throw ex;
+            }
+        }
+        bibliography = null;
+        footnotes.clear();
+        // the bibliography added new text to the end
+        text = null;
+    }
+    
+    /**
+     * forgets the queued changes.
+     */
+    public synchronized void discard(){
+        bibliography = null;
+        footnotes.clear();
+    }
+    
+    private DocumentIO getDocument(DocumentProgress progress) throws IOException {
+        if (dio==null){
+            DocumentIO document = new DocumentIO(file);
+            document.loadDocument(progress);
+            dio = document;
+        }
+        return dio;
+    }
+    
+    private StreamingDocumentIO getStreamingDocument(){
+        if (sio==null){
+            sio = new StreamingDocumentIO(file);
+        }
+        return sio;
+    }
+    
+    /**
+     * @param backups how many old versions of the file to keep when committing.
+     */
+    public synchronized void setBackups(int backups){
+        this.backups = backups;
+    }
+    
+    public File getFile(){
+        return file;
+    }
+    
+    public Mode getMode(){
+        return mode;
+    }
+
+}
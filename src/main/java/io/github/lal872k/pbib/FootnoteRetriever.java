@@ -40,4 +40,14 @@ public class FootnoteRetriever extends Retriever<Footnote[]>{
         super(new MakeFootnoteFrame(null, document, cites));
     }
     
+    /**
+     * the window opens right away and reads the text of the document while it is open.
+     * @param session the document footnotes are being added to.
+     * @param cites citations that can be used for footnotes.
+     * @param parentFrame window the footnote window is shown over.
+     */
+    public FootnoteRetriever(DocumentSession session, Citation[] cites, Component parentFrame){
+        super(new MakeFootnoteFrame(parentFrame, session, cites));
+    }
+    
 }
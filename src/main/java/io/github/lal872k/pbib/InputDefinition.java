@@ -0,0 +1,114 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import io.github.lal872k.pbib.ui.comps.CompInput;
+import io.github.lal872k.pbib.ui.comps.DateInput;
+import io.github.lal872k.pbib.ui.comps.TextInput;
+
+/**
+ * Describes one field of a <code>{@link lal.pbib.Source}</code> without making anything from
+ * Swing. The field is only turned into a <code>{@link lal.pbib.ui.comps.CompInput}</code> 
+ * with <code>{@link lal.pbib.InputDefinition#createEditor()}</code> when a form is shown.
+ * @author L. Arthur Lewis II
+ */
+public final class InputDefinition {
+    
+    /**
+     * what kind of editor is made for the field.
+     */
+    public enum Kind {
+        TEXT, LINK, DATE;
+    }
+    
+    private final String title, name;
+    private final Kind kind;
+    /**
+     * null when the field doesn't have a hint.
+     */
+    private final String description, example;
+    private final boolean bold, italic;
+    
+    public InputDefinition(String title, String name, Kind kind, String description, 
+            String example, boolean bold, boolean italic){
+        this.title = title;
+        this.name = name;
+        this.kind = kind;
+        this.description = description;
+        this.example = example;
+        this.bold = bold;
+        this.italic = italic;
+    }
+    
+    /**
+     * makes a new editor for the field, with a hint if the field has one.
+     * @return the editor.
+     */
+    public CompInput createEditor(){
+        CompInput in;
+        if (kind==Kind.DATE){
+            in = description!=null ? new DateInput(title, name, description) : 
+                    new DateInput(title, name);
+        } else {
+            in = description!=null && example!=null ? 
+                    new TextInput(title, name, description, example) : 
+                    new TextInput(title, name);
+        }
+        in.setBold(bold);
+        in.setItalic(italic);
+        return in;
+    }
+    
+    public String getTitle(){
+        return title;
+    }
+    
+    /**
+     * @return the name used to refer to the field in the reference codes.
+     */
+    public String getName(){
+        return name;
+    }
+    
+    public Kind getKind(){
+        return kind;
+    }
+    
+    public String getDescription(){
+        return description;
+    }
+    
+    public String getExample(){
+        return example;
+    }
+    
+    public boolean isBold(){
+        return bold;
+    }
+    
+    public boolean isItalic(){
+        return italic;
+    }
+
+}
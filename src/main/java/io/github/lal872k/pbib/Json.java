@@ -0,0 +1,288 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Just enough JSON for <code>{@link lal.pbib.RenderServer}</code>. Objects are read into 
+ * <code>LinkedHashMap</code>s, arrays into <code>ArrayList</code>s, numbers into 
+ * <code>Double</code>s, and <code>true</code>, <code>false</code> and <code>null</code> into 
+ * <code>Boolean</code>s and null. Objects and arrays can only be nested 
+ * <code>{@link lal.pbib.Json#MAX_DEPTH}</code> deep, so text from a client can't use up the 
+ * stack of the thread reading it.
+ * @author L. Arthur Lewis II
+ */
+public final class Json {
+    
+    /**
+     * most objects and arrays that can be inside of each other.
+     */
+    public static final int MAX_DEPTH = 64;
+    
+    private final String text;
+    private int pos;
+    private int depth;
+    
+    private Json(String text){
+        this.text = text;
+    }
+    
+    /**
+     * @param text JSON text.
+     * @return the value in the text.
+     * @throws IllegalArgumentException if the text isn't valid JSON or is nested deeper than
+     * <code>{@link lal.pbib.Json#MAX_DEPTH}</code>.
+     */
+    public static Object parse(String text){
+        Json json = new Json(text);
+        Object value = json.readValue();
+        json.skipSpaces();
+        if (json.pos<text.length()){
+            throw json.error("Unexpected text after the value");
+        }
+        return value;
+    }
+    
+    /**
+     * adds a string to the end of the text with quotes around it and its special characters 
+     * escaped.
+     * @param value the string, null is written as <code>null</code>.
+     * @param out where the string is added.
+     */
+    public static void quote(String value, StringBuilder out){
+        if (value==null){
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int q = 0; q < value.length(); q++){
+            char letter = value.charAt(q);
+            switch (letter){
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (letter<0x20){
+                        out.append(String.format("\\u%04x", (int) letter));
+                    } else {
+                        out.append(letter);
+                    }
+            }
+        }
+        out.append('"');
+    }
+    
+    private Object readValue(){
+        if (!skipSpaces()){
+            throw error("Missing value");
+        }
+        char letter = text.charAt(pos);
+        switch (letter){
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                return readWord("true", Boolean.TRUE);
+            case 'f':
+                return readWord("false", Boolean.FALSE);
+            case 'n':
+                return readWord("null", null);
+            default:
+                return readNumber();
+        }
+    }
+    
+    private LinkedHashMap<String, Object> readObject(){
+        LinkedHashMap<String, Object> object = new LinkedHashMap();
+        enter();
+        pos++;
+        if (skipSpaces() && text.charAt(pos)=='}'){
+            pos++;
+            depth--;
+            return object;
+        }
+        while (true){
+            if (!skipSpaces() || text.charAt(pos)!='"'){
+                throw error("Expected a name");
+            }
+            String name = readString();
+            expect(':');
+            object.put(name, readValue());
+            if (!skipSpaces()){
+                throw error("Missing }");
+            }
+            char letter = text.charAt(pos++);
+            if (letter=='}'){
+                depth--;
+                return object;
+            }
+            if (letter!=','){
+                throw error("Expected , or }");
+            }
+        }
+    }
+    
+    private ArrayList<Object> readArray(){
+        ArrayList<Object> array = new ArrayList();
+        enter();
+        pos++;
+        if (skipSpaces() && text.charAt(pos)==']'){
+            pos++;
+            depth--;
+            return array;
+        }
+        while (true){
+            array.add(readValue());
+            if (!skipSpaces()){
+                throw error("Missing ]");
+            }
+            char letter = text.charAt(pos++);
+            if (letter==']'){
+                depth--;
+                return array;
+            }
+            if (letter!=','){
+                throw error("Expected , or ]");
+            }
+        }
+    }
+    
+    private String readString(){
+        StringBuilder value = new StringBuilder();
+        pos++;
+        while (pos<text.length()){
+            char letter = text.charAt(pos++);
+            if (letter=='"'){
+                return value.toString();
+            }
+            if (letter!='\\'){
+                value.append(letter);
+                continue;
+            }
+            if (pos>=text.length()){
+                break;
+            }
+            char escaped = text.charAt(pos++);
+            switch (escaped){
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    if (pos+4>text.length()){
+                        throw error("Bad unicode escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(pos, pos+4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Bad unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        throw error("Missing end of string");
+    }
+    
+    private Object readWord(String word, Object value){
+        if (!text.startsWith(word, pos)){
+            throw error("Unexpected value");
+        }
+        pos += word.length();
+        return value;
+    }
+    
+    private Double readNumber(){
+        int start = pos;
+        while (pos<text.length() && "+-0123456789.eE".indexOf(text.charAt(pos))!=-1){
+            pos++;
+        }
+        try {
+            return Double.valueOf(text.substring(start, pos));
+        } catch (NumberFormatException ex) {
+            throw error("Unexpected value");
+        }
+    }
+    
+    private void expect(char letter){
+        if (!skipSpaces() || text.charAt(pos)!=letter){
+            throw error("Expected "+letter);
+        }
+        pos++;
+    }
+    
+    /**
+     * @return true if there is still text left.
+     */
+    private boolean skipSpaces(){
+        while (pos<text.length() && Character.isWhitespace(text.charAt(pos))){
+            pos++;
+        }
+        return pos<text.length();
+    }
+    
+    /**
+     * goes one object or array deeper.
+     */
+    private void enter(){
+        if (++depth>MAX_DEPTH){
+            throw error("Nested deeper than "+MAX_DEPTH);
+        }
+    }
+    
+    private IllegalArgumentException error(String message){
+        return new IllegalArgumentException(message+" at character "+pos);
+    }
+
+}
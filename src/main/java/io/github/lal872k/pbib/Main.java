@@ -26,6 +26,8 @@ package io.github.lal872k.pbib;
 import io.github.lal872k.pbib.ui.SourceManagerFrame;
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
 import javax.swing.JFrame;
 import nu.xom.ParsingException;
 
@@ -36,9 +38,59 @@ import nu.xom.ParsingException;
 public class Main {
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments, <code>--batch manifest.xml</code> adds the 
+     * citations in the manifest without opening any windows (see 
+     * <code>{@link lal.pbib.BatchProcessor}</code>), <code>--threads n</code> sets how many
+     * documents are done at once and <code>--debug</code> prints the debug messages. 
+     * <code>--serve port</code> starts a <code>{@link lal.pbib.RenderServer}</code> instead, 
+     * using <code>--threads</code> for the number of requests answered at once. 
+     * <code>--no-snapshot</code> reads the source library file even if it hasn't changed and 
+     * <code>--parser xom|stax</code> picks how it is parsed. <code>--library path</code> reads 
+     * the sources from a file or folder instead of the classpath and <code>--watch</code> 
+     * reads them again whenever they change (see 
+     * <code>{@link lal.pbib.SourceLibraryWatcher}</code>).
      */
     public static void main(String[] args) {
+        String manifest = null;
+        int port = -1;
+        int threads = 0;
+        boolean debug = false;
+        boolean watch = false;
+        try {
+            for (int q = 0; q < args.length; q++){
+                if (args[q].equals("--batch")){
+                    manifest = getValue(args, q++);
+                } else if (args[q].equals("--serve")){
+                    port = parseNumber("--serve", getValue(args, q++), 0, 65535);
+                } else if (args[q].equals("--threads")){
+                    threads = parseNumber("--threads", getValue(args, q++), 1, Integer.MAX_VALUE);
+                } else if (args[q].equals("--debug")){
+                    debug = true;
+                } else if (args[q].equals("--no-snapshot")){
+                    SourceLibraryReader.setUsingSnapshot(false);
+                } else if (args[q].equals("--library")){
+                    SourceLibraryReader.setLibraryLocation(new File(getValue(args, q++)));
+                } else if (args[q].equals("--watch")){
+                    watch = true;
+                } else if (args[q].equals("--parser")){
+                    SourceLibraryReader.setParser(parseParser(getValue(args, q++)));
+                } else {
+                    throw new IllegalArgumentException("Unknown option: "+args[q]);
+                }
+            }
+        } catch (IllegalArgumentException ex){
+            System.err.println(ex.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+        if (manifest!=null){
+            System.exit(runBatch(new File(manifest), threads, debug));
+        }
+        if (port!=-1){
+            runServer(port, threads, debug, watch);
+            return;
+        }
+        
         SourceLibrary sl = null;
         ///*
         try {
@@ -60,7 +112,135 @@ public class Main {
             return;
         }
         //*/
+        if (watch){
+            watchLibrary(sl);
+        }
         new SourceManagerFrame(sl);
     }
     
+    /**
+     * @param args the command line arguments.
+     * @param option index of an option that has to be followed by a value.
+     * @return the argument after the option.
+     * @throws IllegalArgumentException if the option is the last argument.
+     */
+    private static String getValue(String[] args, int option){
+        if (option+1>=args.length){
+            throw new IllegalArgumentException(args[option]+" needs a value.");
+        }
+        return args[option+1];
+    }
+    
+    /**
+     * @param option option the value was given to, used in the error message.
+     * @return the value as a number.
+     * @throws IllegalArgumentException if the value isn't a number from <code>min</code> to 
+     * <code>max</code>.
+     */
+    private static int parseNumber(String option, String value, int min, int max){
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException ex){
+            throw new IllegalArgumentException(option+" needs a number, not \""+value+"\".");
+        }
+        if (number<min || number>max){
+            throw new IllegalArgumentException(option+" needs a number from "+min+" to "+max+
+                    ", not "+number+".");
+        }
+        return number;
+    }
+    
+    /**
+     * @return the parser with that name, ignoring case.
+     * @throws IllegalArgumentException if there is no parser with that name.
+     */
+    private static SourceLibraryReader.Parser parseParser(String name){
+        for (SourceLibraryReader.Parser parser : SourceLibraryReader.Parser.values()){
+            if (parser.name().equalsIgnoreCase(name)){
+                return parser;
+            }
+        }
+        throw new IllegalArgumentException("--parser needs xom or stax, not \""+name+"\".");
+    }
+    
+    /**
+     * prints the options that can be given to the program.
+     */
+    private static void printUsage(){
+        System.err.println("Usage: pbib [--batch manifest.xml | --serve port] [--threads n] "
+                + "[--debug]");
+        System.err.println("            [--library path] [--watch] [--no-snapshot] "
+                + "[--parser xom|stax]");
+    }
+    
+    /**
+     * starts the render server without opening any windows, it keeps running until the 
+     * program is stopped.
+     */
+    private static void runServer(int port, int threads, boolean debug, boolean watch){
+        BibConsole.setHeadless(true);
+        BibConsole.setDebugging(debug);
+        try {
+            SourceLibrary library = SourceLibraryReader.loadSourceLibrary();
+            RenderServer server = new RenderServer(library);
+            server.start(port, threads>0 ? threads : Runtime.getRuntime().availableProcessors());
+            if (watch){
+                watchLibrary(library);
+            }
+        } catch (ParsingException | IOException ex) {
+            BibConsole.printlnError("Unable to start the render server. Error Message: "+ex.getMessage());
+            System.exit(2);
+        }
+    }
+    
+    /**
+     * reads the library again whenever its file changes.
+     */
+    private static void watchLibrary(SourceLibrary library){
+        URL location = SourceLibraryReader.getLibraryLocation();
+        File file = location==null ? null : SourceLibraryReader.toFile(location);
+        if (file==null){
+            BibConsole.printlnError("Only a source library on the disk can be watched, use --library to pick one.");
+            return;
+        }
+        try {
+            new SourceLibraryWatcher(library, file).start();
+        } catch (IOException ex){
+            BibConsole.printlnError("Unable to watch the source library. Error Message: "+ex.getMessage());
+        }
+    }
+    
+    /**
+     * runs a batch without opening any windows.
+     * @return exit status, 0 if every document worked.
+     */
+    private static int runBatch(File manifest, int threads, boolean debug){
+        BibConsole.setHeadless(true);
+        BibConsole.setDebugging(debug);
+        long start = System.nanoTime();
+        try {
+            SourceLibrary library = SourceLibraryReader.loadSourceLibrary();
+            BatchProcessor processor = new BatchProcessor(library);
+            ArrayList<BatchProcessor.Job> jobs = processor.readManifest(manifest);
+            if (threads>0){
+                processor.setThreads(threads);
+            }
+            ArrayList<BatchProcessor.Result> results = processor.run(jobs);
+            BatchProcessor.printSummary(results, System.nanoTime()-start);
+            for (BatchProcessor.Result result : results){
+                if (!result.succeeded()){
+                    return 1;
+                }
+            }
+            return 0;
+        } catch (ParsingException | IOException | NumberFormatException ex) {
+            BibConsole.printlnError("Unable to run the batch. Error Message: "+ex.getMessage());
+            return 2;
+        } catch (InterruptedException ex) {
+            BibConsole.printlnError("The batch was interrupted.");
+            return 2;
+        }
+    }
+    
 }
@@ -0,0 +1,114 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streams that tell a <code>{@link lal.pbib.DocumentProgress}</code> how many bytes went 
+ * through them, and stop with an <code>InterruptedIOException</code> once it is canceled.
+ * @author L. Arthur Lewis II
+ */
+final class ProgressStreams {
+    
+    private ProgressStreams(){}
+    
+    /**
+     * @param in stream being read.
+     * @param total number of bytes that will be read, or -1 if it isn't known.
+     * @param progress told about the bytes read.
+     * @return the stream counting what is read.
+     */
+    static InputStream reading(InputStream in, long total, DocumentProgress progress){
+        if (progress==DocumentProgress.NONE){
+            return in;
+        }
+        return new FilterInputStream(in) {
+            private long count;
+            
+            @Override
+            public int read() throws IOException {
+                progress.checkCanceled();
+                int b = in.read();
+                if (b!=-1){
+                    progress.progress(DocumentProgress.Stage.READING, ++count, total);
+                }
+                return b;
+            }
+            
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                progress.checkCanceled();
+                int read = in.read(b, off, len);
+                if (read>0){
+                    count += read;
+                    progress.progress(DocumentProgress.Stage.READING, count, total);
+                }
+                return read;
+            }
+            
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = in.skip(n);
+                count += skipped;
+                return skipped;
+            }
+        };
+    }
+    
+    /**
+     * @param out stream being written.
+     * @param total number of bytes that will probably be written, or -1 if it isn't known.
+     * @param progress told about the bytes written.
+     * @return the stream counting what is written.
+     */
+    static OutputStream writing(OutputStream out, long total, DocumentProgress progress){
+        if (progress==DocumentProgress.NONE){
+            return out;
+        }
+        return new FilterOutputStream(out) {
+            private long count;
+            
+            @Override
+            public void write(int b) throws IOException {
+                progress.checkCanceled();
+                out.write(b);
+                progress.progress(DocumentProgress.Stage.WRITING, ++count, total);
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                progress.checkCanceled();
+                out.write(b, off, len);
+                count += len;
+                progress.progress(DocumentProgress.Stage.WRITING, count, total);
+            }
+        };
+    }
+
+}
@@ -23,16 +23,7 @@
  */
 package io.github.lal872k.pbib;
 
-import io.github.lal872k.pbib.ui.comps.CompInput;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.xmlbeans.impl.xb.xmlschema.SpaceAttribute;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTRPr;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
 
 /**
  *
@@ -103,21 +94,6 @@ public class ReferenceCode {
      */
     public static final String MULTIPLE_CONDITIONS_OR_REGEX = "\\"+MULTIPLE_CONDITIONS_OR;
     
-    /**
-     * place holder for a true statement. Used when doing conditions that contain parenthesis.
-     */
-    public static final String TRUE_PLACE_HOLDER = "TRUESTATEMENT00000";
-    
-    /**
-     * place holder for a true statement. Used when doing conditions that contain parenthesis.
-     */
-    public static final String FALSE_PLACE_HOLDER = "FALSESTATEMENT99999";
-    
-    /**
-     * regex used to find a pair of parenthesis with no other parenthesis inside.
-     */
-    public static final String PARENTHESIS_REGEX = "(\\([^\\(\\)]+\\))";
-    
     /**
      * validates a reference code, returns null if it is valid, an error message otherwise.
      * @param code reference code.
@@ -171,267 +147,17 @@ public class ReferenceCode {
     }
     
     /**
-     * turn a reference code used for the bibliography and footnotes into a paragraph
+     * turn a reference code used for the bibliography and footnotes into a paragraph. The code
+     * is compiled every time this is called, so use 
+     * <code>{@link lal.pbib.CompiledReferenceCode}</code> when making more than one citation 
+     * with the same code.
      * @param code reference code
-     * @param inputs all the inputs that will be referenced from.
+     * @param values the values that will be referenced from.
      * @return paragraph containing the code with references.
      */
-    public static CTP getCitation(String code, CompInput[] inputs){
-        CTP output = CTP.Factory.newInstance();
-        output.addNewR().addNewT().setStringValue(code);
-        
-        Pattern namePattern = Pattern.compile(NAME_REFERENCE_REGEX);
-        Pattern ifPattern = Pattern.compile(IF_NAME_REGEX);
-        Matcher m;
-        
-        // name referenes
-        m = namePattern.matcher(code);
-        while (m.find()){
-            // get the full message / place holder ex.: {!name}
-            String full = m.group(1);
-            // get the actual name ex.: "{!name}" ==> "name"
-            String name = full.substring(2, full.length()-1);
-            // get the ctr for the replaced text
-            CTR replace = CTR.Factory.newInstance();
-            
-            // find the input with that name
-            for (CompInput in : inputs){
-                if (name.equals(in.getName())){
-                    // add the text inside the input field
-                    replace.addNewT().setStringValue(in.getData());
-                    
-                    // add any styles (bold/italic)
-                    if (in.isBold() || in.isItalic()){
-                        CTRPr rpr = replace.addNewRPr();
-                        if (in.isBold()){
-                            rpr.addNewB();
-                        }
-                        if (in.isItalic()){
-                            rpr.addNewI();
-                        }
-                    }
-                }
-            }
-            // replace the place holder with the text inside the input
-            replaceText(output, replace, full);
-        }
-        
-        // ifs
-        m = ifPattern.matcher(code);
-        while (m.find()){
-            // get the full message
-            String full = m.group(1);
-            // get just the contents of the message
-            String contents = full.substring(2, full.length()-1);
-            // make sure that the condition and output are seperated
-            if (contents.contains(new String(new char[]{CONDITION_AND_OUTPUT_SEPARATOR}))){
-                
-                // separate the contents by condition and output char
-                String[] coArray = contents.split(CONDITION_AND_OUTPUT_SEPERATOR_REGEX);
-                
-                // the conditions that need to be met (can't contain a separator inside the names)
-                String condition = coArray[0];
-                
-                // the output if the conditions are met
-                String out = arrayToStringWithDelimiter(Arrays.copyOfRange(coArray, 1, coArray.length), new String(new char[]{CONDITION_AND_OUTPUT_SEPARATOR}));
-                
-                // the ctr version of out
-                CTR outCTR = CTR.Factory.newInstance();
-                CTText t = outCTR.addNewT();
-                t.setStringValue(out);
-                t.setSpace(SpaceAttribute.Space.PRESERVE);
-                
-                // replace all fields with conditions
-                condition = replaceFieldsWithPlaceHolders(condition, inputs);
-                
-                // determine whether it is true or false
-                if (getConditionStatus(condition)){
-                    replaceText(output, outCTR, full);
-                } else {
-                    replaceText(output, CTR.Factory.newInstance(), full);
-                }
-            } else {
-                // invalid code no separator
-            }
-        }
-        return output;
-    }
-    
-    /**
-     * finds the first match of a string inside a paragraph and removes and replaces it with 
-     * the new run.
-     * @param ctp paragraph that contains all contents.
-     * @param replace the run to replace the text with.
-     * @param find the text to find inside the paragraph.
-     */
-    private static void replaceText(CTP ctp, CTR replace, String find){
-        // check all of the runs
-        for (int q = 0; q < ctp.getRArray().length; q++){
-            // get current ctr
-            CTR ctr = ctp.getRArray(q);
-            
-            // get text of all the t's and put it inside the text variable
-            String text = "";
-            for (CTText t : ctr.getTArray()){
-                text += t.getStringValue();
-            }
-            
-            // get location of the text to be found inside the current run
-            int index = text.indexOf(find);
-            
-            // run contains the text
-            if (index!=-1){
-                // remove text that needed to be found
-                text = text.replace(find, "");
-
-                // 1st half of the text cut from index
-                CTR half1 = CTR.Factory.newInstance();
-                CTText half1Text = half1.addNewT();
-                half1Text.setStringValue(text.substring(0, index));
-                half1Text.setSpace(SpaceAttribute.Space.PRESERVE);
-
-                // 2nd half of the text cut from index
-                CTR half2 = CTR.Factory.newInstance();
-                CTText half2Text = half2.addNewT();
-                half2Text.setStringValue(text.substring(index));
-                half2Text.setSpace(SpaceAttribute.Space.PRESERVE);
-
-                // remove the run working in to replace it with these three new ones
-                ctp.removeR(q);
-
-                // add new runs
-                DocumentIO.insertRinParagraph(ctp, new CTR[]{half2, replace, half1}, q);
-                break;
-            }
-        }
-    }
-    
-    /**
-     * replaces all references of a name with a place holder that represents whether it is 
-     * true or false by making it <code>{@link lal.pbib.ReferenceCode#TRUE_PLACE_HOLDER}</code>
-     * or <code>{@link lal.pbib.ReferenceCode#FALSE_PLACE_HOLDER}</code>.
-     * @param conditions the string that contains the conditions.
-     * @param inputs all of the inputs used with this line of conditions.
-     * @return a new string with the names of the inputs replaced with place holders for true
-     * and false based on whether or no the field was filled in.
-     */
-    public static String replaceFieldsWithPlaceHolders(String conditions, CompInput[] inputs){
-        // use a comparator to make any names that contain another name go first to avoid
-        // having any issues
-        Comparator<CompInput> sort = new Comparator<CompInput>() {
-            @Override
-            public int compare(CompInput o1, CompInput o2) {
-                if (o1.getName().contains(o2.getName())){
-                    return -1;
-                }
-                if (o2.getName().contains(o1.getName())){
-                    return 1;
-                }
-                return 0;
-            }
-        };
-        Arrays.sort(inputs, sort);
-        for (CompInput in : inputs){
-            // set the place holder based on whether or nor the value has been filled in
-            String placeHolder;
-            String placeHolderInverse;
-            if (in.getData().contentEquals("")){
-                placeHolder = FALSE_PLACE_HOLDER;
-                placeHolderInverse = TRUE_PLACE_HOLDER;
-            } else {
-                placeHolder = TRUE_PLACE_HOLDER;
-                placeHolderInverse = FALSE_PLACE_HOLDER;
-            }
-            // change all inverse occurances with the inverse place holder
-            conditions = conditions.replace(INVERSE+in.getName(), placeHolderInverse);
-            // change all occurances of that input field with the place holder
-            conditions = conditions.replace(in.getName(), placeHolder);
-        }
-        return conditions;
-    }
-    
-    /**
-     * determines whether an entire condition is true or false.
-     * @param condition the condition that is being checked.
-     * @return true if the entire condition is true, false otherwise.
-     */
-    public static boolean getConditionStatus(String condition){
-        // this can't hurt the program and it needs parenthesis to work
-        condition = "("+condition+")";
-        
-        // get the regex for the parenthesis
-        Pattern pat = Pattern.compile(PARENTHESIS_REGEX);
-        Matcher m;
-        
-        // keep going as long as there is parenthesis left
-        while (condition.contains("(") || condition.contains(")")){
-            m = pat.matcher(condition);
-            while (m.find()){
-                String parenText = m.group(1);
-                
-                // get the text inside the parentheis
-                String parenCondition = parenText.substring(1, parenText.length()-1);
-                
-                // statement was true
-                if (getConditionStatement(parenCondition)){
-                    condition = condition.replace(parenText, TRUE_PLACE_HOLDER);
-                } 
-                // statement was false
-                else {
-                    condition = condition.replace(parenText, FALSE_PLACE_HOLDER);
-                }
-            }
-        }
-        
-        return condition.equals(TRUE_PLACE_HOLDER);
-    }
-    
-    /**
-     * determines whether a line is OR or AND and then determines whether the whole line is 
-     * true or false.
-     * @param line the line to with all the place holders.
-     * @return true if the entire line is true, otherwise false.
-     */
-    public static boolean getConditionStatement(String line){
-        // determine whether it is an "and" or an "or"
-        String conditionSeparator = MULTIPLE_CONDITIONS_OR_REGEX;
-        boolean orStatement = true;
-        if (line.contains(new String(new char[]{MULTIPLE_CONDITIONS_AND}))){
-            conditionSeparator = MULTIPLE_CONDITIONS_AND_REGEX;
-            orStatement = false;
-        }
-        
-        // check to see how many of the place holders are true
-        String[] placeHolders = line.split(conditionSeparator);
-        int truePlaceHolders = 0;
-        for (String placeHolder : placeHolders){
-            if (placeHolder.equals(TRUE_PLACE_HOLDER)){
-                truePlaceHolders++;
-            }
-        }
-        
-        // if it is an OR separator than all we need is one true place holder, but if it is 
-        // and AND separator then we need as many true place holders as there are place 
-        // holders
-        return ((orStatement && truePlaceHolders>0) || (!orStatement && truePlaceHolders==placeHolders.length));
-    }
-    
-    /**
-     * turns an array into a string with a delimiter in between each item.
-     * @param array array of strings.
-     * @param delimiter delimiter in between each item.
-     * @return new string with each of the items of the array separated by the delimiter.
-     */
-    public static String arrayToStringWithDelimiter(String[] array, String delimiter){
-        String text = "";
-        for (int q = 0; q < array.length; q++){
-            String item = array[q];
-            text+=item;
-            if (q+1<array.length){
-                text+=delimiter;
-            }
-        }
-        return text;
+    public static CTP getCitation(String code, CitationValues values){
+        return CompiledReferenceCode.compile(code, 
+                values.getSourceType().getInputDefinitions()).getCitation(values);
     }
     
 }
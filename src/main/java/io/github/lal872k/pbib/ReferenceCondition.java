@@ -0,0 +1,294 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The condition of an if statement inside of a reference code parsed into a tree. The tree
+ * is checked against a <code>BitSet</code> where each bit is set if the field with that index
+ * was filled in.
+ * <p>
+ * Conditions are made of field names joined by
+ * <code>{@link lal.pbib.ReferenceCode#MULTIPLE_CONDITIONS_AND}</code> and
+ * <code>{@link lal.pbib.ReferenceCode#MULTIPLE_CONDITIONS_OR}</code>, names can be inverted
+ * with <code>{@link lal.pbib.ReferenceCode#INVERSE}</code> and grouped with parenthesis.
+ * AND is checked before OR, so <code>a+b|c</code> is the same as <code>(a+b)|c</code>. A name
+ * that isn't a field is never filled in.
+ * @author L. Arthur Lewis II
+ */
+public abstract class ReferenceCondition {
+    
+    /**
+     * condition that is always false, used for names that aren't fields.
+     */
+    private static final ReferenceCondition FALSE = new ReferenceCondition() {
+        @Override
+        public boolean isTrue(BitSet filled){
+            return false;
+        }
+        
+        @Override
+        void addFields(BitSet fields){}
+    };
+    
+    /**
+     * @param filled bit set where a bit is set if the field with that index was filled in.
+     * @return whether the condition is met.
+     */
+    public abstract boolean isTrue(BitSet filled);
+    
+    /**
+     * sets the bits of every field the condition looks at.
+     * @param fields where the bits are set.
+     */
+    abstract void addFields(BitSet fields);
+    
+    /**
+     * parses the condition of an if statement.
+     * @param condition the text before the
+     * <code>{@link lal.pbib.ReferenceCode#CONDITION_AND_OUTPUT_SEPARATOR}</code>.
+     * @param names names of the fields in the order of the bits that will be checked.
+     * @return the parsed condition.
+     */
+    public static ReferenceCondition parse(String condition, String[] names){
+        HashMap<String, Integer> indexes = new HashMap(names.length*2);
+        for (int q = 0; q < names.length; q++){
+            indexes.putIfAbsent(names[q], q);
+        }
+        return parse(condition, indexes);
+    }
+    
+    /**
+     * parses the condition of an if statement.
+     * @param condition the text before the
+     * <code>{@link lal.pbib.ReferenceCode#CONDITION_AND_OUTPUT_SEPARATOR}</code>.
+     * @param names index of the bit that will be checked for each name.
+     * @return the parsed condition.
+     */
+    public static ReferenceCondition parse(String condition, Map<String, Integer> names){
+        // anything left over (like an extra closing parenthesis) is ignored
+        return new Parser(condition, names).parseOr();
+    }
+    
+    /**
+     * reads a condition one character at a time, using one method per level of the grammar:
+     * or = and {| and}, and = not {+ not}, not = !not | (or) | name.
+     */
+    private static final class Parser {
+        
+        private final String text;
+        private final Map<String, Integer> names;
+        private int pos;
+        
+        Parser(String text, Map<String, Integer> names){
+            this.text = text;
+            this.names = names;
+        }
+        
+        ReferenceCondition parseOr(){
+            ArrayList<ReferenceCondition> parts = new ArrayList();
+            parts.add(parseAnd());
+            while (skipSpaces() && text.charAt(pos)==ReferenceCode.MULTIPLE_CONDITIONS_OR){
+                pos++;
+                parts.add(parseAnd());
+            }
+            if (parts.size()==1){
+                return parts.get(0);
+            }
+            return new Or(parts.toArray(new ReferenceCondition[0]));
+        }
+        
+        ReferenceCondition parseAnd(){
+            ArrayList<ReferenceCondition> parts = new ArrayList();
+            parts.add(parseNot());
+            while (skipSpaces() && text.charAt(pos)==ReferenceCode.MULTIPLE_CONDITIONS_AND){
+                pos++;
+                parts.add(parseNot());
+            }
+            if (parts.size()==1){
+                return parts.get(0);
+            }
+            return new And(parts.toArray(new ReferenceCondition[0]));
+        }
+        
+        ReferenceCondition parseNot(){
+            if (!skipSpaces()){
+                return FALSE;
+            }
+            char letter = text.charAt(pos);
+            if (letter==ReferenceCode.INVERSE){
+                pos++;
+                return new Not(parseNot());
+            }
+            if (letter=='('){
+                pos++;
+                ReferenceCondition group = parseOr();
+                // a missing closing parenthesis is treated as if it was at the end
+                if (skipSpaces() && text.charAt(pos)==')'){
+                    pos++;
+                }
+                return group;
+            }
+            return parseName();
+        }
+        
+        ReferenceCondition parseName(){
+            int start = pos;
+            while (pos < text.length() && !isSpecial(text.charAt(pos))){
+                pos++;
+            }
+            Integer index = names.get(text.substring(start, pos).trim());
+            return index==null ? FALSE : new Field(index);
+        }
+        
+        /**
+         * moves past any white space.
+         * @return true if there is still text left.
+         */
+        boolean skipSpaces(){
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))){
+                pos++;
+            }
+            return pos < text.length();
+        }
+        
+        static boolean isSpecial(char letter){
+            return letter==ReferenceCode.MULTIPLE_CONDITIONS_AND ||
+                    letter==ReferenceCode.MULTIPLE_CONDITIONS_OR ||
+                    letter==ReferenceCode.INVERSE || letter=='(' || letter==')';
+        }
+    
+    }
+    
+    /**
+     * true when the field was filled in.
+     */
+    private static final class Field extends ReferenceCondition {
+        
+        private final int index;
+        
+        Field(int index){
+            this.index = index;
+        }
+        
+        @Override
+        public boolean isTrue(BitSet filled){
+            return filled.get(index);
+        }
+        
+        @Override
+        void addFields(BitSet fields){
+            fields.set(index);
+        }
+    
+    }
+    
+    /**
+     * the opposite of another condition.
+     */
+    private static final class Not extends ReferenceCondition {
+        
+        private final ReferenceCondition condition;
+        
+        Not(ReferenceCondition condition){
+            this.condition = condition;
+        }
+        
+        @Override
+        public boolean isTrue(BitSet filled){
+            return !condition.isTrue(filled);
+        }
+        
+        @Override
+        void addFields(BitSet fields){
+            condition.addFields(fields);
+        }
+    
+    }
+    
+    /**
+     * true when all of the conditions are true.
+     */
+    private static final class And extends ReferenceCondition {
+        
+        private final ReferenceCondition[] conditions;
+        
+        And(ReferenceCondition[] conditions){
+            this.conditions = conditions;
+        }
+        
+        @Override
+        public boolean isTrue(BitSet filled){
+            for (ReferenceCondition condition : conditions){
+                if (!condition.isTrue(filled)){
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        void addFields(BitSet fields){
+            for (ReferenceCondition condition : conditions){
+                condition.addFields(fields);
+            }
+        }
+    
+    }
+    
+    /**
+     * true when at least one of the conditions is true.
+     */
+    private static final class Or extends ReferenceCondition {
+        
+        private final ReferenceCondition[] conditions;
+        
+        Or(ReferenceCondition[] conditions){
+            this.conditions = conditions;
+        }
+        
+        @Override
+        public boolean isTrue(BitSet filled){
+            for (ReferenceCondition condition : conditions){
+                if (condition.isTrue(filled)){
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        void addFields(BitSet fields){
+            for (ReferenceCondition condition : conditions){
+                condition.addFields(fields);
+            }
+        }
+    
+    }
+
+}
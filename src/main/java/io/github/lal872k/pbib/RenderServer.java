@@ -0,0 +1,338 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small HTTP server on this computer that turns field values into citations, so other 
+ * programs can use the reference codes without opening any windows. The source library is 
+ * read once and the codes of each source type are compiled once, so each request only fills
+ * in the values.
+ * <p>
+ * <code>POST /render</code> takes a citation like
+ * <code>{"category": "Books", "type": "Single Author", "fields": {"author": "Smith, John"}}
+ * </code> and returns <code>{"bibliography": "...", "footnote": "..."}</code>. Many citations 
+ * can be sent at once as <code>{"citations": [...]}</code> or just an array, in which case 
+ * the answer is <code>{"results": [...]}</code> in the same order. A citation that can't be 
+ * made gets <code>{"error": "..."}</code> instead without stopping the others.
+ * <p>
+ * <code>GET /types</code> lists the source types and the names of their fields.
+ * <p>
+ * When the sources of the library are replaced the source types are looked up again, 
+ * requests that already started finish with the old ones.
+ * @author L. Arthur Lewis II
+ */
+public final class RenderServer {
+    
+    /**
+     * largest request that is read, in bytes.
+     */
+    private static final int MAX_REQUEST_SIZE = 4*1024*1024;
+    
+    /**
+     * the source types of the library when it was last read.
+     */
+    private volatile Types types;
+    
+    private HttpServer server;
+    private ExecutorService pool;
+    
+    /**
+     * the source types of a library, made once each time the library changes.
+     */
+    private static final class Types {
+        
+        /**
+         * source types by their category and title.
+         */
+        private final HashMap<String, Source> byKey;
+        
+        /**
+         * answer to <code>GET /types</code>.
+         */
+        private final byte[] response;
+        
+        Types(SourceLibrary library){
+            byKey = new HashMap();
+            StringBuilder list = new StringBuilder("[");
+            for (SourceCategory category : library.getSources()){
+                for (Source type : category.getSourceTypes()){
+                    // compile now so the first request isn't slower
+                    type.getCompiledBibCode();
+                    type.getCompiledFootCode();
+                    byKey.put(getKey(category.getTitle(), type.getTitle()), type);
+                    
+                    if (list.length()>1){
+                        list.append(',');
+                    }
+                    list.append("{\"category\":");
+                    Json.quote(category.getTitle(), list);
+                    list.append(",\"type\":");
+                    Json.quote(type.getTitle(), list);
+                    list.append(",\"fields\":[");
+                    String[] names = type.getInputNames();
+                    for (int q = 0; q < names.length; q++){
+                        if (q>0){
+                            list.append(',');
+                        }
+                        Json.quote(names[q], list);
+                    }
+                    list.append("]}");
+                }
+            }
+            list.append(']');
+            response = list.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    
+    }
+    
+    /**
+     * @param library the source types that can be used.
+     */
+    public RenderServer(SourceLibrary library){
+        types = new Types(library);
+        library.addChangeListener(changed -> {
+            types = new Types(changed);
+            BibConsole.println("Render server is using the new source library.");
+        });
+    }
+    
+    private static String getKey(String category, String type){
+        return category+'\n'+type;
+    }
+    
+    /**
+     * starts listening on this computer only.
+     * @param port port to listen on, 0 to pick any free port.
+     * @param threads number of requests answered at the same time.
+     * @throws IOException if the port can't be used.
+     */
+    public synchronized void start(int port, int threads) throws IOException {
+        if (server!=null){
+            throw new IllegalStateException("The server is already running.");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 
+                0);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/types", this::handleTypes);
+        pool = Executors.newFixedThreadPool(Math.max(threads, 1));
+        server.setExecutor(pool);
+        server.start();
+        BibConsole.println("Render server listening on http://localhost:"+getPort()+"/");
+    }
+    
+    /**
+     * stops the server, waiting up to a second for requests that are being answered.
+     */
+    public synchronized void stop(){
+        if (server==null){
+            return;
+        }
+        server.stop(1);
+        pool.shutdown();
+        server = null;
+        pool = null;
+    }
+    
+    /**
+     * @return the port that the server is listening on.
+     */
+    public synchronized int getPort(){
+        return server==null ? -1 : server.getAddress().getPort();
+    }
+    
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")){
+                sendError(exchange, 405, "Use POST");
+                return;
+            }
+            String request = readRequest(exchange.getRequestBody());
+            if (request==null){
+                sendError(exchange, 413, "The request is too large");
+                return;
+            }
+            String response;
+            try {
+                response = render(request);
+            } catch (IllegalArgumentException ex) {
+                sendError(exchange, 400, ex.getMessage());
+                return;
+            } catch (RuntimeException | Error ex) {
+                // the client still gets an answer instead of the connection just closing
+                ex.printStackTrace();
+                BibConsole.printlnError("Failed to render a request. Error Message: "+ex);
+                sendError(exchange, 500, "Unable to render the citation");
+                return;
+            }
+            send(exchange, 200, response.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleTypes(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")){
+                sendError(exchange, 405, "Use GET");
+                return;
+            }
+            send(exchange, 200, types.response);
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * makes the citations for a request without going through HTTP.
+     * @param request JSON for one citation, an array of citations or an object with a 
+     * <code>citations</code> array.
+     * @return the JSON answer.
+     * @throws IllegalArgumentException if the request isn't valid JSON or has the wrong shape.
+     */
+    public String render(String request){
+        // the same types are used for the whole request even if the library changes
+        Types current = types;
+        Object value = Json.parse(request);
+        List<?> citations = null;
+        if (value instanceof List){
+            citations = (List<?>) value;
+        } else if (value instanceof Map && ((Map<?, ?>) value).get("citations") instanceof List){
+            citations = (List<?>) ((Map<?, ?>) value).get("citations");
+        }
+        
+        StringBuilder response = new StringBuilder();
+        if (citations==null){
+            renderCitation(current, value, response);
+            return response.toString();
+        }
+        response.append("{\"results\":[");
+        for (int q = 0; q < citations.size(); q++){
+            if (q>0){
+                response.append(',');
+            }
+            renderCitation(current, citations.get(q), response);
+        }
+        response.append("]}");
+        return response.toString();
+    }
+    
+    private static void renderCitation(Types types, Object value, StringBuilder response){
+        if (!(value instanceof Map)){
+            response.append("{\"error\":\"A citation has to be an object\"}");
+            return;
+        }
+        Map<?, ?> citation = (Map<?, ?>) value;
+        Object category = citation.get("category");
+        Object type = citation.get("type");
+        Source sourceType = category instanceof String && type instanceof String ? 
+                types.byKey.get(getKey((String) category, (String) type)) : null;
+        if (sourceType==null){
+            response.append("{\"error\":");
+            Json.quote("Unknown source type: "+category+" / "+type, response);
+            response.append('}');
+            return;
+        }
+        
+        HashMap<String, String> values = new HashMap();
+        Object fields = citation.get("fields");
+        if (fields instanceof Map){
+            for (Map.Entry<?, ?> field : ((Map<?, ?>) fields).entrySet()){
+                values.put(String.valueOf(field.getKey()), toText(field.getValue()));
+            }
+        }
+        
+        Source source = sourceType.getFilledCopy(values);
+        response.append("{\"bibliography\":");
+        Json.quote(source.getBibCitationPreview(), response);
+        response.append(",\"footnote\":");
+        Json.quote(source.getFootnoteCitationPreview(), response);
+        response.append('}');
+    }
+    
+    /**
+     * @return the value of a field as text, whole numbers don't get a decimal point.
+     */
+    private static String toText(Object value){
+        if (value==null){
+            return "";
+        }
+        if (value instanceof Double){
+            double number = (Double) value;
+            if (number==Math.rint(number) && !Double.isInfinite(number)){
+                return Long.toString((long) number);
+            }
+        }
+        return value.toString();
+    }
+    
+    /**
+     * @return the request as text, or null if it is larger than 
+     * <code>{@link lal.pbib.RenderServer#MAX_REQUEST_SIZE}</code>.
+     */
+    private static String readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer))!=-1){
+            if (bytes.size()+read>MAX_REQUEST_SIZE){
+                return null;
+            }
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static void sendError(HttpExchange exchange, int status, String message) 
+            throws IOException {
+        StringBuilder response = new StringBuilder("{\"error\":");
+        Json.quote(message, response);
+        response.append('}');
+        send(exchange, status, response.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static void send(HttpExchange exchange, int status, byte[] response) 
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()){
+            out.write(response);
+        }
+    }
+
+}
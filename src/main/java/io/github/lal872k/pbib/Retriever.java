@@ -23,13 +23,20 @@
  */
 package io.github.lal872k.pbib;
 
+import io.github.lal872k.pbib.ui.BackgroundTasks;
 import io.github.lal872k.pbib.ui.MakeFrame;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingUtilities;
 
 
 /**
  * This class is used to retrieve data through the means of a window that functions as a pop 
- * up menu. Be careful about running into an issue with swing threads because this will stop
- * the current thread in <code>{@link lal.pbib.Retriever#retrieve()}</code>.
+ * up menu. <code>{@link lal.pbib.Retriever#retrieveAsync()}</code> opens the window and gives
+ * back a future that is completed when the user is done, so it can be chained with other 
+ * jobs without any thread having to wait. <code>{@link lal.pbib.Retriever#retrieve()}</code>
+ * waits for the same future, so it stops the current thread and can't be called on the Event
+ * Dispatch Thread.
  * @author L. Arthur Lewis II
  * @param <T> Type of data to retrieve
  */
@@ -37,9 +44,9 @@ public class Retriever<T> {
     
     private final MakeFrame frame;
     
-    private T contents;
+    private volatile T contents;
     
-    private boolean waiting = false;
+    private CompletableFuture<T> future;
     
     /**
      * enum used to indicate the return type of a make frame
@@ -67,39 +74,77 @@ public class Retriever<T> {
     }
     
     /**
-     * opens the window to retrieve the data from the user. The return is either 
-     * <code>{@link lal.pbib.Retriever.ReturnStatus#SELECTED}</code>. Be careful about running 
-     * into an issue with swing threads because this will stop
-     * the current thread.
+     * opens the window to retrieve the data from the user. Calling this again gives back the 
+     * same future instead of opening another window.
+     * @return future completed on the Event Dispatch Thread after the window is removed, with
+     * the data or null if the user canceled. It is completed exceptionally if the window 
+     * couldn't be opened.
+     */
+    public synchronized CompletableFuture<T> retrieveAsync(){
+        if (future==null){
+            CompletableFuture<T> result = frame.getResult();
+            future = result.whenCompleteAsync((t, ex) -> {
+                // remove the window
+                frame.dispose();
+                contents = t;
+                retrieved(t);
+            }, BackgroundTasks.EDT);
+            // open the window
+            BackgroundTasks.EDT.execute(() -> {
+                try {
+                    frame.openFrame();
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                    BibConsole.getConsole().printlnError("Failed to open window. Error Message: "+ex.getMessage());
+                }
+            });
+        }
+        return future;
+    }
+    
+    /**
+     * opens the window to retrieve the data from the user and waits for it. The return is 
+     * either <code>{@link lal.pbib.Retriever.ReturnStatus#SELECTED}</code>, 
+     * <code>{@link lal.pbib.Retriever.ReturnStatus#CANCELED}</code>, or
+     * <code>{@link lal.pbib.Retriever.ReturnStatus#ERROR}</code> if the window couldn't be 
+     * opened or this was called on the Event Dispatch Thread, which would never be able to 
+     * show the window.
      * @return 
      */
     public ReturnStatus retrieve(){
-        // make sure that this isn't called twice while it is running
-        if (!waiting){
-            waiting = true;
-            
-            // open the window
-            frame.openFrame();
-            
-            // retrieve the contents
-            try {
-                contents = (T) frame.getContents();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
-            }
-            
-            // remove the window
-            frame.dispose();
-            
-            // return the result
-            if (contents==null){
-                return ReturnStatus.CANCELED;
-            }
-            return ReturnStatus.SELECTED;
+        if (SwingUtilities.isEventDispatchThread()){
+            BibConsole.getConsole().printlnError("Retriever.retrieve() can't wait on the Event Dispatch Thread, use retrieveAsync() instead.");
+            return ReturnStatus.ERROR;
+        }
+        try {
+            retrieveAsync().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return ReturnStatus.ERROR;
+        } catch (ExecutionException ex) {
+            return ReturnStatus.ERROR;
         }
-        return ReturnStatus.ERROR;
+        
+        // return the result
+        if (contents==null){
+            return ReturnStatus.CANCELED;
+        }
+        return ReturnStatus.SELECTED;
+    }
+    
+    /**
+     * closes the window as if the user canceled.
+     */
+    public void cancel(){
+        frame.cancel();
     }
     
+    /**
+     * called once on the Event Dispatch Thread when the user is done with the window.
+     * @param contents the data, or null if the user canceled or the window couldn't be opened.
+     */
+    protected void retrieved(T contents){}
+    
     /**
      * gets the contents from the window after calling 
      * <code>{@link lal.pbib.Retriever#retrieve()}</code>.
@@ -25,23 +25,70 @@ package io.github.lal872k.pbib;
 
 import io.github.lal872k.pbib.ui.comps.CompInput;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import javax.swing.JPanel;
 import javax.swing.event.DocumentListener;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
 
 /**
  * This is the lowest class for organization of sources, and contains the code for formating 
  * the bibliography and footnotes. This is organized by  
  * <code>{@link lal.pbib.SourceCategory}</code>.
+ * <p>
+ * The fields are kept as <code>{@link lal.pbib.InputDefinition}</code>s and the citations 
+ * are made from <code>{@link lal.pbib.CitationValues}</code>. The Swing inputs used by the 
+ * form are only made the first time the form is shown, and the citation made by a source is
+ * whatever is in its form unless it was made with fixed values by 
+ * <code>{@link lal.pbib.Source#withValues(CitationValues)}</code>.
  * @author L. Arthur Lewis II
  */
 public class Source {
     
     private final String title, bibCode, footCode;
     
-    private final ArrayList<CompInput> inputs;
+    private final ArrayList<InputDefinition> inputs;
+    
+    private CompiledReferenceCode compiledBib, compiledFoot;
+    
+    /**
+     * the inputs in a form that is quick to look through, made again when the inputs change.
+     */
+    private Inputs inputsIndex;
+    
+    /**
+     * inputs of the form, made the first time they are needed.
+     */
+    private CompInput[] editors;
+    
+    /**
+     * values used instead of the form, null if the form is used.
+     */
+    private CitationValues values;
+    
+    /**
+     * the inputs as an array along with their names and where each name is. This is never 
+     * changed after it is made so it can be shared by copies of the source and used by more
+     * than one thread.
+     */
+    private static final class Inputs {
+        
+        private final InputDefinition[] definitions;
+        private final String[] names;
+        private final HashMap<String, Integer> slots;
+        
+        Inputs(InputDefinition[] definitions){
+            this.definitions = definitions;
+            names = new String[definitions.length];
+            slots = new HashMap(definitions.length*2);
+            for (int q = 0; q < definitions.length; q++){
+                names[q] = definitions[q].getName();
+                // the first input with a name is the one that is referenced
+                slots.putIfAbsent(names[q], q);
+            }
+        }
+    
+    }
     
     public Source(String title, String bibCode, String footCode){
         this.title = title;
@@ -50,24 +97,133 @@ public class Source {
         inputs = new ArrayList();
     }
     
-    public void addInput(CompInput in){
+    public void addInput(InputDefinition in){
         inputs.add(in);
+        clearCompiledCodes();
     }
     
-    public void removeInput(CompInput in){
+    public void removeInput(InputDefinition in){
         inputs.remove(in);
+        clearCompiledCodes();
+    }
+    
+    /**
+     * compiles the bib and foot code with the current inputs so they don't have to be parsed 
+     * every time a citation is made. This is called by 
+     * <code>{@link lal.pbib.SourceLibraryReader}</code> after all the inputs have been added, 
+     * otherwise it is done the first time a citation is made.
+     */
+    public void compileCodes(){
+        InputDefinition[] fields = getInputsArray();
+        compiledBib = CompiledReferenceCode.compile(bibCode, fields);
+        compiledFoot = CompiledReferenceCode.compile(footCode, fields);
+    }
+    
+    private void clearCompiledCodes(){
+        compiledBib = null;
+        compiledFoot = null;
+        inputsIndex = null;
+        editors = null;
+        values = null;
+    }
+    
+    /**
+     * @return the inputs in a form which is kept until the inputs change.
+     */
+    private Inputs getInputsIndex(){
+        Inputs index = inputsIndex;
+        if (index==null){
+            index = new Inputs(inputs.toArray(new InputDefinition[0]));
+            inputsIndex = index;
+        }
+        return index;
+    }
+    
+    /**
+     * @return the inputs as an array which is kept until the inputs change.
+     */
+    private InputDefinition[] getInputsArray(){
+        return getInputsIndex().definitions;
+    }
+    
+    /**
+     * @return the compiled version of the bib code.
+     */
+    public CompiledReferenceCode getCompiledBibCode(){
+        if (compiledBib==null){
+            compileCodes();
+        }
+        return compiledBib;
+    }
+    
+    /**
+     * @return the compiled version of the foot code.
+     */
+    public CompiledReferenceCode getCompiledFootCode(){
+        if (compiledFoot==null){
+            compileCodes();
+        }
+        return compiledFoot;
+    }
+    
+    /**
+     * @return the inputs in order.
+     */
+    public InputDefinition[] getInputDefinitions(){
+        return getInputsArray().clone();
+    }
+    
+    /**
+     * @param index index of the input.
+     * @return the input.
+     */
+    public InputDefinition getInputDefinition(int index){
+        return getInputsArray()[index];
+    }
+    
+    /**
+     * @return the names of the inputs in order.
+     */
+    public String[] getInputNames(){
+        return getInputsIndex().names.clone();
+    }
+    
+    /**
+     * finds an input by its name without looking through all of them.
+     * @param name name of the input.
+     * @return index of the input, or <code>{@link lal.pbib.CompiledReferenceCode#UNKNOWN_FIELD}
+     * </code> if there isn't one with that name.
+     */
+    public int getInputIndex(String name){
+        Integer slot = getInputsIndex().slots.get(name);
+        return slot==null ? CompiledReferenceCode.UNKNOWN_FIELD : slot;
     }
     
     public int getInputsLength(){
         return inputs.size();
     }
     
+    /**
+     * @return the inputs of the form, they are made the first time this is called.
+     */
+    private CompInput[] getEditors(){
+        if (editors==null){
+            InputDefinition[] fields = getInputsArray();
+            CompInput[] made = new CompInput[fields.length];
+            for (int q = 0; q < made.length; q++){
+                made[q] = fields[q].createEditor();
+            }
+            editors = made;
+        }
+        return editors;
+    }
+    
     /**
      * clears all the inputs by calling <code>{@link lal.pbib.ui.comps.CompInput#clear()}</code>
      * , this usually involves clearing the text or just reseting to default.
      */
     public void clearForm(){
-        for (CompInput in : inputs){
+        for (CompInput in : getEditors()){
             in.clear();
         }
     }
@@ -77,7 +233,7 @@ public class Source {
      * @param panel panel to add the inputs to.
      */
     public void fillForm(JPanel panel){
-        for (CompInput in : inputs){
+        for (CompInput in : getEditors()){
             panel.add(in.getComponent());
         }
     }
@@ -87,11 +243,45 @@ public class Source {
      * @param dl <code>DocumentListener</code> to add to the inputs
      */
     public void addDocumentListenerToInputs(DocumentListener dl){
-        for (CompInput in : inputs){
+        for (CompInput in : getEditors()){
             in.addDocListener(dl);
         }
     }
     
+    /**
+     * puts values into the inputs of the form, making the form if it hasn't been made.
+     * @param values values of the fields, they have to be for this source type.
+     */
+    public void setFormValues(CitationValues values){
+        CompInput[] current = getEditors();
+        for (int q = 0; q < current.length; q++){
+            current[q].setData(values.getValue(q));
+        }
+    }
+    
+    /**
+     * @return what is currently in the form, or empty values if the form hasn't been made.
+     */
+    public CitationValues getFormValues(){
+        CompInput[] current = editors;
+        if (current==null){
+            return CitationValues.empty(this);
+        }
+        String[] data = new String[current.length];
+        for (int q = 0; q < data.length; q++){
+            data[q] = current[q].getData();
+        }
+        return new CitationValues(this, data);
+    }
+    
+    /**
+     * @return the values citations are made from, either the fixed values or the form.
+     */
+    public CitationValues getValues(){
+        CitationValues fixed = values;
+        return fixed!=null ? fixed : getFormValues();
+    }
+    
     /**
      * title of the source ex.: Online Article
      * @return title of the source.
@@ -121,7 +311,7 @@ public class Source {
      * @return word paragraph.
      */
     public CTP getBibCitation(){
-        return ReferenceCode.getCitation(bibCode, inputs.toArray(new CompInput[0]));
+        return getCompiledBibCode().getCitation(getValues());
     }
     
     /**
@@ -129,7 +319,41 @@ public class Source {
      * @return word paragraph.
      */
     public CTP getFootnoteCitation(){
-        return ReferenceCode.getCitation(footCode, inputs.toArray(new CompInput[0]));
+        return getCompiledFootCode().getCitation(getValues());
+    }
+    
+    /**
+     * adds the runs for the bibliography to the end of a paragraph.
+     * @param ctp paragraph the runs are added to.
+     */
+    public void addBibCitation(CTP ctp){
+        getCompiledBibCode().addCitation(ctp, getValues());
+    }
+    
+    /**
+     * adds the runs for the footnote to the end of a paragraph.
+     * @param ctp paragraph the runs are added to.
+     */
+    public void addFootnoteCitation(CTP ctp){
+        getCompiledFootCode().addCitation(ctp, getValues());
+    }
+    
+    /**
+     * gives the runs for the bibliography to a writer.
+     * @param writer where the runs are sent to.
+     * @throws Exception any issue from the writer.
+     */
+    public void writeBibCitation(CitationRunWriter writer) throws Exception {
+        getCompiledBibCode().writeCitation(getValues(), writer);
+    }
+    
+    /**
+     * gives the runs for the footnote to a writer.
+     * @param writer where the runs are sent to.
+     * @throws Exception any issue from the writer.
+     */
+    public void writeFootnoteCitation(CitationRunWriter writer) throws Exception {
+        getCompiledFootCode().writeCitation(getValues(), writer);
     }
     
     /**
@@ -137,7 +361,7 @@ public class Source {
      * <code>{@link lal.pbib.Source#getBibCitation()}</code>.
      */
     public String getBibCitationPreview(){
-        return getCitationPreview(getBibCitation());
+        return getCompiledBibCode().getCitationText(getValues());
     }
     
     /**
@@ -145,33 +369,81 @@ public class Source {
      * <code>{@link lal.pbib.Source#getFootnoteCitation()}</code>
      */
     public String getFootnoteCitationPreview(){
-        return getCitationPreview(getFootnoteCitation());
+        return getCompiledFootCode().getCitationText(getValues());
     }
     
-    private String getCitationPreview(CTP ctp){
-        String preview = "";
-        for (CTR ctr : ctp.getRArray()){
-            for (CTText t : ctr.getTArray()){
-                preview += t.getStringValue();
-            }
-        }
-        return preview;
+    /**
+     * adds the <code>String</code> version of 
+     * <code>{@link lal.pbib.Source#getBibCitation()}</code> to the end of the text.
+     * @param text where the preview is added to.
+     */
+    public void appendBibCitationPreview(StringBuilder text){
+        getCompiledBibCode().appendCitationText(getValues(), text);
     }
     
+    /**
+     * adds the <code>String</code> version of 
+     * <code>{@link lal.pbib.Source#getFootnoteCitation()}</code> to the end of the text.
+     * @param text where the preview is added to.
+     */
+    public void appendFootnoteCitationPreview(StringBuilder text){
+        getCompiledFootCode().appendCitationText(getValues(), text);
+    }
     
+    /**
+     * makes a copy that always makes its citations from the values given, used when 
+     * citations are made without a form.
+     * @param values values of the fields, they have to be for this source type.
+     * @return copy of the source with the values filled in.
+     */
+    public Source withValues(CitationValues values){
+        Source newSource = copyType();
+        newSource.values = values;
+        return newSource;
+    }
     
     /**
-     * @return a deep copy of the instance.
+     * makes a copy that always makes its citations from the values given.
+     * @param values value of each input by its name, inputs that aren't given are left empty.
+     * @return copy of the source with the values filled in.
      */
-    public Source getDeepCopy(){
-        String title = getTitle();
-        String bibCode = getBibCode();
-        String footCode = getFootCode();
+    public Source getFilledCopy(Map<String, String> values){
+        return withValues(CitationValues.of(this, values));
+    }
+    
+    /**
+     * @return a new source with the same title, codes and inputs.
+     */
+    private Source copyType(){
         Source newSource = new Source(title, bibCode, footCode);
-        for (CompInput input : inputs){
-            newSource.addInput(input);
-        }
+        newSource.inputs.addAll(inputs);
+        // same inputs so the compiled codes can be shared
+        newSource.inputsIndex = getInputsIndex();
+        newSource.compiledBib = getCompiledBibCode();
+        newSource.compiledFoot = getCompiledFootCode();
         return newSource;
     }
     
+    /**
+     * makes a copy with its own form that starts with the values of this source, used to 
+     * edit a citation without changing it until it is saved.
+     * @return copy of the source that makes its citations from its own form.
+     */
+    public Source getEditableCopy(){
+        Source newSource = copyType();
+        newSource.setFormValues(getValues());
+        return newSource;
+    }
+    
+    /**
+     * makes a copy with a snapshot of the values, so changing the form afterwards doesn't 
+     * change the copy and the copy can be used by more than one thread at once.
+     * @return a deep copy of the instance.
+     */
+    public Source getDeepCopy(){
+        CitationValues fixed = values;
+        // values can't be changed so they don't have to be copied
+        return withValues(fixed!=null ? fixed : getFormValues());
+    }
+    
 }
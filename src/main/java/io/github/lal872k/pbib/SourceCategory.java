@@ -23,8 +23,13 @@
  */
 package io.github.lal872k.pbib;
 
+import java.util.HashMap;
+
 /**
- * Used to organize <code>{@link lal.pbib.Source}</code> by holding an array of them.
+ * Used to organize <code>{@link lal.pbib.Source}</code> by holding an array of them. The 
+ * sources are also kept by their titles so 
+ * <code>{@link lal.pbib.SourceCategory#getSourceType(String)}</code> doesn't have to look 
+ * through all of them.
  * @author L. Arthur Lewis II
  */
 public class SourceCategory {
@@ -32,9 +37,14 @@ public class SourceCategory {
     private Source[] sources;
     private String title;
     
+    /**
+     * sources by their title, made again whenever the sources are set.
+     */
+    private HashMap<String, Source> byTitle;
+    
     public SourceCategory(String title, Source[] sources){
         this.title = title;
-        this.sources = sources;
+        setSourceTypes(sources);
     }
     
     public void setTitle(String title){
@@ -42,7 +52,13 @@ public class SourceCategory {
     }
     
     public void setSourceTypes(Source[] sources){
+        HashMap<String, Source> index = new HashMap(sources.length*2);
+        for (Source sourceType : sources){
+            // the first source with a title is the one that is found
+            index.putIfAbsent(sourceType.getTitle(), sourceType);
+        }
         this.sources = sources;
+        byTitle = index;
     }
     
     public String getTitle(){
@@ -54,12 +70,7 @@ public class SourceCategory {
     }
     
     public Source getSourceType(String title){
-        for (Source sourceType : getSourceTypes()){
-            if (sourceType.getTitle().equals(title)){
-                return sourceType;
-            }
-        }
-        return null;
+        return byTitle.get(title);
     }
     
 }
@@ -23,50 +23,123 @@
  */
 package io.github.lal872k.pbib;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Highest class for organizing sources. Contains a list of 
  * <code>{@link lal.pbib.SourceCategory}</code>.
+ * <p>
+ * The categories and info are kept together in one snapshot that is never changed, adding 
+ * or removing a category makes a new snapshot. This lets a library that was read again (see 
+ * <code>{@link lal.pbib.SourceLibraryWatcher}</code>) be swapped in all at once with 
+ * <code>{@link lal.pbib.SourceLibrary#replaceWith(SourceLibrary)}</code> while other threads 
+ * are using it, anything that already got the sources keeps using the old ones.
  * @author L. Arthur Lewis II
  */
 public final class SourceLibrary {
     
-    private final ArrayList<SourceCategory> sources;
+    /**
+     * told when the sources of a library are replaced.
+     */
+    public interface ChangeListener {
+        /**
+         * @param library the library that was changed.
+         */
+        public void libraryChanged(SourceLibrary library);
+    }
+    
+    /**
+     * the categories and info at one point in time, with the categories kept by their title.
+     */
+    private static final class Snapshot {
+        
+        private final SourceCategory[] sources;
+        private final HashMap<String, SourceCategory> byTitle;
+        private final SourceLibraryInfo info;
+        
+        Snapshot(SourceCategory[] sources, SourceLibraryInfo info){
+            this.sources = sources;
+            this.info = info;
+            byTitle = new HashMap(sources.length*2);
+            for (SourceCategory source : sources){
+                // the first category with a title is the one that is found
+                byTitle.putIfAbsent(source.getTitle(), source);
+            }
+        }
+        
+        Snapshot(Snapshot snapshot, SourceLibraryInfo info){
+            sources = snapshot.sources;
+            byTitle = snapshot.byTitle;
+            this.info = info;
+        }
     
-    private SourceLibraryInfo info;
+    }
+    
+    private volatile Snapshot snapshot;
+    
+    private final CopyOnWriteArrayList<ChangeListener> listeners;
     
     public SourceLibrary(){
-        sources = new ArrayList();
+        snapshot = new Snapshot(new SourceCategory[0], null);
+        listeners = new CopyOnWriteArrayList();
+    }
+    
+    public synchronized void setInfo(SourceLibraryInfo info){
+        snapshot = new Snapshot(snapshot, info);
     }
     
-    public void setInfo(SourceLibraryInfo info){
-        this.info = info;
+    public synchronized void addSource(SourceCategory source){
+        SourceCategory[] sources = Arrays.copyOf(snapshot.sources, snapshot.sources.length+1);
+        sources[sources.length-1] = source;
+        snapshot = new Snapshot(sources, snapshot.info);
     }
     
-    public void addSource(SourceCategory source){
-        sources.add(source);
+    public synchronized void removeSource(SourceCategory source){
+        SourceCategory[] current = snapshot.sources;
+        for (int q = 0; q < current.length; q++){
+            if (current[q]==source){
+                SourceCategory[] sources = new SourceCategory[current.length-1];
+                System.arraycopy(current, 0, sources, 0, q);
+                System.arraycopy(current, q+1, sources, q, sources.length-q);
+                snapshot = new Snapshot(sources, snapshot.info);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * swaps in the sources and info of another library in one step and tells the listeners.
+     * @param newer library to take the sources from, usually one that was just read.
+     */
+    public void replaceWith(SourceLibrary newer){
+        synchronized (this){
+            snapshot = newer.snapshot;
+        }
+        for (ChangeListener listener : listeners){
+            listener.libraryChanged(this);
+        }
+    }
+    
+    public void addChangeListener(ChangeListener listener){
+        listeners.add(listener);
     }
     
-    public void removeSource(SourceCategory source){
-        sources.add(source);
+    public void removeChangeListener(ChangeListener listener){
+        listeners.remove(listener);
     }
     
     public SourceLibraryInfo getInfo(){
-        return info;
+        return snapshot.info;
     }
     
     public SourceCategory[] getSources(){
-        return sources.toArray(new SourceCategory[0]);
+        return snapshot.sources.clone();
     }
     
     public SourceCategory getSource(String title){
-        for (SourceCategory source : getSources()){
-            if (source.getTitle().equals(title)){
-                return source;
-            }
-        }
-        return null;
+        return snapshot.byTitle.get(title);
     }
     
 }
@@ -0,0 +1,186 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import nu.xom.ParsingException;
+
+/**
+ * Compares how long it takes <code>{@link lal.pbib.SourceLibraryReader#loadWithXom(File)}
+ * </code> and <code>{@link lal.pbib.StreamingSourceLibraryReader#loadSourceLibrary(File)}
+ * </code> to read large made up source libraries.
+ * <p>
+ * Arguments: <code>[categories] [sources per category] [runs]</code>, by default 
+ * 40, 10 and 20. Every library is read a few times before timing so the JIT has warmed up, 
+ * and the messages printed while reading are thrown away.
+ * @author L. Arthur Lewis II
+ */
+public final class SourceLibraryBenchmark {
+    
+    private static final int WARM_UP_RUNS = 5;
+    
+    private static final int INPUTS_PER_SOURCE = 8;
+    
+    private SourceLibraryBenchmark(){}
+    
+    public static void main(String[] args) throws IOException, ParsingException, XMLStreamException {
+        int categories = args.length>0 ? Integer.parseInt(args[0]) : 40;
+        int sources = args.length>1 ? Integer.parseInt(args[1]) : 10;
+        int runs = args.length>2 ? Integer.parseInt(args[2]) : 20;
+        BibConsole.setHeadless(true);
+        
+        File file = File.createTempFile("pbib-sources", ".xml");
+        file.deleteOnExit();
+        writeLibrary(file, categories, sources);
+        System.out.println("Library: "+categories+" categories, "+categories*sources+
+                " sources, "+file.length()/1024+" KB");
+        
+        PrintStream out = System.out, err = System.err;
+        PrintStream quiet = new PrintStream(new OutputStream(){
+            @Override
+            public void write(int b){}
+            @Override
+            public void write(byte[] b, int off, int len){}
+        });
+        long[] xom, stax;
+        System.setOut(quiet);
+        System.setErr(quiet);
+        try {
+            xom = time(file, SourceLibraryReader.Parser.XOM, runs);
+            stax = time(file, SourceLibraryReader.Parser.STAX, runs);
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        print("XOM", xom);
+        print("StAX", stax);
+    }
+    
+    /**
+     * @return fastest and total time in nanoseconds.
+     */
+    private static long[] time(File file, SourceLibraryReader.Parser parser, int runs) 
+            throws IOException, ParsingException {
+        for (int q = 0; q < WARM_UP_RUNS; q++){
+            read(file, parser);
+        }
+        long best = Long.MAX_VALUE, total = 0;
+        for (int q = 0; q < runs; q++){
+            long start = System.nanoTime();
+            read(file, parser);
+            long took = System.nanoTime()-start;
+            best = Math.min(best, took);
+            total += took;
+        }
+        return new long[]{best, total/Math.max(runs, 1)};
+    }
+    
+    private static SourceLibrary read(File file, SourceLibraryReader.Parser parser) 
+            throws IOException, ParsingException {
+        if (parser==SourceLibraryReader.Parser.STAX){
+            return StreamingSourceLibraryReader.loadSourceLibrary(file);
+        }
+        return SourceLibraryReader.loadWithXom(file);
+    }
+    
+    private static void print(String name, long[] times){
+        System.out.println(String.format("%-5s best %8.2f ms, average %8.2f ms", name, 
+                times[0]/1e6, times[1]/1e6));
+    }
+    
+    /**
+     * writes a made up library where every source type has the same kinds of inputs and 
+     * codes as the real one.
+     */
+    private static void writeLibrary(File file, int categories, int sources) 
+            throws IOException, XMLStreamException {
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))){
+            XMLStreamWriter out = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "UTF-8");
+            out.writeStartDocument("UTF-8", "1.0");
+            out.writeStartElement("sourcelib");
+            
+            out.writeStartElement("libinfo");
+            emptyElement(out, "title", "val", "Benchmark");
+            out.writeStartElement("instructions");
+            emptyElement(out, "para", "val", "Made up library.");
+            out.writeEndElement();
+            out.writeStartElement("updatehistory");
+            out.writeStartElement("update");
+            out.writeAttribute("ver", "1.00");
+            out.writeAttribute("rel", "1/1/2017");
+            emptyElement(out, "bullet", "val", "first");
+            out.writeEndElement();
+            out.writeEndElement();
+            out.writeEndElement();
+            
+            StringBuilder bib = new StringBuilder(), foot = new StringBuilder();
+            for (int q = 0; q < INPUTS_PER_SOURCE; q++){
+                bib.append("{@field").append(q).append("}{?field").append(q).append(":. }");
+                foot.append("{?field").append(q).append("+!field").append((q+1)%INPUTS_PER_SOURCE)
+                        .append(":(}{@field").append(q).append("}, ");
+            }
+            for (int q = 0; q < categories; q++){
+                out.writeStartElement("cat");
+                out.writeAttribute("title", "Category "+q);
+                for (int w = 0; w < sources; w++){
+                    out.writeStartElement("source");
+                    out.writeAttribute("title", "Source "+q+"."+w);
+                    emptyElement(out, "bib", "val", bib.toString());
+                    emptyElement(out, "foot", "val", foot.toString());
+                    out.writeStartElement("input");
+                    for (int e = 0; e < INPUTS_PER_SOURCE; e++){
+                        out.writeEmptyElement(e==INPUTS_PER_SOURCE-1 ? "date" : "text");
+                        out.writeAttribute("title", "Field "+e);
+                        out.writeAttribute("name", "field"+e);
+                        out.writeAttribute("italic", e==1 ? "true" : "false");
+                        out.writeAttribute("desc", "Description of field "+e);
+                        out.writeAttribute("ex", "Example "+e);
+                    }
+                    out.writeEndElement();
+                    out.writeEndElement();
+                }
+                out.writeEndElement();
+            }
+            
+            out.writeEndElement();
+            out.writeEndDocument();
+            out.close();
+        }
+    }
+    
+    private static void emptyElement(XMLStreamWriter out, String name, String attribute, 
+            String value) throws XMLStreamException {
+        out.writeEmptyElement(name);
+        out.writeAttribute(attribute, value);
+    }
+
+}
@@ -0,0 +1,430 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import nu.xom.ParsingException;
+
+/**
+ * Keeps a binary snapshot of a <code>{@link lal.pbib.SourceLibrary}</code> so the source 
+ * library file doesn't have to be parsed and checked every time the program starts.
+ * <p>
+ * The snapshot starts with the SHA-256 hash of the file it was made from (for a folder of 
+ * library files, the hash of their names and contents). The file is only read once: it is 
+ * hashed in memory and parsed from the same bytes if the snapshot can't be used. When the hash of the
+ * file still matches, the snapshot is memory mapped and read straight into the categories, 
+ * sources and input definitions; the reference codes were already checked when the snapshot 
+ * was made so they are only compiled again. When it doesn't match (or there is no snapshot) 
+ * the file is read by <code>{@link lal.pbib.SourceLibraryReader}</code> and a new snapshot 
+ * is saved with an <code>{@link lal.pbib.AtomicFileWriter}</code>.
+ * @author L. Arthur Lewis II
+ */
+public final class SourceLibraryCache {
+    
+    /**
+     * "PBSL", first four bytes of every snapshot.
+     */
+    private static final int MAGIC = 0x5042534C;
+    
+    /**
+     * changed whenever the layout of the snapshot changes so old snapshots aren't read.
+     */
+    private static final int VERSION = 1;
+    
+    private static final int HASH_LENGTH = 32;
+    
+    private static final int BOLD = 1, ITALIC = 2;
+    
+    private final File snapshot;
+    
+    /**
+     * @param snapshot file the snapshot is read from and saved to.
+     */
+    public SourceLibraryCache(File snapshot){
+        this.snapshot = snapshot;
+    }
+    
+    /**
+     * @return where the snapshot is kept by default: user home /.pbib/sources.snapshot
+     */
+    public static File getDefaultFile(){
+        return new File(new File(System.getProperty("user.home"), ".pbib"), "sources.snapshot");
+    }
+    
+    /**
+     * loads a source library from the snapshot if it was made from the same file, otherwise
+     * reads the file and saves a new snapshot.
+     * @param file source library file.
+     * @return the source library.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    public SourceLibrary load(File file) throws ParsingException, IOException {
+        if (file.isDirectory()){
+            return loadFolder(file);
+        }
+        return load(Files.readAllBytes(file.toPath()), file.getName());
+    }
+    
+    /**
+     * loads a source library from the snapshot if it was made from the same contents, 
+     * otherwise reads the url and saves a new snapshot.
+     * @param url source library, like a resource inside of a jar.
+     * @return the source library.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    public SourceLibrary load(URL url) throws ParsingException, IOException {
+        File file = SourceLibraryReader.toFile(url);
+        if (file!=null){
+            return load(file);
+        }
+        ByteArrayOutputStream contents = new ByteArrayOutputStream(64*1024);
+        try (InputStream in = url.openStream()){
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer))!=-1){
+                contents.write(buffer, 0, read);
+            }
+        }
+        return load(contents.toByteArray(), SourceLibraryReader.getName(url));
+    }
+    
+    private SourceLibrary load(byte[] contents, String name) throws ParsingException, IOException {
+        byte[] hash = hash(new ByteArrayInputStream(contents));
+        SourceLibrary lib = read(hash);
+        if (lib!=null){
+            BibConsole.debugln("Loaded Source Library from snapshot: "+snapshot.getName());
+            return lib;
+        }
+        lib = SourceLibraryReader.loadSourceLibrary(new ByteArrayInputStream(contents), name);
+        save(lib, hash);
+        return lib;
+    }
+    
+    private SourceLibrary loadFolder(File folder) throws ParsingException, IOException {
+        MessageDigest digest = newDigest();
+        for (File file : SourceLibraryReader.getLibraryFiles(folder)){
+            digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+            digest.update(Files.readAllBytes(file.toPath()));
+        }
+        byte[] hash = digest.digest();
+        SourceLibrary lib = read(hash);
+        if (lib!=null){
+            BibConsole.debugln("Loaded Source Library from snapshot: "+snapshot.getName());
+            return lib;
+        }
+        lib = SourceLibraryReader.loadSourceLibrary(folder);
+        save(lib, hash);
+        return lib;
+    }
+    
+    /**
+     * saves a new snapshot, only printing an error if it can't be saved because the library 
+     * was still loaded and only the next start is slower.
+     */
+    private void save(SourceLibrary lib, byte[] hash){
+        try {
+            write(lib, hash);
+        } catch (IOException ex){
+            BibConsole.printlnError("Unable to save the source library snapshot. Error Message: "+ex.getMessage());
+        }
+    }
+    
+    /**
+     * @param in contents to hash, this isn't closed.
+     * @return SHA-256 hash of the contents.
+     * @throws IOException reading issue.
+     */
+    public static byte[] hash(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer))!=-1){
+            digest.update(buffer, 0, read);
+        }
+        return digest.digest();
+    }
+    
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex){
+            // every java platform has to have SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    /**
+     * reads the snapshot.
+     * @param hash hash of the file the snapshot has to have been made from.
+     * @return the source library, or null if there isn't a snapshot, it was made from a 
+     * different file or it can't be read.
+     */
+    public SourceLibrary read(byte[] hash){
+        if (!snapshot.isFile()){
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath())){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8+HASH_LENGTH || buffer.getInt()!=MAGIC || 
+                    buffer.getInt()!=VERSION){
+                return null;
+            }
+            byte[] madeFrom = new byte[HASH_LENGTH];
+            buffer.get(madeFrom);
+            if (!Arrays.equals(madeFrom, hash)){
+                return null;
+            }
+            return readLibrary(buffer);
+        } catch (IOException | RuntimeException ex){
+            // anything wrong with the snapshot means the library is read from the xml again
+            BibConsole.debugln("Ignoring unreadable source library snapshot: "+ex);
+            return null;
+        }
+    }
+    
+    private static SourceLibrary readLibrary(ByteBuffer buffer){
+        SourceLibrary lib = new SourceLibrary();
+        int categories = readCount(buffer);
+        for (int q = 0; q < categories; q++){
+            String title = readString(buffer);
+            Source[] sourceTypes = new Source[readCount(buffer)];
+            for (int w = 0; w < sourceTypes.length; w++){
+                Source sourceType = new Source(readString(buffer), readString(buffer), 
+                        readString(buffer));
+                int inputs = readCount(buffer);
+                for (int e = 0; e < inputs; e++){
+                    String inputTitle = readString(buffer);
+                    String name = readString(buffer);
+                    InputDefinition.Kind kind = readEnum(buffer, InputDefinition.Kind.values());
+                    int style = buffer.get();
+                    sourceType.addInput(new InputDefinition(inputTitle, name, kind, 
+                            readString(buffer), readString(buffer), 
+                            (style & BOLD)!=0, (style & ITALIC)!=0));
+                }
+                sourceType.compileCodes();
+                sourceTypes[w] = sourceType;
+            }
+            lib.addSource(new SourceCategory(title, sourceTypes));
+        }
+        if (buffer.get()!=0){
+            lib.setInfo(readInfo(buffer));
+        }
+        return lib;
+    }
+    
+    private static SourceLibraryInfo readInfo(ByteBuffer buffer){
+        SourceLibraryInfo info = new SourceLibraryInfo();
+        info.setTitle(readString(buffer));
+        
+        int conts = readCount(buffer);
+        for (int q = 0; q < conts; q++){
+            Contribution cont = new Contribution();
+            cont.setTitle(readString(buffer));
+            int contrs = readCount(buffer);
+            for (int w = 0; w < contrs; w++){
+                cont.addContributer(readString(buffer));
+            }
+            info.addContribution(cont);
+        }
+        
+        int updates = readCount(buffer);
+        for (int q = 0; q < updates; q++){
+            Update update = new Update();
+            update.setTitle(readString(buffer));
+            update.setVersion(readString(buffer));
+            update.setRelease(readString(buffer));
+            int bullets = readCount(buffer);
+            for (int w = 0; w < bullets; w++){
+                update.addBulletPoint(readString(buffer));
+            }
+            info.addUpdate(update);
+        }
+        
+        int paragraphs = readCount(buffer);
+        for (int q = 0; q < paragraphs; q++){
+            String text = readString(buffer);
+            Paragraph.TextAlignment alignment = readEnum(buffer, Paragraph.TextAlignment.values());
+            Paragraph.FontType font = readEnum(buffer, Paragraph.FontType.values());
+            info.addParagraph(new Paragraph(text, alignment, font, buffer.getInt()));
+        }
+        return info;
+    }
+    
+    /**
+     * @return number of items that follow, checked so a broken snapshot can't ask for a 
+     * huge array.
+     */
+    private static int readCount(ByteBuffer buffer){
+        int count = buffer.getInt();
+        if (count<0 || count>buffer.remaining()){
+            throw new IllegalArgumentException("bad count "+count);
+        }
+        return count;
+    }
+    
+    /**
+     * @return the enum value with the ordinal that is next, checked so an enum that changed 
+     * without <code>{@link lal.pbib.SourceLibraryCache#VERSION}</code> changing can't crash.
+     */
+    private static <E extends Enum<E>> E readEnum(ByteBuffer buffer, E[] values){
+        int ordinal = buffer.get();
+        if (ordinal<0 || ordinal>=values.length){
+            throw new IllegalArgumentException("bad ordinal "+ordinal);
+        }
+        return values[ordinal];
+    }
+    
+    private static String readString(ByteBuffer buffer){
+        int length = buffer.getInt();
+        if (length==-1){
+            return null;
+        }
+        if (length<0 || length>buffer.remaining()){
+            throw new IllegalArgumentException("bad string length "+length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * saves a new snapshot, replacing the old one in one step.
+     * @param lib source library to save.
+     * @param hash hash of the file the source library was read from.
+     * @throws IOException writing issue.
+     */
+    public void write(SourceLibrary lib, byte[] hash) throws IOException {
+        File folder = snapshot.getAbsoluteFile().getParentFile();
+        if (folder!=null && !folder.isDirectory() && !folder.mkdirs()){
+            throw new IOException("Unable to make the folder "+folder);
+        }
+        new AtomicFileWriter(snapshot).write(stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hash);
+            writeLibrary(lib, out);
+            out.flush();
+        });
+        BibConsole.debugln("Saved source library snapshot: "+snapshot);
+    }
+    
+    private static void writeLibrary(SourceLibrary lib, DataOutputStream out) throws IOException {
+        SourceCategory[] categories = lib.getSources();
+        out.writeInt(categories.length);
+        for (SourceCategory category : categories){
+            writeString(category.getTitle(), out);
+            Source[] sourceTypes = category.getSourceTypes();
+            out.writeInt(sourceTypes.length);
+            for (Source sourceType : sourceTypes){
+                writeString(sourceType.getTitle(), out);
+                writeString(sourceType.getBibCode(), out);
+                writeString(sourceType.getFootCode(), out);
+                InputDefinition[] inputs = sourceType.getInputDefinitions();
+                out.writeInt(inputs.length);
+                for (InputDefinition in : inputs){
+                    writeString(in.getTitle(), out);
+                    writeString(in.getName(), out);
+                    out.writeByte(in.getKind().ordinal());
+                    out.writeByte((in.isBold() ? BOLD : 0) | (in.isItalic() ? ITALIC : 0));
+                    writeString(in.getDescription(), out);
+                    writeString(in.getExample(), out);
+                }
+            }
+        }
+        SourceLibraryInfo info = lib.getInfo();
+        out.writeBoolean(info!=null);
+        if (info!=null){
+            writeInfo(info, out);
+        }
+    }
+    
+    private static void writeInfo(SourceLibraryInfo info, DataOutputStream out) throws IOException {
+        writeString(info.getTitle(), out);
+        
+        out.writeInt(info.getContributions().size());
+        for (Contribution cont : info.getContributions()){
+            writeString(cont.getTitle(), out);
+            out.writeInt(cont.getContributers().size());
+            for (String contributer : cont.getContributers()){
+                writeString(contributer, out);
+            }
+        }
+        
+        out.writeInt(info.getUpdates().size());
+        for (Update update : info.getUpdates()){
+            writeString(update.getTitle(), out);
+            writeString(update.getVersion(), out);
+            writeString(update.getRelease(), out);
+            out.writeInt(update.getBulletPoints().size());
+            for (String bullet : update.getBulletPoints()){
+                writeString(bullet, out);
+            }
+        }
+        
+        out.writeInt(info.getParagraphs().size());
+        for (Paragraph para : info.getParagraphs()){
+            writeString(para.getText(), out);
+            out.writeByte(para.getTextAlignment().ordinal());
+            out.writeByte(para.getFontType().ordinal());
+            out.writeInt(para.getTextIndent());
+        }
+    }
+    
+    /**
+     * writes the length of the string in bytes (-1 for null) and then the string as UTF-8,
+     * unlike <code>writeUTF</code> this has no limit on the length.
+     */
+    private static void writeString(String text, DataOutputStream out) throws IOException {
+        if (text==null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    public File getFile(){
+        return snapshot;
+    }
+
+}
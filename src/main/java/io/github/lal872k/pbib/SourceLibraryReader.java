@@ -24,11 +24,17 @@
 package io.github.lal872k.pbib;
 
 import io.github.lal872k.pbib.ui.comps.CompInput;
-import io.github.lal872k.pbib.ui.comps.DateInput;
-import io.github.lal872k.pbib.ui.comps.TextInput;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import nu.xom.Builder;
 import nu.xom.Document;
 import nu.xom.Element;
@@ -37,34 +43,274 @@ import nu.xom.ParsingException;
 
 /**
  * Used to read from sources.xml to load the <code>{@link lal.pbib.SourceLibrary}</code>.
+ * <p>
+ * Libraries are read from streams, so the default one is read straight from the classpath 
+ * even when it is inside of a jar. A library can also be a folder of library files, which 
+ * are read in order of their names and put together into one library.
+ * <p>
+ * The file can be read with XOM, which builds the whole document first, or with 
+ * <code>{@link lal.pbib.StreamingSourceLibraryReader}</code>, which makes the sources in one 
+ * pass without building a document. Both check the sources the same way and print the same 
+ * errors.
  * @author L. Arthur Lewis II
  */
 public class SourceLibraryReader {
     
     /**
-     * loads the sources from the default location: project location /sources.xml
+     * how the source library file is parsed.
+     */
+    public enum Parser {
+        /**
+         * builds a XOM document and then reads the sources from it.
+         */
+        XOM, 
+        /**
+         * reads the sources while going through the file once with a StAX reader.
+         */
+        STAX;
+    }
+    
+    private static volatile Parser parser = Parser.XOM;
+    
+    /**
+     * whether the default source library is loaded through a 
+     * <code>{@link lal.pbib.SourceLibraryCache}</code>.
+     */
+    private static volatile boolean usingSnapshot = true;
+    
+    /**
+     * the default source library on the classpath.
+     */
+    public static final String DEFAULT_LIBRARY = "/sources.xml";
+    
+    /**
+     * where the library is loaded from instead of the default one, null to use the default.
+     */
+    private static volatile URL location;
+    
+    /**
+     * loads the sources from the location set by <code>{@link 
+     * lal.pbib.SourceLibraryReader#setLibraryLocation(URL)}</code>, or by default 
+     * /sources.xml on the classpath, using the snapshot from the last time it was read if the
+     * file hasn't changed.
      * @return source library loaded from file
      * @throws ParsingException
      * @throws IOException 
      */
     public static SourceLibrary loadSourceLibrary() throws ParsingException, IOException{
-        File file = new File(Main.class.getResource("/sources.xml").getFile());
-        return loadSourceLibrary(file);
+        URL url = getLibraryLocation();
+        if (url==null){
+            throw new FileNotFoundException(DEFAULT_LIBRARY+" is not on the classpath.");
+        }
+        if (usingSnapshot){
+            return new SourceLibraryCache(SourceLibraryCache.getDefaultFile()).load(url);
+        }
+        return loadSourceLibrary(url);
     }
     
     /**
-     * loads the <code>{@link lal.pbib.SourceLibrary}</code> from the file indicated below.
-     * @param file file to load sources from.
+     * @param location where <code>{@link lal.pbib.SourceLibraryReader#loadSourceLibrary()}
+     * </code> loads the library from, a file, a folder of files or anything else a url can 
+     * point to. Null goes back to the default library.
+     */
+    public static void setLibraryLocation(URL location){
+        SourceLibraryReader.location = location;
+    }
+    
+    /**
+     * @param file file or folder of files <code>{@link 
+     * lal.pbib.SourceLibraryReader#loadSourceLibrary()}</code> loads the library from.
+     */
+    public static void setLibraryLocation(File file){
+        try {
+            setLibraryLocation(file.toURI().toURL());
+        } catch (MalformedURLException ex){
+            // a file uri can always be made into a url
+            throw new IllegalArgumentException(ex);
+        }
+    }
+    
+    /**
+     * @return where the library is loaded from, or null if the default library isn't on the 
+     * classpath.
+     */
+    public static URL getLibraryLocation(){
+        URL url = location;
+        return url!=null ? url : Main.class.getResource(DEFAULT_LIBRARY);
+    }
+    
+    /**
+     * @param usingSnapshot false to always read the default source library from its file.
+     */
+    public static void setUsingSnapshot(boolean usingSnapshot){
+        SourceLibraryReader.usingSnapshot = usingSnapshot;
+    }
+    
+    /**
+     * @param parser how source library files are parsed from now on.
+     */
+    public static void setParser(Parser parser){
+        SourceLibraryReader.parser = parser;
+    }
+    
+    public static Parser getParser(){
+        return parser;
+    }
+    
+    /**
+     * loads the <code>{@link lal.pbib.SourceLibrary}</code> from the file indicated below, 
+     * using the parser set by <code>{@link lal.pbib.SourceLibraryReader#setParser(
+     * SourceLibraryReader.Parser)}</code>.
+     * @param file file to load sources from, or a folder of files.
      * @return new source library loaded from file.
      * @throws ParsingException
      * @throws IOException 
      */
     public static SourceLibrary loadSourceLibrary(File file) throws ParsingException, IOException{
-        BibConsole.println("Reading Source Library: "+file.getName());
+        if (file.isDirectory()){
+            return loadFolder(file);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))){
+            return loadSourceLibrary(in, file.getName());
+        }
+    }
+    
+    /**
+     * loads the <code>{@link lal.pbib.SourceLibrary}</code> from a url, like a resource inside
+     * of a jar. A url to a folder on the disk is loaded like 
+     * <code>{@link lal.pbib.SourceLibraryReader#loadSourceLibrary(File)}</code>.
+     * @param url where to load the sources from.
+     * @return new source library.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    public static SourceLibrary loadSourceLibrary(URL url) throws ParsingException, IOException{
+        File file = toFile(url);
+        if (file!=null && file.isDirectory()){
+            return loadFolder(file);
+        }
+        try (InputStream in = new BufferedInputStream(url.openStream())){
+            return loadSourceLibrary(in, getName(url));
+        }
+    }
+    
+    /**
+     * loads the <code>{@link lal.pbib.SourceLibrary}</code> from a stream.
+     * @param in stream to read, it isn't closed.
+     * @param name name of what is being read, only used in messages.
+     * @return new source library.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    public static SourceLibrary loadSourceLibrary(InputStream in, String name) 
+            throws ParsingException, IOException{
+        if (parser==Parser.STAX){
+            return StreamingSourceLibraryReader.loadSourceLibrary(in, name);
+        }
+        return loadWithXom(in, name);
+    }
+    
+    /**
+     * loads all the library files (ending with .xml) in a folder in order of their names. 
+     * Categories with the same title are put together.
+     * @param folder folder of library files.
+     * @return new source library with the sources of all the files.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    private static SourceLibrary loadFolder(File folder) throws ParsingException, IOException{
+        File[] files = getLibraryFiles(folder);
+        if (files.length==0){
+            throw new FileNotFoundException("There are no source library files in "+folder);
+        }
+        SourceLibrary lib = new SourceLibrary();
+        for (File file : files){
+            SourceLibrary part = loadSourceLibrary(file);
+            for (SourceCategory category : part.getSources()){
+                SourceCategory same = lib.getSource(category.getTitle());
+                if (same==null){
+                    lib.addSource(category);
+                } else {
+                    Source[] both = Arrays.copyOf(same.getSourceTypes(), 
+                            same.getSourceTypes().length+category.getSourceTypes().length);
+                    System.arraycopy(category.getSourceTypes(), 0, both, 
+                            same.getSourceTypes().length, category.getSourceTypes().length);
+                    same.setSourceTypes(both);
+                }
+            }
+            // the first file with info is used
+            if (lib.getInfo()==null){
+                lib.setInfo(part.getInfo());
+            }
+        }
+        return lib;
+    }
+    
+    /**
+     * @param folder folder of library files.
+     * @return the files in the folder ending with .xml, sorted by name.
+     */
+    static File[] getLibraryFiles(File folder){
+        File[] files = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".xml"));
+        if (files==null){
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+    
+    /**
+     * @param url a url.
+     * @return the file the url points to, or null if it isn't a file on the disk.
+     */
+    static File toFile(URL url){
+        if (!url.getProtocol().equals("file")){
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex){
+            return new File(url.getPath());
+        }
+    }
+    
+    /**
+     * @param url a url.
+     * @return the last part of the path of the url.
+     */
+    static String getName(URL url){
+        String path = url.getPath();
+        return path.substring(path.lastIndexOf('/')+1);
+    }
+    
+    /**
+     * loads the <code>{@link lal.pbib.SourceLibrary}</code> by building a XOM document.
+     * @param file file to load sources from.
+     * @return new source library loaded from file.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    public static SourceLibrary loadWithXom(File file) throws ParsingException, IOException{
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))){
+            return loadWithXom(in, file.getName());
+        }
+    }
+    
+    /**
+     * loads the <code>{@link lal.pbib.SourceLibrary}</code> by building a XOM document.
+     * @param stream stream to read, it isn't closed.
+     * @param name name of what is being read, only used in messages.
+     * @return new source library.
+     * @throws ParsingException
+     * @throws IOException 
+     */
+    public static SourceLibrary loadWithXom(InputStream stream, String name) 
+            throws ParsingException, IOException{
+        BibConsole.println("Reading Source Library: "+name);
         SourceLibrary lib = new SourceLibrary();
         
         Builder build = new Builder();
-        Document doc = build.build(file);
+        Document doc = build.build(stream);
         
         Element root = doc.getRootElement();
         
@@ -75,7 +321,7 @@ public class SourceLibraryReader {
             Element current = sources.get(q);
             // no title attribute
             if (current.getAttribute("title") == null){
-                BibConsole.getConsole().printlnError("Source #"+(q+1)+" is missing a title attribute.");
+                BibConsole.printlnError("Source #"+(q+1)+" is missing a title attribute.");
                 continue;
             }
             String title = current.getAttributeValue("title");
@@ -84,7 +330,7 @@ public class SourceLibraryReader {
             Elements types = current.getChildElements("source");
             // no types
             if (types.size() == 0){
-                BibConsole.getConsole().printlnError("Source #"+(q+1)+" doesn't contain any source types.");
+                BibConsole.printlnError("Source #"+(q+1)+" doesn't contain any source types.");
                 continue;
             }
             
@@ -95,34 +341,32 @@ public class SourceLibraryReader {
                 
                 // title attribute
                 if (currentType.getAttribute("title") == null){
-                    BibConsole.getConsole().printlnError("Source Type #"+(w+1)+" in "+title+" is missing a title attribute.");
+                    BibConsole.printlnError("Source Type #"+(w+1)+" in "+title+" is missing a title attribute.");
                     continue;
                 }
                 String typeTitle = currentType.getAttributeValue("title");
                 
                 // bib
                 if (currentType.getChildElements("bib").size()==0){
-                    BibConsole.getConsole().printlnError("Source Type "+typeTitle+" is missing a <bib> node.");
+                    BibConsole.printlnError("Source Type "+typeTitle+" is missing a <bib> node.");
                     continue;
                 }
                 String bib = currentType.getFirstChildElement("bib").getAttributeValue("val");
                 
                 // make sure the code is valid
-                if (ReferenceCode.validateCode(bib)!=null){
-                    BibConsole.getConsole().printlnError("Source Type "+typeTitle+" has an invalid bibliography code: "+ReferenceCode.validateCode(bib));
+                if (!isValidCode(typeTitle, "bibliography", bib)){
                     continue;
                 }
                 
                 // foot
                 if (currentType.getChildElements("foot").size()==0){
-                    BibConsole.getConsole().printlnError("Source Type "+typeTitle+" is missing a <foot> node.");
+                    BibConsole.printlnError("Source Type "+typeTitle+" is missing a <foot> node.");
                     continue;
                 }
                 String foot = currentType.getFirstChildElement("foot").getAttributeValue("val");
                 
                 // make sure the code is valid
-                if (ReferenceCode.validateCode(foot)!=null){
-                    BibConsole.getConsole().printlnError("Source Type "+typeTitle+" has an invalid footnote code: "+ReferenceCode.validateCode(foot));
+                if (!isValidCode(typeTitle, "footnote", foot)){
                     continue;
                 }
                 
@@ -131,7 +375,7 @@ public class SourceLibraryReader {
                 
                 // input
                 if (currentType.getChildElements("input").size()==0){
-                    BibConsole.getConsole().printlnError("Source Type "+typeTitle+" is missing a <input> node.");
+                    BibConsole.printlnError("Source Type "+typeTitle+" is missing a <input> node.");
                     continue;
                 }
                 Element input = currentType.getFirstChildElement("input");
@@ -140,74 +384,94 @@ public class SourceLibraryReader {
                 Elements inputs = input.getChildElements();
                 for (int e = 0; e < inputs.size(); e++){
                     Element inputNode = inputs.get(e);
-                    String textTitle = inputNode.getAttributeValue("title");
-                    String name = inputNode.getAttributeValue("name");
-                    String italic = inputNode.getAttributeValue("italic");
-                    String bold = inputNode.getAttributeValue("bold");
-                    String desc = inputNode.getAttributeValue("desc");
-                    String example = inputNode.getAttributeValue("ex");
-                    
-                    if (textTitle==null){
-                        BibConsole.getConsole().printlnError("Input in "+typeTitle+" is missing a title value.");
-                        continue;
-                    }
-                    
-                    if (name==null){
-                        BibConsole.getConsole().printlnError("Input "+textTitle+" is missing a name value.");
-                        continue;
-                    }
-                    
-                    if (!CompInput.validateName(name)){
-                        BibConsole.getConsole().printlnError("Input "+textTitle+" is has an invalid name value.");
-                        continue;
-                    }
-                    
-                    CompInput in = null;
-                    // when both the description and example are filled in
-                    if (desc != null && example != null){
-                        // text or link
-                        if (inputNode.getLocalName().equals("text")){
-                            in = new TextInput(textTitle, name, desc, example);
-                        } else if (inputNode.getLocalName().equals("link")){
-                            in = new TextInput(textTitle, name, desc, example);
-                        }
-                    } 
-                    // when the description is used and it's a date
-                    else if (desc != null && inputNode.getLocalName().equals("date")){
-                        in = new DateInput(textTitle, name, desc);
+                    InputDefinition in = readInput(typeTitle, inputNode.getLocalName(), 
+                            inputNode.getAttributeValue("title"), 
+                            inputNode.getAttributeValue("name"), 
+                            inputNode.getAttributeValue("italic"), 
+                            inputNode.getAttributeValue("bold"), 
+                            inputNode.getAttributeValue("desc"), 
+                            inputNode.getAttributeValue("ex"));
+                    if (in!=null){
+                        sourceType.addInput(in);
                     }
-                    // no description or example
-                    else {
-                        if (inputNode.getLocalName().equals("text")){
-                            in = new TextInput(textTitle, name);
-                        } else if (inputNode.getLocalName().equals("link")){
-                            in = new TextInput(textTitle, name);
-                        } else if (inputNode.getLocalName().equals("date")){
-                            in = new DateInput(textTitle, name);
-                        }
-                    }
-                    
-                    if (bold!=null){
-                        in.setBold(bold.toLowerCase().equals("true"));
-                    }
-                    if (italic!=null){
-                        in.setItalic(italic.toLowerCase().equals("true"));
-                    }
-                    
-                    sourceType.addInput(in);
                 }
                 
+                // parse the codes once now that all of the inputs are known
+                sourceType.compileCodes();
+                
                 BibConsole.println("Finished loading the contents of source: " + typeTitle);
                 sourceTypes.add(sourceType);
             }
             lib.addSource(new SourceCategory(title, sourceTypes.toArray(new Source[0])));
         }
-        lib.setInfo(getSourceLibraryInfo(root.getFirstChildElement("libinfo")));
+        // files that only add sources don't need any info
+        Element info = root.getFirstChildElement("libinfo");
+        if (info!=null){
+            lib.setInfo(getSourceLibraryInfo(info));
+        }
         return lib;
     }
     
     /**
-     * load the <code>{@link lal.pbib.SourceLibraryInfo}</code> from the root element.
+     * checks a bibliography or footnote code, printing why it is invalid.
+     * @param typeTitle title of the source type the code is for.
+     * @param codeName "bibliography" or "footnote".
+     * @param code the code.
+     * @return true if the code can be used.
+     */
+    static boolean isValidCode(String typeTitle, String codeName, String code){
+        String error = ReferenceCode.validateCode(code);
+        if (error!=null){
+            BibConsole.printlnError("Source Type "+typeTitle+" has an invalid "+codeName+" code: "+error);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * makes the definition of an input from the attributes of its node.
+     * @param typeTitle title of the source type the input is in.
+     * @param type name of the node (text, link or date).
+     * @return the input, or null if it is invalid (the reason is printed).
+     */
+    static InputDefinition readInput(String typeTitle, String type, String textTitle, 
+            String name, String italic, String bold, String desc, String example){
+        if (textTitle==null){
+            BibConsole.printlnError("Input in "+typeTitle+" is missing a title value.");
+            return null;
+        }
+        
+        if (name==null){
+            BibConsole.printlnError("Input "+textTitle+" is missing a name value.");
+            return null;
+        }
+        
+        if (!CompInput.validateName(name)){
+            BibConsole.printlnError("Input "+textTitle+" is has an invalid name value.");
+            return null;
+        }
+        
+        InputDefinition.Kind kind;
+        if (type.equals("text")){
+            kind = InputDefinition.Kind.TEXT;
+        } else if (type.equals("link")){
+            kind = InputDefinition.Kind.LINK;
+        } else if (type.equals("date")){
+            kind = InputDefinition.Kind.DATE;
+        } else {
+            BibConsole.printlnError("Input "+textTitle+" has an unknown type: "+type);
+            return null;
+        }
+        
+        return new InputDefinition(textTitle, name, kind, desc, example, 
+                bold!=null && bold.toLowerCase().equals("true"), 
+                italic!=null && italic.toLowerCase().equals("true"));
+    }
+    
+    /**
+     * load the <code>{@link lal.pbib.SourceLibraryInfo}</code> from the root element. The 
+     * title, update history and instructions can each be left out, the same as with 
+     * <code>{@link lal.pbib.StreamingSourceLibraryReader}</code>.
      * @param root the root element of the source file.
      * @return info from file.
      */
@@ -216,7 +480,9 @@ public class SourceLibraryReader {
         
         // title
         Element titleTag = root.getFirstChildElement("title");
-        info.setTitle(titleTag.getAttributeValue("val"));
+        if (titleTag!=null){
+            info.setTitle(titleTag.getAttributeValue("val"));
+        }
         
         // contributions
         Elements conts = root.getChildElements("contribution");
@@ -239,60 +505,70 @@ public class SourceLibraryReader {
         
         // update history
         Element hisTag = root.getFirstChildElement("updatehistory");
-        Elements updates = hisTag.getChildElements("update");
-        for (int q = 0; q < updates.size(); q++){
-            Element updateTag = updates.get(q);
-            Update update = new Update();
-            
-            update.setRelease(updateTag.getAttributeValue("rel"));
-            
-            String title = updateTag.getAttributeValue("title");
-            if (title==null){
-                update.setTitle("New Update");
-            } else {
-                update.setTitle(title);
-            
-            }
-            update.setVersion(updateTag.getAttributeValue("ver"));
-            
-            Elements bullets = updateTag.getChildElements("bullet");
-            for (int w = 0; w < bullets.size(); w++){
-                Element bulletTag = bullets.get(w);
-                update.addBulletPoint(bulletTag.getAttributeValue("val"));
+        if (hisTag!=null){
+            Elements updates = hisTag.getChildElements("update");
+            for (int q = 0; q < updates.size(); q++){
+                Element updateTag = updates.get(q);
+                Update update = new Update();
+                
+                update.setRelease(updateTag.getAttributeValue("rel"));
+                
+                String title = updateTag.getAttributeValue("title");
+                if (title==null){
+                    update.setTitle("New Update");
+                } else {
+                    update.setTitle(title);
+                
+                }
+                update.setVersion(updateTag.getAttributeValue("ver"));
+                
+                Elements bullets = updateTag.getChildElements("bullet");
+                for (int w = 0; w < bullets.size(); w++){
+                    Element bulletTag = bullets.get(w);
+                    update.addBulletPoint(bulletTag.getAttributeValue("val"));
+                }
+                info.addUpdate(update);
             }
-            info.addUpdate(update);
         }
         
         // instructions
         Element instructions = root.getFirstChildElement("instructions");
-        Elements paragraphs = instructions.getChildElements("para");
-        for (int q = 0; q < paragraphs.size(); q++){
-            Element paraTag = paragraphs.get(q);
-            
-            Paragraph para = new Paragraph();
-            
-            String alignment = paraTag.getAttributeValue("alignment");
-            String font = paraTag.getAttributeValue("font");
-            String text = paraTag.getAttributeValue("val");
-            String indent = paraTag.getAttributeValue("indent");
-            
-            if (alignment!=null){
-                para.setTextAlignment(alignment);
-            }
-            if (font!=null){
-                para.setFontType(font);
-            }
-            if (text!=null){
-                para.setText(text);
-            }
-            if (indent!=null){
-                para.setTextIndent(Integer.parseInt(indent));
+        if (instructions!=null){
+            Elements paragraphs = instructions.getChildElements("para");
+            for (int q = 0; q < paragraphs.size(); q++){
+                Element paraTag = paragraphs.get(q);
+                
+                info.addParagraph(readParagraph(paraTag.getAttributeValue("alignment"), 
+                        paraTag.getAttributeValue("font"), paraTag.getAttributeValue("val"), 
+                        paraTag.getAttributeValue("indent")));
             }
-            
-            info.addParagraph(para);
         }
         
         return info;
     }
     
+    /**
+     * makes a paragraph of the instructions from the attributes of its node, any that are 
+     * null are left as the default.
+     * @return the paragraph.
+     */
+    static Paragraph readParagraph(String alignment, String font, String text, String indent){
+        Paragraph para = new Paragraph();
+        
+        if (alignment!=null){
+            para.setTextAlignment(alignment);
+        }
+        if (font!=null){
+            para.setFontType(font);
+        }
+        if (text!=null){
+            para.setText(text);
+        }
+        if (indent!=null){
+            para.setTextIndent(Integer.parseInt(indent));
+        }
+        
+        return para;
+    }
+    
 }
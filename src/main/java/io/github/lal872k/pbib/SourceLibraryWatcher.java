@@ -0,0 +1,230 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import nu.xom.ParsingException;
+
+/**
+ * Watches the file (or folder of files) a <code>{@link lal.pbib.SourceLibrary}</code> was 
+ * read from and reads it again when it changes, so the sources can be edited while the 
+ * program is running.
+ * <p>
+ * Editors often save a file in more than one step, so the library is only read once nothing
+ * has changed for <code>{@link lal.pbib.SourceLibraryWatcher#setDelay(long)}</code> 
+ * milliseconds. The new library is checked before it is used and is swapped in with 
+ * <code>{@link lal.pbib.SourceLibrary#replaceWith(SourceLibrary)}</code>; if it can't be read
+ * or isn't valid the old one is kept.
+ * @author L. Arthur Lewis II
+ */
+public final class SourceLibraryWatcher {
+    
+    /**
+     * default time in milliseconds without changes before the library is read again.
+     */
+    public static final long DEFAULT_DELAY = 500;
+    
+    private final SourceLibrary library;
+    
+    private final File file;
+    
+    private volatile long delay = DEFAULT_DELAY;
+    
+    private WatchService watcher;
+    private Thread thread;
+    
+    /**
+     * @param library library that gets the new sources.
+     * @param file file or folder of files the library is read from.
+     */
+    public SourceLibraryWatcher(SourceLibrary library, File file){
+        this.library = library;
+        this.file = file.getAbsoluteFile();
+    }
+    
+    /**
+     * starts watching on a new daemon thread.
+     * @throws IOException if the folder can't be watched.
+     */
+    public synchronized void start() throws IOException {
+        if (thread!=null){
+            throw new IllegalStateException("The watcher is already running.");
+        }
+        Path folder = file.isDirectory() ? file.toPath() : file.getParentFile().toPath();
+        WatchService service = folder.getFileSystem().newWatchService();
+        folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, 
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = service;
+        thread = new Thread(() -> watch(service), "Source Library Watcher");
+        thread.setDaemon(true);
+        thread.start();
+        BibConsole.println("Watching the source library for changes: "+file);
+    }
+    
+    /**
+     * stops watching, a library that is being read is still swapped in.
+     */
+    public synchronized void stop(){
+        if (thread==null){
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException ex){
+            BibConsole.debugln("Unable to close the source library watcher: "+ex.getMessage());
+        }
+        thread.interrupt();
+        watcher = null;
+        thread = null;
+    }
+    
+    private void watch(WatchService service){
+        try {
+            while (true){
+                if (!isLibraryChanged(service.take())){
+                    continue;
+                }
+                // wait until the changes stop
+                WatchKey more;
+                while ((more = service.poll(delay, TimeUnit.MILLISECONDS))!=null){
+                    isLibraryChanged(more);
+                }
+                try {
+                    reload();
+                } catch (RuntimeException ex) {
+                    // a listener of the library failed, keep watching for the next change
+                    ex.printStackTrace();
+                    BibConsole.printlnError("Failed to switch to the new source library. Error Message: "+ex);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex){
+            BibConsole.debugln("Stopped watching the source library.");
+        }
+    }
+    
+    /**
+     * takes the events of a key and gets it ready for more.
+     * @return true if any of the events were for the library.
+     */
+    private boolean isLibraryChanged(WatchKey key){
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()){
+            if (event.kind()==StandardWatchEventKinds.OVERFLOW){
+                // some events were lost so it might have changed
+                changed = true;
+                continue;
+            }
+            String name = ((Path) event.context()).getFileName().toString();
+            if (file.isDirectory() ? name.toLowerCase().endsWith(".xml") : 
+                    name.equals(file.getName())){
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+    
+    /**
+     * reads the library again and swaps it in if it is valid.
+     * @return true if the new library is being used.
+     */
+    public boolean reload(){
+        BibConsole.println("The source library changed, reading it again...");
+        SourceLibrary newer;
+        String error;
+        try {
+            newer = SourceLibraryReader.loadSourceLibrary(file);
+            error = validate(newer);
+        } catch (ParsingException | IOException ex){
+            BibConsole.printlnError("Keeping the old source library because the new one couldn't be read. Error Message: "+ex.getMessage());
+            return false;
+        } catch (RuntimeException ex){
+            // a file that is half edited can be missing things the reader expects
+            ex.printStackTrace();
+            BibConsole.printlnError("Keeping the old source library because the new one couldn't be read. Error Message: "+ex);
+            return false;
+        }
+        if (error!=null){
+            BibConsole.printlnError("Keeping the old source library because "+error+".");
+            return false;
+        }
+        library.replaceWith(newer);
+        BibConsole.println("Now using the new source library.");
+        return true;
+    }
+    
+    /**
+     * checks a library that was just read before it is used. Source types with invalid codes
+     * are already left out by <code>{@link lal.pbib.SourceLibraryReader}</code>, so this 
+     * checks the codes again and makes sure nothing was left empty.
+     * @param lib library to check.
+     * @return why the library can't be used, or null if it can.
+     */
+    public static String validate(SourceLibrary lib){
+        SourceCategory[] categories = lib.getSources();
+        if (categories.length==0){
+            return "it doesn't have any source categories";
+        }
+        for (SourceCategory category : categories){
+            if (category.getSourceTypes().length==0){
+                return "the category "+category.getTitle()+" doesn't have any valid source types";
+            }
+            for (Source type : category.getSourceTypes()){
+                String bib = ReferenceCode.validateCode(type.getBibCode());
+                if (bib!=null){
+                    return type.getTitle()+" has an invalid bibliography code: "+bib;
+                }
+                String foot = ReferenceCode.validateCode(type.getFootCode());
+                if (foot!=null){
+                    return type.getTitle()+" has an invalid footnote code: "+foot;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @param delay time in milliseconds without changes before the library is read again.
+     */
+    public void setDelay(long delay){
+        this.delay = delay;
+    }
+    
+    public long getDelay(){
+        return delay;
+    }
+    
+    public File getFile(){
+        return file;
+    }
+
+}
@@ -0,0 +1,1057 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Adds a bibliography and footnotes to a word document without loading the whole document
+ * into memory like <code>{@link lal.pbib.DocumentIO}</code> does.
+ * <p>
+ * The document is read as a zip file and copied to a new one entry by entry. Only the main 
+ * document, the footnotes and the styles are changed, and they are read and written one xml 
+ * event at a time, so the memory used doesn't grow with the size of the document or the 
+ * pictures inside of it. The bibliography is added at the end of the body and the footnote 
+ * references are put at the same positions as 
+ * <code>{@link lal.pbib.DocumentIO#addFootnote(Footnote[])}</code> would put them.
+ * <p>
+ * The other entries keep their contents, time and compression method. Entries stored without 
+ * compression are stored again byte for byte, but deflated entries are inflated and 
+ * compressed again (not copied raw), so they can come out a slightly different size.
+ * @author L. Arthur Lewis II
+ */
+public final class StreamingDocumentIO {
+    
+    public static final String WORD_NAMESPACE = 
+            "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String RELATIONSHIPS_NAMESPACE = 
+            "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPES_NAMESPACE = 
+            "http://schemas.openxmlformats.org/package/2006/content-types";
+    
+    private static final String RELATIONSHIP_TYPES = 
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+    private static final String OFFICE_DOCUMENT_RELATIONSHIP = RELATIONSHIP_TYPES+"officeDocument";
+    private static final String FOOTNOTES_RELATIONSHIP = RELATIONSHIP_TYPES+"footnotes";
+    private static final String STYLES_RELATIONSHIP = RELATIONSHIP_TYPES+"styles";
+    
+    private static final String FOOTNOTES_CONTENT_TYPE = 
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.footnotes+xml";
+    
+    private static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+    private static final String PACKAGE_RELATIONSHIPS_PART = "_rels/.rels";
+    private static final String DEFAULT_DOCUMENT_PART = "word/document.xml";
+    
+    private static final String[] FOOTNOTE_STYLES = 
+            {"FootnoteReference", "FootnoteText", "FootnoteTextChar"};
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    private File file;
+    
+    /**
+     * number of old versions of the file kept when writing.
+     */
+    private int backups;
+    
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+    private final XMLEventFactory eventFactory;
+    
+    public StreamingDocumentIO(File file){
+        this.file = file;
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        outputFactory = XMLOutputFactory.newInstance();
+        eventFactory = XMLEventFactory.newInstance();
+    }
+    
+    /**
+     * reads the text of the document in the same way as 
+     * <code>{@link lal.pbib.DocumentIO#getText()}</code>, one paragraph per line.
+     * @return the text of the document.
+     * @throws IOException reading issue.
+     */
+    public String getText() throws IOException {
+        return getText(DocumentProgress.NONE);
+    }
+    
+    /**
+     * reads the text of the document, telling the progress how much of the body of the 
+     * document has been read and giving it each paragraph as soon as it is read.
+     * @param progress told about the bytes and paragraphs read, and able to stop the reading.
+     * @return the text of the document.
+     * @throws IOException reading issue, or an <code>InterruptedIOException</code> if the 
+     * progress was canceled.
+     */
+    public String getText(DocumentProgress progress) throws IOException {
+        try (ZipFile zip = new ZipFile(file)){
+            PackageParts parts = findParts(zip);
+            StringBuilder text = new StringBuilder();
+            ZipEntry entry = getEntry(zip, parts.document);
+            try (InputStream in = ProgressStreams.reading(zip.getInputStream(entry), 
+                    entry.getSize(), progress)){
+                XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+                int depth = 0, bodyDepth = -1, runDepth = -1, paragraphStart = 0;
+                boolean inParagraph = false, inText = false;
+                while (reader.hasNext()){
+                    int type = reader.next();
+                    if (type==XMLStreamConstants.START_ELEMENT){
+                        depth++;
+                        if (bodyDepth==-1 && isWord(reader.getName(), "body")){
+                            bodyDepth = depth;
+                        } else if (depth==bodyDepth+1 && isWord(reader.getName(), "p")){
+                            inParagraph = true;
+                            paragraphStart = text.length();
+                        } else if (inParagraph && depth==bodyDepth+2 && 
+                                isWord(reader.getName(), "r")){
+                            runDepth = depth;
+                        } else if (runDepth!=-1 && depth==runDepth+1 && 
+                                isWord(reader.getName(), "t")){
+                            inText = true;
+                        }
+                    } else if (type==XMLStreamConstants.END_ELEMENT){
+                        if (inText && depth==runDepth+1){
+                            inText = false;
+                        } else if (depth==runDepth){
+                            runDepth = -1;
+                        } else if (inParagraph && depth==bodyDepth+1){
+                            inParagraph = false;
+                            if (progress!=DocumentProgress.NONE){
+                                progress.paragraphRead(text.substring(paragraphStart));
+                            }
+                            text.append('\n');
+                        }
+                        depth--;
+                    } else if (inText && reader.isCharacters()){
+                        text.append(reader.getText());
+                    }
+                }
+                reader.close();
+            }
+            // remove the extra \n after the last paragraph
+            if (text.length()>0){
+                text.setLength(text.length()-1);
+            }
+            return text.toString();
+        } catch (XMLStreamException ex) {
+            throw toIOException("Unable to read the text of "+file.getName(), ex);
+        }
+    }
+    
+    /**
+     * copies the document with the bibliography and footnotes added and then replaces the 
+     * file with the copy.
+     * @param bibliography citations for the bibliography, or null to not add a bibliography.
+     * @param footnotes footnotes to be added to the document.
+     * @throws IOException reading or writing issue.
+     */
+    public void write(Citation[] bibliography, Footnote[] footnotes) throws IOException {
+        write(bibliography, footnotes, DocumentProgress.NONE);
+    }
+    
+    /**
+     * copies the document with the bibliography and footnotes added and then replaces the 
+     * file with the copy, telling the progress how many bytes have been written. The size of 
+     * the file before saving is used as the total.
+     * @param bibliography citations for the bibliography, or null to not add a bibliography.
+     * @param footnotes footnotes to be added to the document.
+     * @param progress told about the bytes written, and able to stop the saving.
+     * @throws IOException reading or writing issue, or an <code>InterruptedIOException</code>
+     * if the progress was canceled, either way the file is left as it was.
+     */
+    public void write(Citation[] bibliography, Footnote[] footnotes, DocumentProgress progress) 
+            throws IOException {
+        // stable so footnotes at the same position stay in the order they were given
+        Footnote[] sorted = footnotes.clone();
+        Arrays.sort(sorted, (o1, o2) -> Integer.compare(o1.getPosition(), o2.getPosition()));
+        
+        AtomicFileWriter writer = new AtomicFileWriter(file);
+        writer.setBackups(backups);
+        // the new file is written next to the old one, which is read at the same time
+        try (ZipFile zip = new ZipFile(file)){
+            writer.write(out -> {
+                ZipOutputStream zipOut = new ZipOutputStream(
+                        ProgressStreams.writing(out, file.length(), progress));
+                try {
+                    writeCopy(zip, zipOut, bibliography, sorted);
+                } catch (XMLStreamException ex) {
+                    throw toIOException("Unable to rewrite "+file.getName(), ex);
+                }
+                zipOut.finish();
+                progress.checkCanceled();
+                progress.replacing();
+            });
+        }
+    }
+    
+    /**
+     * makes the entry of the copy for an entry of the source. It keeps the time and 
+     * the compression method, and an entry that is stored without compression and isn't 
+     * changed also keeps its size and crc so it is stored the same way again. Changed entries 
+     * are always deflated since their size isn't known before they are written.
+     * @param entry entry in the source document.
+     * @param changed if the entry is rewritten instead of copied as it is.
+     * @return a new entry for the copy.
+     */
+    private static ZipEntry copyEntry(ZipEntry entry, boolean changed){
+        ZipEntry copy = new ZipEntry(entry.getName());
+        copy.setTime(entry.getTime());
+        if (entry.getComment()!=null){
+            copy.setComment(entry.getComment());
+        }
+        if (!changed && entry.getMethod()==ZipEntry.STORED){
+            copy.setMethod(ZipEntry.STORED);
+            copy.setSize(entry.getSize());
+            copy.setCompressedSize(entry.getSize());
+            copy.setCrc(entry.getCrc());
+        }
+        return copy;
+    }
+    
+    private void writeCopy(ZipFile zip, ZipOutputStream out, Citation[] bibliography, 
+            Footnote[] footnotes) throws IOException, XMLStreamException {
+        PackageParts parts = findParts(zip);
+        boolean addFootnotesPart = footnotes.length>0 && parts.footnotes==null;
+        if (addFootnotesPart && zip.getEntry(parts.documentRelationships)==null){
+            throw new IOException(file.getName()+" doesn't have any relationships for "+
+                    parts.document);
+        }
+        
+        long firstID = parts.footnotes==null ? 1 : findOpenFootnoteID(zip, parts.footnotes);
+        long[] ids = new long[footnotes.length];
+        int[] positions = new int[footnotes.length];
+        for (int q = 0; q < footnotes.length; q++){
+            ids[q] = firstID+q;
+            positions[q] = footnotes[q].getPosition();
+        }
+        
+        HashSet<String> stylesToAdd = new HashSet();
+        if (footnotes.length>0){
+            if (parts.styles==null){
+                BibConsole.debugln("No styles part found, the footnote styles won't be added.");
+            } else {
+                stylesToAdd.addAll(Arrays.asList(FOOTNOTE_STYLES));
+                stylesToAdd.removeAll(findStyleIDs(zip, parts.styles));
+            }
+        }
+        
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()){
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            boolean changed = name.equals(parts.document) || 
+                    (name.equals(parts.footnotes) && footnotes.length>0) || 
+                    (name.equals(parts.styles) && !stylesToAdd.isEmpty()) || 
+                    (addFootnotesPart && (name.equals(CONTENT_TYPES_PART) || 
+                            name.equals(parts.documentRelationships)));
+            out.putNextEntry(copyEntry(entry, changed));
+            try (InputStream in = zip.getInputStream(entry)){
+                if (name.equals(parts.document)){
+                    BibConsole.debugln("Rewriting "+name+"...");
+                    rewriteDocument(in, out, bibliography, footnotes, ids, positions);
+                } else if (name.equals(parts.footnotes) && footnotes.length>0){
+                    BibConsole.debugln("Adding footnotes to "+name+"...");
+                    appendToRoot(in, out, WORD_NAMESPACE, 
+                            part -> writeFootnotes(part, footnotes, ids));
+                } else if (name.equals(parts.styles) && !stylesToAdd.isEmpty()){
+                    BibConsole.debugln("Adding word styles to "+name+"...");
+                    appendToRoot(in, out, WORD_NAMESPACE, 
+                            part -> writeFootnoteStyles(part, stylesToAdd));
+                } else if (name.equals(CONTENT_TYPES_PART) && addFootnotesPart){
+                    appendToRoot(in, out, CONTENT_TYPES_NAMESPACE, 
+                            part -> part.empty("Override", "PartName", "/"+parts.newFootnotes, 
+                                    "ContentType", FOOTNOTES_CONTENT_TYPE));
+                } else if (name.equals(parts.documentRelationships) && addFootnotesPart){
+                    appendToRoot(in, out, RELATIONSHIPS_NAMESPACE, 
+                            part -> part.empty("Relationship", "Id", parts.newRelationshipID, 
+                                    "Type", FOOTNOTES_RELATIONSHIP, "Target", "footnotes.xml"));
+                } else {
+                    // everything else is copied as it is, deflated entries are inflated and 
+                    // deflated again since ZipOutputStream can't write raw compressed data
+                    int read;
+                    while ((read = in.read(buffer))!=-1){
+                        out.write(buffer, 0, read);
+                    }
+                }
+            }
+            out.closeEntry();
+        }
+        
+        if (addFootnotesPart){
+            BibConsole.debugln("Adding "+parts.newFootnotes+"...");
+            out.putNextEntry(new ZipEntry(parts.newFootnotes));
+            writeNewFootnotesPart(out, footnotes, ids);
+            out.closeEntry();
+        }
+    }
+    
+    /**
+     * copies the main document adding the footnote references and the bibliography. Only the 
+     * text of runs right inside of paragraphs in the body is counted, which is the same text 
+     * as <code>{@link lal.pbib.StreamingDocumentIO#getText()}</code>.
+     */
+    private void rewriteDocument(InputStream in, OutputStream out, Citation[] bibliography, 
+            Footnote[] footnotes, long[] ids, int[] positions) throws XMLStreamException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(in);
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        PartWriter part = null;
+        
+        int depth = 0, bodyDepth = -1, runDepth = -1;
+        boolean inParagraph = false, inRunProperties = false;
+        boolean bibliographyWritten = bibliography==null;
+        // formatting of the current run, copied to the runs made by splitting it
+        ArrayList<XMLEvent> runProperties = new ArrayList();
+        // start of the text element of the current run, only written once its text is known
+        StartElement textStart = null;
+        boolean inText = false;
+        
+        int next = 0;
+        int length = 0;
+        
+        while (reader.hasNext()){
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()){
+                StartElement start = event.asStartElement();
+                depth++;
+                if (part==null){
+                    part = new PartWriter(writer, start, WORD_NAMESPACE);
+                }
+                if (bodyDepth==-1 && isWord(start.getName(), "body")){
+                    bodyDepth = depth;
+                } else if (depth==bodyDepth+1 && isWord(start.getName(), "p")){
+                    inParagraph = true;
+                } else if (depth==bodyDepth+1 && isWord(start.getName(), "sectPr") && 
+                        !bibliographyWritten){
+                    // the properties of the last section have to stay at the end of the body
+                    writeBibliography(part, bibliography);
+                    bibliographyWritten = true;
+                } else if (inParagraph && depth==bodyDepth+2 && isWord(start.getName(), "r")){
+                    // references that go before this run, which keeps runs without text after 
+                    // the references
+                    while (next<ids.length && positions[next]<=length){
+                        part.footnoteReference(ids[next++]);
+                    }
+                    runDepth = depth;
+                    runProperties.clear();
+                } else if (runDepth!=-1 && depth==runDepth+1 && isWord(start.getName(), "rPr")){
+                    inRunProperties = true;
+                } else if (runDepth!=-1 && depth==runDepth+1 && isWord(start.getName(), "t")){
+                    inText = true;
+                    textStart = start;
+                    continue;
+                }
+                if (inRunProperties){
+                    runProperties.add(event);
+                }
+                writer.add(event);
+            } else if (event.isEndElement()){
+                if (inRunProperties){
+                    runProperties.add(event);
+                    if (depth==runDepth+1){
+                        inRunProperties = false;
+                    }
+                } else if (inText && depth==runDepth+1){
+                    if (textStart!=null){
+                        writer.add(textStart);
+                        textStart = null;
+                    }
+                    inText = false;
+                } else if (runDepth!=-1 && depth==runDepth){
+                    runDepth = -1;
+                } else if (inParagraph && depth==bodyDepth+1){
+                    // paragraphs that don't contain any r's
+                    while (next<ids.length && positions[next]<=length){
+                        part.footnoteReference(ids[next++]);
+                    }
+                    inParagraph = false;
+                    // add one because going to next paragraph
+                    length++;
+                } else if (depth==bodyDepth && !bibliographyWritten){
+                    writeBibliography(part, bibliography);
+                    bibliographyWritten = true;
+                }
+                writer.add(event);
+                depth--;
+            } else if (inText && event.isCharacters()){
+                String text = event.asCharacters().getData();
+                int textLength = text.length();
+                // a position at the end of the text is left for the next run or the end of the
+                // paragraph, so no empty run is made after the reference
+                if (next==ids.length || positions[next]>=length+textLength){
+                    if (textStart!=null){
+                        writer.add(textStart);
+                        textStart = null;
+                    }
+                    writer.add(event);
+                    length += textLength;
+                    continue;
+                }
+                // split the run at each position inside of this text
+                int cut = 0;
+                while (next<ids.length && positions[next]<length+textLength){
+                    int at = Math.max(positions[next]-length, 0);
+                    if (textStart!=null){
+                        writer.add(preserveSpaces(textStart));
+                        textStart = null;
+                    }
+                    if (at>cut){
+                        part.text(text.substring(cut, at));
+                        cut = at;
+                    }
+                    part.end("t");
+                    part.end("r");
+                    part.footnoteReference(ids[next++]);
+                    // the rest of the run keeps its formatting
+                    part.start("r");
+                    for (XMLEvent property : runProperties){
+                        writer.add(property);
+                    }
+                    part.start("t", "xml:space", "preserve");
+                }
+                if (cut<textLength){
+                    part.text(text.substring(cut));
+                }
+                length += textLength;
+            } else {
+                writer.add(event);
+            }
+        }
+        
+        writer.flush();
+        writer.close();
+        reader.close();
+        
+        if (next<ids.length){
+            BibConsole.debugln((ids.length-next)+" footnote reference(s) were past the end of the document.");
+        }
+    }
+    
+    /**
+     * @param start start of a text element.
+     * @return the same element with spaces preserved, so splitting it doesn't lose the spaces 
+     * at the ends of the halves.
+     */
+    private StartElement preserveSpaces(StartElement start){
+        ArrayList<Attribute> attributes = new ArrayList();
+        Iterator<?> it = start.getAttributes();
+        while (it.hasNext()){
+            Attribute attribute = (Attribute) it.next();
+            if (!XMLConstants.XML_NS_URI.equals(attribute.getName().getNamespaceURI())){
+                attributes.add(attribute);
+            }
+        }
+        attributes.add(eventFactory.createAttribute("xml", XMLConstants.XML_NS_URI, "space", 
+                "preserve"));
+        return eventFactory.createStartElement(start.getName(), attributes.iterator(), 
+                start.getNamespaces());
+    }
+    
+    /**
+     * adds the bibliography paragraphs in the same layout as 
+     * <code>{@link lal.pbib.DocumentIO#addBibliography(Citation[])}</code>.
+     */
+    private void writeBibliography(PartWriter part, Citation[] cites) throws XMLStreamException {
+        ArrayList<Citation> firstHand = new ArrayList();
+        ArrayList<Citation> secondHand = new ArrayList();
+        for (Citation cite : cites){
+            if (cite.getTypeOfSource().equals(Citation.TypeOfSource.PRIMARY)){
+                firstHand.add(cite);
+            } else {
+                secondHand.add(cite);
+            }
+        }
+        
+        BibConsole.debugln("Adding bibliography...");
+        
+        part.start("p");
+        part.start("pPr");
+        part.empty("jc", "val", "center");
+        part.end("pPr");
+        part.run("Bibliography", true, false);
+        part.end("p");
+        
+        // spacing
+        part.empty("p");
+        
+        DocumentIO.sortAlphabetically(firstHand);
+        DocumentIO.sortAlphabetically(secondHand);
+        
+        writeBibliographySection(part, "Primary Sources", firstHand);
+        writeBibliographySection(part, "Secondary Sources", secondHand);
+    }
+    
+    private void writeBibliographySection(PartWriter part, String title, 
+            ArrayList<Citation> cites) throws XMLStreamException {
+        if (cites.isEmpty()){
+            return;
+        }
+        
+        part.start("p");
+        part.start("r");
+        part.start("rPr");
+        part.empty("b");
+        part.empty("u", "val", "single");
+        part.end("rPr");
+        part.start("t");
+        part.text(title);
+        part.end("t");
+        part.end("r");
+        part.end("p");
+        // spacing
+        part.empty("p");
+        
+        for (int q = 0; q < cites.size(); q++){
+            part.start("p");
+            part.start("pPr");
+            part.empty("ind", "left", "720", "hanging", "720");
+            part.end("pPr");
+            writeCitation(part, cites.get(q).getSource(), true);
+            part.end("p");
+            if (q+1<cites.size()){
+                // spacing
+                part.empty("p");
+            }
+        }
+    }
+    
+    /**
+     * writes the runs of a citation.
+     * @param bib true for the bibliography citation, false for the footnote citation.
+     */
+    private void writeCitation(PartWriter part, Source source, boolean bib) 
+            throws XMLStreamException {
+        CitationRunWriter runs = (text, bold, italic) -> part.run(text, bold, italic);
+        try {
+            if (bib){
+                source.writeBibCitation(runs);
+            } else {
+                source.writeFootnoteCitation(runs);
+            }
+        } catch (XMLStreamException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new XMLStreamException(ex);
+        }
+    }
+    
+    /**
+     * writes the footnote objects in the same layout as <code>{@link lal.pbib.DocumentIO}</code>.
+     */
+    private void writeFootnotes(PartWriter part, Footnote[] footnotes, long[] ids) 
+            throws XMLStreamException {
+        for (int q = 0; q < footnotes.length; q++){
+            BibConsole.debugln("Adding footnote object with id:"+ids[q]);
+            part.start("footnote", "id", Long.toString(ids[q]));
+            part.start("p");
+            part.start("pPr");
+            part.empty("pStyle", "val", "FootnoteText");
+            part.end("pPr");
+            part.start("r");
+            part.start("rPr");
+            part.empty("rStyle", "val", "FootnoteReference");
+            part.end("rPr");
+            part.empty("footnoteRef");
+            part.end("r");
+            writeCitation(part, footnotes[q].getSource(), false);
+            part.end("p");
+            part.end("footnote");
+        }
+    }
+    
+    /**
+     * writes a footnotes part for a document that didn't have one, with the separators word
+     * expects to find.
+     */
+    private void writeNewFootnotesPart(OutputStream out, Footnote[] footnotes, long[] ids) 
+            throws XMLStreamException {
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        writer.add(eventFactory.createStartDocument("UTF-8", "1.0", true));
+        PartWriter part = new PartWriter(writer, "w", WORD_NAMESPACE, true);
+        part.start("footnotes");
+        
+        part.start("footnote", "type", "separator", "id", "-1");
+        part.start("p");
+        part.start("r");
+        part.empty("separator");
+        part.end("r");
+        part.end("p");
+        part.end("footnote");
+        
+        part.start("footnote", "type", "continuationSeparator", "id", "0");
+        part.start("p");
+        part.start("r");
+        part.empty("continuationSeparator");
+        part.end("r");
+        part.end("p");
+        part.end("footnote");
+        
+        writeFootnotes(part, footnotes, ids);
+        
+        part.end("footnotes");
+        writer.add(eventFactory.createEndDocument());
+        writer.flush();
+        writer.close();
+    }
+    
+    /**
+     * writes the styles from <code>{@link lal.pbib.DocumentIO#addFootnoteStylesIfAbsent()}
+     * </code> that are missing.
+     */
+    private void writeFootnoteStyles(PartWriter part, HashSet<String> styles) 
+            throws XMLStreamException {
+        if (styles.contains("FootnoteReference")){
+            BibConsole.debugln("Adding word style \"FootnoteReference\"...");
+            part.start("style", "type", "character", "styleId", "FootnoteReference");
+            part.empty("name", "val", "footnote reference");
+            part.empty("basedOn", "val", "DefaultParagraphFont");
+            part.empty("uiPriority", "val", "99");
+            part.empty("semiHidden");
+            part.empty("unhideWhenUsed");
+            part.start("rPr");
+            part.empty("vertAlign", "val", "superscript");
+            part.end("rPr");
+            part.end("style");
+        }
+        if (styles.contains("FootnoteText")){
+            BibConsole.debugln("Adding word style \"FootnoteText\"...");
+            part.start("style", "type", "paragraph", "styleId", "FootnoteText");
+            part.empty("name", "val", "footnote text");
+            part.empty("basedOn", "val", "Normal");
+            part.empty("link", "val", "FootnoteTextChar");
+            part.empty("uiPriority", "val", "99");
+            part.empty("semiHidden");
+            part.empty("unhideWhenUsed");
+            writeFootnoteTextSize(part);
+            part.end("style");
+        }
+        if (styles.contains("FootnoteTextChar")){
+            BibConsole.debugln("Adding word style \"FootnoteTextChar\"...");
+            part.start("style", "type", "character", "customStyle", "1", 
+                    "styleId", "FootnoteTextChar");
+            part.empty("name", "val", "Footnote Text Char");
+            part.empty("basedOn", "val", "DefaultParagraphFont");
+            part.empty("link", "val", "FootnoteText");
+            part.empty("uiPriority", "val", "99");
+            part.empty("semiHidden");
+            writeFootnoteTextSize(part);
+            part.end("style");
+        }
+    }
+    
+    private static void writeFootnoteTextSize(PartWriter part) throws XMLStreamException {
+        part.start("rPr");
+        part.empty("sz", "val", "20");
+        part.empty("szCs", "val", "20");
+        part.end("rPr");
+    }
+    
+    /**
+     * something written right before the end of the root element of a part.
+     */
+    private interface RootContent {
+        void write(PartWriter part) throws XMLStreamException;
+    }
+    
+    /**
+     * copies a part adding some content at the end of its root element.
+     */
+    private void appendToRoot(InputStream in, OutputStream out, String namespace, 
+            RootContent content) throws XMLStreamException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(in);
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        PartWriter part = null;
+        int depth = 0;
+        while (reader.hasNext()){
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()){
+                depth++;
+                if (part==null){
+                    part = new PartWriter(writer, event.asStartElement(), namespace);
+                }
+            } else if (event.isEndElement()){
+                if (depth==1){
+                    content.write(part);
+                }
+                depth--;
+            }
+            writer.add(event);
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+    
+    /**
+     * @return the id after the largest id used by the footnotes already in the document.
+     */
+    private long findOpenFootnoteID(ZipFile zip, String footnotesPart) 
+            throws IOException, XMLStreamException {
+        long minValue = 1;
+        try (InputStream in = zip.getInputStream(getEntry(zip, footnotesPart))){
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            while (reader.hasNext()){
+                if (reader.next()==XMLStreamConstants.START_ELEMENT && 
+                        isWord(reader.getName(), "footnote")){
+                    String id = reader.getAttributeValue(WORD_NAMESPACE, "id");
+                    try {
+                        if (id!=null && Long.parseLong(id)>=minValue){
+                            minValue = Long.parseLong(id)+1;
+                        }
+                    } catch (NumberFormatException ex) {
+                        BibConsole.debugln("Skipping footnote with id \""+id+"\".");
+                    }
+                }
+            }
+            reader.close();
+        }
+        return minValue;
+    }
+    
+    /**
+     * @return the ids of all of the styles in the styles part.
+     */
+    private HashSet<String> findStyleIDs(ZipFile zip, String stylesPart) 
+            throws IOException, XMLStreamException {
+        HashSet<String> ids = new HashSet();
+        try (InputStream in = zip.getInputStream(getEntry(zip, stylesPart))){
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            while (reader.hasNext()){
+                if (reader.next()==XMLStreamConstants.START_ELEMENT && 
+                        isWord(reader.getName(), "style")){
+                    String id = reader.getAttributeValue(WORD_NAMESPACE, "styleId");
+                    if (id!=null){
+                        ids.add(id);
+                    }
+                }
+            }
+            reader.close();
+        }
+        return ids;
+    }
+    
+    /**
+     * names of the parts of the document that might be changed.
+     */
+    private static final class PackageParts {
+        
+        String document;
+        String documentRelationships;
+        /**
+         * null if the document doesn't have footnotes yet.
+         */
+        String footnotes;
+        String styles;
+        /**
+         * name and relationship id used if the footnotes have to be added.
+         */
+        String newFootnotes;
+        String newRelationshipID;
+    
+    }
+    
+    /**
+     * finds the main document from the package relationships and the footnotes and styles from
+     * the relationships of the main document.
+     */
+    private PackageParts findParts(ZipFile zip) throws IOException, XMLStreamException {
+        PackageParts parts = new PackageParts();
+        HashSet<String> usedIDs = new HashSet();
+        
+        HashMap<String, String> targets = readRelationships(zip, PACKAGE_RELATIONSHIPS_PART, 
+                usedIDs);
+        String document = targets.get(OFFICE_DOCUMENT_RELATIONSHIP);
+        parts.document = document==null ? DEFAULT_DOCUMENT_PART : resolve("", document);
+        
+        int slash = parts.document.lastIndexOf('/');
+        String folder = parts.document.substring(0, slash+1);
+        parts.documentRelationships = folder+"_rels/"+parts.document.substring(slash+1)+".rels";
+        
+        usedIDs.clear();
+        targets = readRelationships(zip, parts.documentRelationships, usedIDs);
+        if (targets.containsKey(FOOTNOTES_RELATIONSHIP)){
+            parts.footnotes = resolve(folder, targets.get(FOOTNOTES_RELATIONSHIP));
+        }
+        if (targets.containsKey(STYLES_RELATIONSHIP)){
+            parts.styles = resolve(folder, targets.get(STYLES_RELATIONSHIP));
+        }
+        parts.newFootnotes = folder+"footnotes.xml";
+        int q = 1;
+        while (usedIDs.contains("rId"+q)){
+            q++;
+        }
+        parts.newRelationshipID = "rId"+q;
+        
+        if (zip.getEntry(parts.document)==null){
+            throw new IOException(file.getName()+" is not a word document.");
+        }
+        return parts;
+    }
+    
+    /**
+     * @param usedIDs the ids of the relationships are added to this.
+     * @return the target of the first relationship of each type, empty if the part doesn't 
+     * exist.
+     */
+    private HashMap<String, String> readRelationships(ZipFile zip, String name, 
+            HashSet<String> usedIDs) throws IOException, XMLStreamException {
+        HashMap<String, String> targets = new HashMap();
+        ZipEntry entry = zip.getEntry(name);
+        if (entry==null){
+            return targets;
+        }
+        try (InputStream in = zip.getInputStream(entry)){
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            while (reader.hasNext()){
+                if (reader.next()==XMLStreamConstants.START_ELEMENT && 
+                        reader.getLocalName().equals("Relationship")){
+                    String type = reader.getAttributeValue(null, "Type");
+                    String target = reader.getAttributeValue(null, "Target");
+                    String mode = reader.getAttributeValue(null, "TargetMode");
+                    usedIDs.add(reader.getAttributeValue(null, "Id"));
+                    if (type!=null && target!=null && !"External".equals(mode) && 
+                            !targets.containsKey(type)){
+                        targets.put(type, target);
+                    }
+                }
+            }
+            reader.close();
+        }
+        return targets;
+    }
+    
+    /**
+     * @param folder folder of the part the target is relative to, ending with a slash.
+     * @param target target of a relationship.
+     * @return name of the zip entry the target points to.
+     */
+    private static String resolve(String folder, String target){
+        String path = target.startsWith("/") ? target.substring(1) : folder+target;
+        ArrayList<String> names = new ArrayList();
+        for (String name : path.split("/")){
+            if (name.equals("..")){
+                if (!names.isEmpty()){
+                    names.remove(names.size()-1);
+                }
+            } else if (!name.isEmpty() && !name.equals(".")){
+                names.add(name);
+            }
+        }
+        return String.join("/", names);
+    }
+    
+    /**
+     * @param message what went wrong.
+     * @param ex exception from reading or writing xml.
+     * @return the exception to throw, which is the <code>InterruptedIOException</code> of a
+     * canceled progress if that is what stopped the xml.
+     */
+    private static IOException toIOException(String message, XMLStreamException ex){
+        for (Throwable cause = ex.getCause(); cause!=null; cause = cause.getCause()){
+            if (cause instanceof InterruptedIOException){
+                return (InterruptedIOException)cause;
+            }
+        }
+        return new IOException(message, ex);
+    }
+    
+    private ZipEntry getEntry(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry==null){
+            throw new IOException(file.getName()+" is missing "+name);
+        }
+        return entry;
+    }
+    
+    private static boolean isWord(QName name, String localName){
+        return WORD_NAMESPACE.equals(name.getNamespaceURI()) && 
+                localName.equals(name.getLocalPart());
+    }
+    
+    /**
+     * writes elements in one namespace with the prefix that the part already uses for it.
+     */
+    private final class PartWriter {
+        
+        private final XMLEventWriter writer;
+        private final String prefix;
+        private final String namespace;
+        /**
+         * true if the namespace has to be declared on the outer elements that are written.
+         */
+        private final boolean declare;
+        private int depth;
+        
+        PartWriter(XMLEventWriter writer, StartElement root, String namespace){
+            String bound = root.getNamespaceContext().getPrefix(namespace);
+            this.writer = writer;
+            this.namespace = namespace;
+            this.prefix = bound==null ? "w" : bound;
+            this.declare = bound==null;
+        }
+        
+        PartWriter(XMLEventWriter writer, String prefix, String namespace, boolean declare){
+            this.writer = writer;
+            this.prefix = prefix;
+            this.namespace = namespace;
+            this.declare = declare;
+        }
+        
+        /**
+         * @param attributes pairs of names and values, the names are put in the namespace 
+         * unless they start with "xml:".
+         */
+        void start(String name, String... attributes) throws XMLStreamException {
+            ArrayList<Attribute> list = new ArrayList();
+            for (int q = 0; q+1 < attributes.length; q += 2){
+                list.add(attribute(attributes[q], attributes[q+1]));
+            }
+            Iterator<Namespace> namespaces = null;
+            if (declare && depth==0){
+                namespaces = Arrays.asList(prefix.isEmpty() ? 
+                        eventFactory.createNamespace(namespace) : 
+                        eventFactory.createNamespace(prefix, namespace)).iterator();
+            }
+            writer.add(eventFactory.createStartElement(prefix, namespace, name, 
+                    list.iterator(), namespaces));
+            depth++;
+        }
+        
+        void end(String name) throws XMLStreamException {
+            writer.add(eventFactory.createEndElement(prefix, namespace, name));
+            depth--;
+        }
+        
+        void empty(String name, String... attributes) throws XMLStreamException {
+            start(name, attributes);
+            end(name);
+        }
+        
+        void text(String text) throws XMLStreamException {
+            writer.add(eventFactory.createCharacters(text));
+        }
+        
+        /**
+         * writes a run the same way as 
+         * <code>{@link lal.pbib.CompiledReferenceCode#addCitation(CTP, CitationValues)}</code>.
+         */
+        void run(String text, boolean bold, boolean italic) throws XMLStreamException {
+            start("r");
+            if (bold || italic){
+                start("rPr");
+                if (bold){
+                    empty("b");
+                }
+                if (italic){
+                    empty("i");
+                }
+                end("rPr");
+            }
+            start("t", "xml:space", "preserve");
+            text(text);
+            end("t");
+            end("r");
+        }
+        
+        void footnoteReference(long id) throws XMLStreamException {
+            start("r");
+            start("rPr");
+            empty("rStyle", "val", "FootnoteReference");
+            end("rPr");
+            empty("footnoteReference", "id", Long.toString(id));
+            end("r");
+        }
+        
+        private Attribute attribute(String name, String value){
+            if (name.startsWith("xml:")){
+                return eventFactory.createAttribute("xml", XMLConstants.XML_NS_URI, 
+                        name.substring(4), value);
+            }
+            if (prefix.isEmpty()){
+                // attributes without a prefix aren't in any namespace
+                return eventFactory.createAttribute(name, value);
+            }
+            return eventFactory.createAttribute(prefix, namespace, name, value);
+        }
+    
+    }
+    
+    /**
+     * @param backups how many old versions of the file to keep when writing, 0 to not keep 
+     * any.
+     */
+    public void setBackups(int backups){
+        this.backups = backups;
+    }
+    
+    public int getBackups(){
+        return backups;
+    }
+    
+    /**
+     * set the file that is used to read and write.
+     * @param file new file location.
+     */
+    public void setFile(File file){
+        this.file = file;
+    }
+    
+    /**
+     * @return the file that is used for reading and writing.
+     */
+    public File getFile(){
+        return file;
+    }
+
+}
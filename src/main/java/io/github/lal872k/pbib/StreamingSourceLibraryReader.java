@@ -0,0 +1,336 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import nu.xom.ParsingException;
+
+/**
+ * Reads a source library file with a StAX reader, making the 
+ * <code>{@link lal.pbib.SourceCategory}</code>s and <code>{@link lal.pbib.Source}</code>s 
+ * while going through the file once instead of building a XOM document first.
+ * <p>
+ * The sources are checked with the same methods as 
+ * <code>{@link lal.pbib.SourceLibraryReader#loadWithXom(File)}</code> and print the same 
+ * errors. Only the first <code>bib</code>, <code>foot</code> and <code>input</code> node of a 
+ * source type are used, the same as XOM's <code>getFirstChildElement</code>.
+ * @author L. Arthur Lewis II
+ */
+public final class StreamingSourceLibraryReader {
+    
+    private final XMLStreamReader reader;
+    
+    /**
+     * attributes of an input node, kept until the whole source type has been read because 
+     * the inputs are only checked once the codes are known to be valid.
+     */
+    private static final class InputNode {
+        
+        private final String type, title, name, italic, bold, desc, example;
+        
+        InputNode(XMLStreamReader reader){
+            type = reader.getLocalName();
+            title = reader.getAttributeValue(null, "title");
+            name = reader.getAttributeValue(null, "name");
+            italic = reader.getAttributeValue(null, "italic");
+            bold = reader.getAttributeValue(null, "bold");
+            desc = reader.getAttributeValue(null, "desc");
+            example = reader.getAttributeValue(null, "ex");
+        }
+        
+        InputDefinition toDefinition(String typeTitle){
+            return SourceLibraryReader.readInput(typeTitle, type, title, name, italic, bold, 
+                    desc, example);
+        }
+    
+    }
+    
+    private StreamingSourceLibraryReader(XMLStreamReader reader){
+        this.reader = reader;
+    }
+    
+    /**
+     * loads the <code>{@link lal.pbib.SourceLibrary}</code> from a file.
+     * @param file file to load sources from.
+     * @return new source library loaded from file.
+     * @throws ParsingException the file isn't well formed xml.
+     * @throws IOException 
+     */
+    public static SourceLibrary loadSourceLibrary(File file) throws ParsingException, IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))){
+            return loadSourceLibrary(in, file.getName());
+        }
+    }
+    
+    /**
+     * loads the <code>{@link lal.pbib.SourceLibrary}</code> from a stream.
+     * @param in stream to read, it isn't closed.
+     * @param name name of what is being read, only used in messages.
+     * @return new source library.
+     * @throws ParsingException the stream isn't well formed xml.
+     */
+    public static SourceLibrary loadSourceLibrary(InputStream in, String name) 
+            throws ParsingException {
+        BibConsole.println("Reading Source Library: "+name);
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                return new StreamingSourceLibraryReader(reader).readLibrary();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex){
+            throw new ParsingException(ex.getMessage(), ex);
+        }
+    }
+    
+    private SourceLibrary readLibrary() throws XMLStreamException {
+        SourceLibrary lib = new SourceLibrary();
+        // root element
+        reader.nextTag();
+        
+        BibConsole.debugln("Reading all Source Categories under the <cat> tag...");
+        int categories = 0;
+        SourceLibraryInfo info = null;
+        while (nextChild()){
+            String tag = reader.getLocalName();
+            if (tag.equals("cat")){
+                readCategory(++categories, lib);
+            } else if (tag.equals("libinfo") && info==null){
+                info = readInfo();
+            } else {
+                skip();
+            }
+        }
+        lib.setInfo(info);
+        return lib;
+    }
+    
+    private void readCategory(int number, SourceLibrary lib) throws XMLStreamException {
+        // no title attribute
+        String title = reader.getAttributeValue(null, "title");
+        if (title==null){
+            BibConsole.printlnError("Source #"+number+" is missing a title attribute.");
+            skip();
+            return;
+        }
+        
+        ArrayList<Source> sourceTypes = new ArrayList();
+        int types = 0;
+        while (nextChild()){
+            if (reader.getLocalName().equals("source")){
+                if (types==0){
+                    BibConsole.debugln("Reading all the sources under the source category of "+title);
+                }
+                Source sourceType = readSourceType(++types, title);
+                if (sourceType!=null){
+                    sourceTypes.add(sourceType);
+                }
+            } else {
+                skip();
+            }
+        }
+        
+        // no types
+        if (types==0){
+            BibConsole.printlnError("Source #"+number+" doesn't contain any source types.");
+            return;
+        }
+        lib.addSource(new SourceCategory(title, sourceTypes.toArray(new Source[0])));
+    }
+    
+    /**
+     * @return the source type, or null if it is invalid (the reason is printed).
+     */
+    private Source readSourceType(int number, String categoryTitle) throws XMLStreamException {
+        // title attribute
+        String typeTitle = reader.getAttributeValue(null, "title");
+        if (typeTitle==null){
+            BibConsole.printlnError("Source Type #"+number+" in "+categoryTitle+" is missing a title attribute.");
+            skip();
+            return null;
+        }
+        
+        String bib = null, foot = null;
+        boolean hasBib = false, hasFoot = false, hasInput = false;
+        ArrayList<InputNode> inputs = new ArrayList();
+        while (nextChild()){
+            String tag = reader.getLocalName();
+            if (tag.equals("bib") && !hasBib){
+                hasBib = true;
+                bib = reader.getAttributeValue(null, "val");
+                skip();
+            } else if (tag.equals("foot") && !hasFoot){
+                hasFoot = true;
+                foot = reader.getAttributeValue(null, "val");
+                skip();
+            } else if (tag.equals("input") && !hasInput){
+                hasInput = true;
+                while (nextChild()){
+                    inputs.add(new InputNode(reader));
+                    skip();
+                }
+            } else {
+                skip();
+            }
+        }
+        
+        // checked in the same order as the XOM reader so the same error is printed
+        if (!hasBib){
+            BibConsole.printlnError("Source Type "+typeTitle+" is missing a <bib> node.");
+            return null;
+        }
+        if (!SourceLibraryReader.isValidCode(typeTitle, "bibliography", bib)){
+            return null;
+        }
+        if (!hasFoot){
+            BibConsole.printlnError("Source Type "+typeTitle+" is missing a <foot> node.");
+            return null;
+        }
+        if (!SourceLibraryReader.isValidCode(typeTitle, "footnote", foot)){
+            return null;
+        }
+        if (!hasInput){
+            BibConsole.printlnError("Source Type "+typeTitle+" is missing a <input> node.");
+            return null;
+        }
+        
+        Source sourceType = new Source(typeTitle, bib, foot);
+        for (InputNode node : inputs){
+            InputDefinition in = node.toDefinition(typeTitle);
+            if (in!=null){
+                sourceType.addInput(in);
+            }
+        }
+        
+        // parse the codes once now that all of the inputs are known
+        sourceType.compileCodes();
+        
+        BibConsole.println("Finished loading the contents of source: " + typeTitle);
+        return sourceType;
+    }
+    
+    private SourceLibraryInfo readInfo() throws XMLStreamException {
+        SourceLibraryInfo info = new SourceLibraryInfo();
+        while (nextChild()){
+            String tag = reader.getLocalName();
+            if (tag.equals("title")){
+                info.setTitle(reader.getAttributeValue(null, "val"));
+                skip();
+            } else if (tag.equals("contribution")){
+                Contribution cont = new Contribution();
+                cont.setTitle(reader.getAttributeValue(null, "title"));
+                while (nextChild()){
+                    if (reader.getLocalName().equals("contributer")){
+                        cont.addContributer(reader.getAttributeValue(null, "name"));
+                    }
+                    skip();
+                }
+                info.addContribution(cont);
+            } else if (tag.equals("updatehistory")){
+                while (nextChild()){
+                    if (reader.getLocalName().equals("update")){
+                        info.addUpdate(readUpdate());
+                    } else {
+                        skip();
+                    }
+                }
+            } else if (tag.equals("instructions")){
+                while (nextChild()){
+                    if (reader.getLocalName().equals("para")){
+                        info.addParagraph(SourceLibraryReader.readParagraph(
+                                reader.getAttributeValue(null, "alignment"), 
+                                reader.getAttributeValue(null, "font"), 
+                                reader.getAttributeValue(null, "val"), 
+                                reader.getAttributeValue(null, "indent")));
+                    }
+                    skip();
+                }
+            } else {
+                skip();
+            }
+        }
+        return info;
+    }
+    
+    private Update readUpdate() throws XMLStreamException {
+        Update update = new Update();
+        update.setRelease(reader.getAttributeValue(null, "rel"));
+        String title = reader.getAttributeValue(null, "title");
+        update.setTitle(title==null ? "New Update" : title);
+        update.setVersion(reader.getAttributeValue(null, "ver"));
+        while (nextChild()){
+            if (reader.getLocalName().equals("bullet")){
+                update.addBulletPoint(reader.getAttributeValue(null, "val"));
+            }
+            skip();
+        }
+        return update;
+    }
+    
+    /**
+     * moves to the start of the next child of the current element.
+     * @return true if there is a child, false once the end of the current element is reached.
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while (reader.hasNext()){
+            int event = reader.next();
+            if (event==XMLStreamConstants.START_ELEMENT){
+                return true;
+            }
+            if (event==XMLStreamConstants.END_ELEMENT){
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * moves past the end of the element the reader is at the start of.
+     */
+    private void skip() throws XMLStreamException {
+        int depth = 1;
+        while (depth>0){
+            int event = reader.next();
+            if (event==XMLStreamConstants.START_ELEMENT){
+                depth++;
+            } else if (event==XMLStreamConstants.END_ELEMENT){
+                depth--;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib.ui;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+
+/**
+ * The threads that long jobs of the windows, like loading and saving a document, are run on,
+ * so the Event Dispatch Thread never has to wait and no thread has to be made for each button
+ * that is clicked.
+ * <p>
+ * There are at most <code>{@link lal.pbib.ui.BackgroundTasks#THREADS}</code> threads and 
+ * <code>{@link lal.pbib.ui.BackgroundTasks#QUEUE_SIZE}</code> jobs waiting for one, a job 
+ * given when the queue is full fails right away instead of piling up. Jobs are given back as 
+ * a <code>CompletableFuture</code> so they can be chained with the windows of a 
+ * <code>{@link lal.pbib.Retriever}</code>, and <code>{@link lal.pbib.ui.BackgroundTasks#EDT}</code>
+ * can be used to get back on to the Event Dispatch Thread.
+ * @author L. Arthur Lewis II
+ */
+public final class BackgroundTasks {
+    
+    /**
+     * most jobs that can run at the same time.
+     */
+    public static final int THREADS = 2;
+    
+    /**
+     * most jobs that can be waiting for a thread.
+     */
+    public static final int QUEUE_SIZE = 16;
+    
+    /**
+     * runs things later on the Event Dispatch Thread, or right away if already on it.
+     */
+    public static final Executor EDT = r -> {
+        if (SwingUtilities.isEventDispatchThread()){
+            r.run();
+        } else {
+            SwingUtilities.invokeLater(r);
+        }
+    };
+    
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    
+    private static final ThreadPoolExecutor WORKERS = new ThreadPoolExecutor(THREADS, THREADS, 
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue(QUEUE_SIZE), r -> {
+        Thread thread = new Thread(r, "Background Task "+COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    static {
+        // the threads aren't kept around while nothing is happening
+        WORKERS.allowCoreThreadTimeOut(true);
+    }
+    
+    private BackgroundTasks(){}
+    
+    /**
+     * runs a job on one of the background threads.
+     * @param <V> type of the result.
+     * @param task the job, anything it throws completes the future exceptionally.
+     * @return future completed with the result of the job. Canceling it before the job has 
+     * started stops the job from running.
+     */
+    public static <V> CompletableFuture<V> submit(Callable<V> task){
+        CompletableFuture<V> future = new CompletableFuture();
+        try {
+            WORKERS.execute(() -> {
+                if (future.isDone()){
+                    return;
+                }
+                try {
+                    future.complete(task.call());
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+    
+    /**
+     * @return the executor used for the background threads, for chaining with the async 
+     * methods of <code>CompletableFuture</code>.
+     */
+    public static Executor getExecutor(){
+        return WORKERS;
+    }
+    
+    /**
+     * @param ex exception a future was completed with.
+     * @return the exception that was actually thrown, without the 
+     * <code>CompletionException</code> wrapped around it by chained futures.
+     */
+    public static Throwable getCause(Throwable ex){
+        while (ex instanceof CompletionException && ex.getCause()!=null){
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+}
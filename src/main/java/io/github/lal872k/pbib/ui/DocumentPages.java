@@ -0,0 +1,174 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The paragraphs of the text of a document split into pages of 
+ * <code>{@link lal.pbib.ui.DocumentPages#PAGE_SIZE}</code> paragraphs, so a window only has to
+ * lay out one page at a time no matter how long the document is.
+ * <p>
+ * The position of the first character of each paragraph in the whole text is kept, with the 
+ * paragraphs joined by new lines like in <code>{@link lal.pbib.DocumentIO#getText()}</code>,
+ * so a position inside of a page can be turned into a position in the whole text and back. 
+ * Paragraphs can only be added to the end, which never changes the positions before them.
+ * @author L. Arthur Lewis II
+ */
+final class DocumentPages {
+    
+    /**
+     * number of paragraphs on each page.
+     */
+    static final int PAGE_SIZE = 100;
+    
+    private final ArrayList<String> paragraphs;
+    
+    /**
+     * position of the first character of each paragraph.
+     */
+    private int[] starts;
+    
+    /**
+     * number of characters in the whole text.
+     */
+    private int length;
+    
+    DocumentPages(){
+        paragraphs = new ArrayList();
+        starts = new int[PAGE_SIZE];
+    }
+    
+    /**
+     * @param text whole text, split into paragraphs at each new line.
+     */
+    DocumentPages(String text){
+        this();
+        int start = 0;
+        for (int end; (end = text.indexOf('\n', start))!=-1; start = end+1){
+            add(text.substring(start, end));
+        }
+        add(text.substring(start));
+    }
+    
+    /**
+     * adds a paragraph to the end of the text.
+     * @param paragraph text of the paragraph.
+     */
+    void add(String paragraph){
+        int index = paragraphs.size();
+        if (index==starts.length){
+            starts = Arrays.copyOf(starts, index*2);
+        }
+        // add one because of the new line between paragraphs
+        starts[index] = index==0 ? 0 : length+1;
+        length = starts[index]+paragraph.length();
+        paragraphs.add(paragraph);
+    }
+    
+    /**
+     * @return number of paragraphs.
+     */
+    int getParagraphCount(){
+        return paragraphs.size();
+    }
+    
+    /**
+     * @return number of pages, there is always at least one even if it is empty.
+     */
+    int getPageCount(){
+        return Math.max(1, (paragraphs.size()+PAGE_SIZE-1)/PAGE_SIZE);
+    }
+    
+    /**
+     * @param paragraph index of the paragraph.
+     * @return the page the paragraph is on.
+     */
+    static int getPage(int paragraph){
+        return paragraph/PAGE_SIZE;
+    }
+    
+    /**
+     * @param page index of the page.
+     * @return position in the whole text of the first character on the page.
+     */
+    int getPageStart(int page){
+        int first = page*PAGE_SIZE;
+        return first < paragraphs.size() ? starts[first] : length;
+    }
+    
+    /**
+     * @param page index of the page.
+     * @return the paragraphs on the page joined by new lines.
+     */
+    String getPageText(int page){
+        int first = page*PAGE_SIZE;
+        int last = Math.min(first+PAGE_SIZE, paragraphs.size());
+        StringBuilder text = new StringBuilder();
+        for (int q = first; q < last; q++){
+            if (q > first){
+                text.append('\n');
+            }
+            text.append(paragraphs.get(q));
+        }
+        return text.toString();
+    }
+    
+    /**
+     * @param paragraph index of the paragraph.
+     * @return text of the paragraph.
+     */
+    String getParagraph(int paragraph){
+        return paragraphs.get(paragraph);
+    }
+    
+    /**
+     * @param position position in the whole text.
+     * @return the page the position is on, the new line after a paragraph is on the same page
+     * as the paragraph.
+     */
+    int findPage(int position){
+        // last paragraph that starts at or before the position
+        int low = 0, high = paragraphs.size()-1, found = 0;
+        while (low<=high){
+            int mid = (low+high) >>> 1;
+            if (starts[mid]<=position){
+                found = mid;
+                low = mid+1;
+            } else {
+                high = mid-1;
+            }
+        }
+        return getPage(found);
+    }
+    
+    /**
+     * @return number of characters in the whole text.
+     */
+    int getLength(){
+        return length;
+    }
+
+}
@@ -0,0 +1,279 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib.ui;
+
+import io.github.lal872k.pbib.DocumentProgress;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.swing.JButton;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+/**
+ * Reads or saves a document on one of the <code>{@link lal.pbib.ui.BackgroundTasks}</code> 
+ * threads while showing how far along it is in a <code>JProgressBar</code>.
+ * <p>
+ * The job is given this task as its <code>{@link lal.pbib.DocumentProgress}</code>. Updates
+ * to the progress bar are put together so there is at most one waiting on the Event Dispatch
+ * Thread at a time, and paragraphs are handed to the paragraph listener in batches on the 
+ * Event Dispatch Thread so a window can show the text of the document while it is still 
+ * being read. <code>{@link lal.pbib.ui.DocumentTask#cancel(boolean)}</code> makes the job stop
+ * the next time it checks.
+ * <p>
+ * The future from <code>{@link lal.pbib.ui.DocumentTask#start()}</code> is only completed once 
+ * the job has really stopped, not as soon as the task is canceled, so nothing can use the 
+ * document while the job is still finishing. A job that was canceled too late to stop, like a
+ * save that was already replacing the file, completes the future normally.
+ * @author L. Arthur Lewis II
+ * @param <T> type of the result of the job.
+ */
+public final class DocumentTask<T> extends SwingWorker<T, String> implements DocumentProgress {
+    
+    /**
+     * work done to a document.
+     * @param <T> type of the result.
+     */
+    public interface Job<T> {
+        /**
+         * @param progress told about the work, and checked for whether to stop.
+         * @return the result.
+         * @throws IOException reading or writing issue.
+         */
+        public T run(DocumentProgress progress) throws IOException;
+    }
+    
+    private final String title;
+    private final Job<T> job;
+    private final CompletableFuture<T> result;
+    
+    // only used on the Event Dispatch Thread
+    private JProgressBar bar;
+    private JButton cancelButton;
+    private Consumer<List<String>> paragraphListener;
+    
+    private volatile Stage stage;
+    private volatile long done, total;
+    private volatile int paragraphs;
+    private final AtomicBoolean updateQueued;
+    
+    /**
+     * @param title what is being done, shown in the progress bar.
+     * @param job the work.
+     */
+    public DocumentTask(String title, Job<T> job){
+        this.title = title;
+        this.job = job;
+        result = new CompletableFuture();
+        updateQueued = new AtomicBoolean();
+    }
+    
+    /**
+     * @param bar progress bar that shows the progress, it is shown when the task starts and 
+     * hidden when it is done.
+     */
+    public void setProgressBar(JProgressBar bar){
+        this.bar = bar;
+    }
+    
+    /**
+     * @param cancelButton button that cancels the task, it is enabled when the task starts 
+     * and disabled once the task can't be canceled anymore.
+     */
+    public void setCancelButton(JButton cancelButton){
+        this.cancelButton = cancelButton;
+    }
+    
+    /**
+     * @param paragraphListener given the paragraphs of the text of the document as they are 
+     * read, on the Event Dispatch Thread.
+     */
+    public void setParagraphListener(Consumer<List<String>> paragraphListener){
+        this.paragraphListener = paragraphListener;
+    }
+    
+    /**
+     * starts the job on a background thread. Must be called on the Event Dispatch Thread.
+     * @return future completed on the Event Dispatch Thread with the result of the job. It is
+     * canceled if the task was canceled, and completed exceptionally if the job failed or 
+     * there were too many background tasks.
+     */
+    public CompletableFuture<T> start(){
+        if (bar!=null){
+            bar.setIndeterminate(true);
+            bar.setStringPainted(true);
+            bar.setString(title);
+            bar.setVisible(true);
+        }
+        if (cancelButton!=null){
+            cancelButton.setEnabled(true);
+        }
+        try {
+            BackgroundTasks.getExecutor().execute(this);
+        } catch (RejectedExecutionException ex) {
+            finish(null, ex);
+        }
+        return result;
+    }
+    
+    /**
+     * @return the future completed with the result of the job.
+     */
+    public CompletableFuture<T> getResult(){
+        return result;
+    }
+    
+    @Override
+    protected T doInBackground() throws Exception {
+        T value = null;
+        Throwable failure = null;
+        try {
+            value = job.run(this);
+            return value;
+        } catch (Exception | Error ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            // canceling the worker doesn't stop the job, so only finish once it is over
+            T finalValue = value;
+            Throwable finalFailure = failure;
+            SwingUtilities.invokeLater(() -> finish(finalValue, finalFailure));
+        }
+    }
+    
+    @Override
+    public void progress(Stage stage, long done, long total){
+        this.stage = stage;
+        this.done = done;
+        this.total = total;
+        if (total>0){
+            setProgress((int)Math.min(100, done*100/total));
+        }
+        if (updateQueued.compareAndSet(false, true)){
+            SwingUtilities.invokeLater(this::showProgress);
+        }
+    }
+    
+    @Override
+    public void paragraphRead(String text){
+        paragraphs++;
+        publish(text);
+    }
+    
+    @Override
+    public void replacing(){
+        SwingUtilities.invokeLater(() -> {
+            if (cancelButton!=null){
+                cancelButton.setEnabled(false);
+            }
+        });
+    }
+    
+    @Override
+    public boolean isCanceled(){
+        return isCancelled();
+    }
+    
+    @Override
+    protected void process(List<String> chunks){
+        if (paragraphListener!=null){
+            paragraphListener.accept(chunks);
+        }
+    }
+    
+    private void showProgress(){
+        updateQueued.set(false);
+        if (bar==null || isDone()){
+            return;
+        }
+        long total = this.total, done = this.done;
+        if (total>0){
+            bar.setIndeterminate(false);
+            bar.setMaximum(1000);
+            bar.setValue((int)Math.min(1000, done*1000/total));
+        } else {
+            bar.setIndeterminate(true);
+        }
+        bar.setString(title+" - "+describe(stage, done, total));
+    }
+    
+    /**
+     * @return what has been done, like "1.2 of 5.0 MB read".
+     */
+    private String describe(Stage stage, long done, long total){
+        switch (stage){
+            case PARAGRAPHS:
+                return total>0 ? done+" of "+total+" paragraphs" : done+" paragraphs";
+            case WRITING:
+                return toMegabytes(done)+" MB written";
+            default:
+                String read = total>0 ? toMegabytes(done)+" of "+toMegabytes(total)+" MB read" : 
+                        toMegabytes(done)+" MB read";
+                return paragraphs>0 ? read+", "+paragraphs+" paragraphs" : read;
+        }
+    }
+    
+    private static String toMegabytes(long bytes){
+        return String.format("%.1f", bytes/(1024.0*1024.0));
+    }
+    
+    private void hideBar(){
+        if (bar!=null){
+            bar.setVisible(false);
+        }
+    }
+    
+    @Override
+    protected void done(){
+        // called right away when canceled, while the job may still be running
+        if (isCancelled() && bar!=null){
+            bar.setString(title+" - canceling");
+        }
+    }
+    
+    /**
+     * completes the future once the job is over, on the Event Dispatch Thread.
+     * @param value result of the job.
+     * @param failure what the job threw, or null if it finished.
+     */
+    private void finish(T value, Throwable failure){
+        hideBar();
+        if (cancelButton!=null){
+            cancelButton.setEnabled(false);
+        }
+        if (failure instanceof InterruptedIOException){
+            result.cancel(false);
+        } else if (failure!=null){
+            result.completeExceptionally(failure);
+        } else {
+            result.complete(value);
+        }
+    }
+
+}
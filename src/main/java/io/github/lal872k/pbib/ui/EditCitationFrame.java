@@ -24,6 +24,7 @@
 package io.github.lal872k.pbib.ui;
 
 import io.github.lal872k.pbib.Citation;
+import io.github.lal872k.pbib.Source;
 import io.github.lal872k.pbib.ui.comps.TextInput;
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -70,6 +71,7 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
     private JLabel bibLabel, bibText;
     private JLabel footLabel, footText;
     private JButton copyFoot, copyBib;
+    private PreviewRenderer preview;
     
     // save and cancel
     private JPanel options;
@@ -77,6 +79,12 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
     
     private final Citation cite;
     
+    /**
+     * copy of the source of the citation with its own form, so the citation isn't changed 
+     * unless it is saved.
+     */
+    private Source editor;
+    
     public EditCitationFrame(Component parentFrame, Citation cite) {
         super(parentFrame, WINDOW_TITLE);
         this.cite = cite;
@@ -87,6 +95,8 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
         GridBagConstraints bag = new GridBagConstraints();
         bag.insets = new Insets(5, 5, 5, 5);
         
+        editor = cite.getSource().getEditableCopy();
+        
         contents = new JPanel();
         contents.setLayout(new BoxLayout(contents, BoxLayout.Y_AXIS));
         
@@ -117,7 +127,6 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
         
         bibLabel = new JLabel("Bibliography: ");
         bibText = new JLabel();
-        bibText.setText(cite.getSource().getBibCitationPreview());
         copyBib = new JButton(copyImg);
         copyBib.setBorderPainted(false);
         copyBib.setFocusPainted(false);
@@ -137,7 +146,7 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
         
         footLabel = new JLabel("Footnote: ");
         footText = new JLabel();
-        footText.setText(cite.getSource().getFootnoteCitationPreview());
+        preview = new PreviewRenderer(bibText, footText);
         copyFoot = new JButton(copyImg);
         copyFoot.setBorderPainted(false);
         copyFoot.setFocusPainted(false);
@@ -168,7 +177,8 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
         save = new JButton();
         save.setText("Save");
         save.addActionListener(l -> {
-            setContents(new Citation(name.getText(), cite.getSource(),
+            preview.stop();
+            setContents(new Citation(name.getText(), editor,
                     Citation.TypeOfSource.valueOf(
                         hand.getSelectedItem().toString().toUpperCase())));
         });
@@ -176,6 +186,7 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
         cancel = new JButton();
         cancel.setText("Cancel");
         cancel.addActionListener(l -> {
+            preview.stop();
             setContents(null);
         });
         
@@ -219,8 +230,9 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
         
         // update the form
         formSheet.removeAll();
-        cite.getSource().fillForm(formSheet);
-        cite.getSource().addDocumentListenerToInputs(this);
+        editor.fillForm(formSheet);
+        editor.addDocumentListenerToInputs(this);
+        preview.setSource(editor);
         if (frame!=null){
             frame.revalidate();
             Dimension size = frame.getSize();
@@ -262,20 +274,17 @@ public class EditCitationFrame extends MakeFrame<Citation> implements DocumentLi
 
     @Override
     public void insertUpdate(DocumentEvent e) {
-        bibText.setText(cite.getSource().getBibCitationPreview());
-        footText.setText(cite.getSource().getFootnoteCitationPreview());
+        preview.requestUpdate();
     }
 
     @Override
     public void removeUpdate(DocumentEvent e) {
-        bibText.setText(cite.getSource().getBibCitationPreview());
-        footText.setText(cite.getSource().getFootnoteCitationPreview());
+        preview.requestUpdate();
     }
 
     @Override
     public void changedUpdate(DocumentEvent e) {
-        bibText.setText(cite.getSource().getBibCitationPreview());
-        footText.setText(cite.getSource().getFootnoteCitationPreview());
+        preview.requestUpdate();
     }
     
 }
@@ -73,6 +73,7 @@ public final class MakeCitationFrame extends MakeFrame<Citation> implements Docu
     private JLabel bibLabel, bibText;
     private JLabel footLabel, footText;
     private JButton copyFoot, copyBib;
+    private PreviewRenderer preview;
     
     // enter
     private JPanel enter;
@@ -186,6 +187,8 @@ public final class MakeCitationFrame extends MakeFrame<Citation> implements Docu
             JOptionPane.showMessageDialog(copyFoot, "Copied footnote to clipboard.");
         });
         
+        preview = new PreviewRenderer(bibText, footText);
+        
         JPanel footPreview = new JPanel();
         footPreview.add(footLabel);
         footPreview.add(footText);
@@ -211,10 +214,12 @@ public final class MakeCitationFrame extends MakeFrame<Citation> implements Docu
         addSource.addActionListener(l -> {
             Source current = getCurrentSource();
             Citation.TypeOfSource hand = Citation.TypeOfSource.valueOf(handSource.getSelectedItem().toString().toUpperCase());
+            preview.stop();
             setContents(new Citation(citeName, current, hand));
         });
         cancel = new JButton("Cancel");
         cancel.addActionListener(l -> {
+            preview.stop();
             setContents(null);
         });
         enter = new JPanel();
@@ -305,24 +310,27 @@ public final class MakeCitationFrame extends MakeFrame<Citation> implements Docu
         frame.setMinimumSize(new Dimension(frame.getPreferredSize().width, 0));
     }
     
+    /**
+     * updates the preview right away with the currently selected source, typing in the form 
+     * updates it once the typing stops (see <code>{@link lal.pbib.ui.PreviewRenderer}</code>).
+     */
     public void updatePreview(){
-        bibText.setText(getCurrentSource().getBibCitationPreview());
-        footText.setText(getCurrentSource().getFootnoteCitationPreview());
+        preview.setSource(sourceTypeInput.getItemCount()>0 ? getCurrentSource() : null);
     }
 
     @Override
     public void insertUpdate(DocumentEvent e) {
-        updatePreview();
+        preview.requestUpdate();
     }
 
     @Override
     public void removeUpdate(DocumentEvent e) {
-        updatePreview();
+        preview.requestUpdate();
     }
 
     @Override
     public void changedUpdate(DocumentEvent e) {
-        updatePreview();
+        preview.requestUpdate();
     }
     
 }
@@ -23,7 +23,9 @@
  */
 package io.github.lal872k.pbib.ui;
 
+import io.github.lal872k.pbib.BibConsole;
 import io.github.lal872k.pbib.Citation;
+import io.github.lal872k.pbib.DocumentSession;
 import io.github.lal872k.pbib.Footnote;
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -34,6 +36,8 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.Insets;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -42,6 +46,7 @@ import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.border.EmptyBorder;
@@ -49,16 +54,33 @@ import javax.swing.border.TitledBorder;
 import javax.swing.text.DefaultCaret;
 
 /**
- *
+ * Window for picking where footnotes go in the text of a document.
+ * <p>
+ * The text is kept as a list of paragraphs in a <code>{@link lal.pbib.ui.DocumentPages}</code>
+ * and only one page of paragraphs is put in the text area at a time, so long documents are 
+ * as quick to scroll through as short ones. The caret position on the page is turned back 
+ * into a position in the whole text for the footnotes.
+ * <p>
+ * When it is given a <code>{@link lal.pbib.DocumentSession}</code> instead of the text, the
+ * window opens right away and the text is read with a <code>{@link lal.pbib.ui.DocumentTask}
+ * </code>, showing each paragraph as soon as it is read. Text that is added never changes the 
+ * positions before it, so footnotes can be added while the rest is still loading. Closing the
+ * window stops the loading.
  * @author L. Arthur Lewis II
  */
 public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
     
     public static final String WINDOW_TITLE = "Selecting Footnotes";
     
-    private final String document;
+    private final DocumentSession session;
     private final Citation[] cites;
     
+    private DocumentTask<String> loader;
+    
+    // only used on the Event Dispatch Thread
+    private final DocumentPages pages;
+    private int page;
+    
     private final ArrayList<Footnote> footnotes;
     
     // swing stuff
@@ -67,6 +89,10 @@ public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
     private JScrollPane doc_scroll;
     private JPanel doc_bottom;
     private JLabel doc_pos;
+    private JPanel doc_pages;
+    private JButton doc_previous, doc_next;
+    private JLabel doc_page;
+    private JProgressBar doc_progress;
     
     private JPanel doc_fn;
     
@@ -81,7 +107,22 @@ public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
     
     public MakeFootnoteFrame(Component parentFrame, String document, Citation[] cites){
         super(parentFrame, WINDOW_TITLE);
-        this.document = document;
+        this.pages = new DocumentPages(document);
+        this.session = null;
+        this.cites = cites;
+        footnotes = new ArrayList();
+    }
+    
+    /**
+     * makes a window that reads the text of the document itself after it opens.
+     * @param parentFrame window this is shown over.
+     * @param session the document footnotes are being added to.
+     * @param cites citations that can be used for footnotes.
+     */
+    public MakeFootnoteFrame(Component parentFrame, DocumentSession session, Citation[] cites){
+        super(parentFrame, WINDOW_TITLE);
+        this.pages = new DocumentPages();
+        this.session = session;
         this.cites = cites;
         footnotes = new ArrayList();
     }
@@ -107,11 +148,17 @@ public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
         doc_text.setWrapStyleWord(true);
         doc_text.setLineWrap(true);
         doc_text.addCaretListener(l -> {
-            doc_pos.setName(String.valueOf(l.getDot()));
-            doc_pos.setText("Position: " + l.getDot());
+            // position in the whole text, not just this page
+            int position = pages.getPageStart(page)+l.getDot();
+            doc_pos.setName(String.valueOf(position));
+            doc_pos.setText("Position: " + position);
         });
-        doc_text.setText(document);
         doc_text.setCaret(new DefaultCaret(){
+            {
+                // paragraphs added while loading shouldn't move the caret or the view
+                setUpdatePolicy(NEVER_UPDATE);
+            }
+            
             @Override
             public void setSelectionVisible(boolean hasFocus) {
                 super.setSelectionVisible(true);
@@ -130,8 +177,30 @@ public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
         doc_bottom = new JPanel();
         doc_bottom.setLayout(new BorderLayout());
         
+        doc_progress = new JProgressBar();
+        doc_progress.setVisible(false);
+        
+        doc_previous = new JButton("<");
+        doc_previous.addActionListener(l -> showPage(page-1, 0));
+        doc_next = new JButton(">");
+        doc_next.addActionListener(l -> showPage(page+1, 0));
+        doc_page = new JLabel();
+        
+        doc_pages = new JPanel();
+        doc_pages.setLayout(new BoxLayout(doc_pages, BoxLayout.X_AXIS));
+        doc_pages.add(doc_previous);
+        doc_pages.add(Box.createRigidArea(new Dimension(5, 0)));
+        doc_pages.add(doc_page);
+        doc_pages.add(Box.createRigidArea(new Dimension(5, 0)));
+        doc_pages.add(doc_next);
+        doc_pages.add(Box.createRigidArea(new Dimension(5, 0)));
+        
+        doc_bottom.add(doc_pages, BorderLayout.WEST);
+        doc_bottom.add(doc_progress, BorderLayout.CENTER);
         doc_bottom.add(doc_pos, BorderLayout.EAST);
         
+        showPage(0, 0);
+        
         addpanel = addComponent(doc_scroll, 0, 0, 1, 1, 1, 1, bag);
         doc.add(addpanel, bag);
         addpanel = addComponent(doc_bottom, 0, 1, 1, 1, 1, 0, bag);
@@ -144,6 +213,14 @@ public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
                 BorderFactory.createLineBorder(Color.BLACK), "Footnotes / Citations"));
         
         fn_list = new JList();
+        fn_list.addListSelectionListener(l -> {
+            // show where the footnote is
+            if (!l.getValueIsAdjusting() && !fn_list.isSelectionEmpty()){
+                int position = footnotes.get(fn_list.getSelectedIndex()).getPosition();
+                int footPage = pages.findPage(position);
+                showPage(footPage, position-pages.getPageStart(footPage));
+            }
+        });
         fn_list.setBorder(BorderFactory.createTitledBorder(
                 BorderFactory.createLineBorder(Color.BLACK), "All Footnotes"));
         
@@ -245,6 +322,9 @@ public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
     public void styleComponents() {
         doc_text.setFont(SourceManagerFrame.UNIVERSAL_FONT);
         doc_pos.setFont(SourceManagerFrame.UNIVERSAL_FONT);
+        doc_page.setFont(SourceManagerFrame.UNIVERSAL_FONT);
+        doc_previous.setFont(SourceManagerFrame.UNIVERSAL_FONT);
+        doc_next.setFont(SourceManagerFrame.UNIVERSAL_FONT);
         
         fn_cites.setFont(SourceManagerFrame.UNIVERSAL_FONT);
         fn_add.setFont(SourceManagerFrame.UNIVERSAL_FONT);
@@ -261,6 +341,80 @@ public final class MakeFootnoteFrame extends MakeFrame<Footnote[]>{
         ((TitledBorder)fn_cites.getBorder()).setTitleFont(SourceManagerFrame.UNIVERSAL_FONT);
     }
     
+    @Override
+    public void showFrame(){
+        super.showFrame();
+        if (session!=null){
+            loadDocument();
+        }
+    }
+    
+    /**
+     * starts reading the text of the document, which is added to the window as it is read. 
+     * The reading stops once the window is done.
+     */
+    private void loadDocument(){
+        loader = new DocumentTask("Loading "+session.getFile().getName(), session::getText);
+        loader.setProgressBar(doc_progress);
+        loader.setParagraphListener(this::addParagraphs);
+        loader.start().whenComplete((text, ex) -> {
+            if (ex==null || ex instanceof CancellationException){
+                return;
+            }
+            Throwable cause = BackgroundTasks.getCause(ex);
+            cause.printStackTrace();
+            BibConsole.getConsole().printlnError("Failed to load file. Error Message: "+cause.getMessage());
+            JOptionPane.showMessageDialog(frame, "There was an io issue with the file selected", 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            setContents(null);
+        });
+        getResult().whenComplete((result, ex) -> loader.cancel(false));
+    }
+    
+    /**
+     * adds paragraphs to the end of the text. Only the ones on the page being shown are put
+     * in the text area.
+     * @param text the paragraphs.
+     */
+    private void addParagraphs(List<String> text){
+        StringBuilder added = new StringBuilder();
+        for (String paragraph : text){
+            int index = pages.getParagraphCount();
+            pages.add(paragraph);
+            if (DocumentPages.getPage(index)==page){
+                if (index%DocumentPages.PAGE_SIZE!=0){
+                    added.append('\n');
+                }
+                added.append(paragraph);
+            }
+        }
+        if (added.length()>0){
+            doc_text.append(added.toString());
+        }
+        updatePageButtons();
+    }
+    
+    /**
+     * puts a page in the text area.
+     * @param page index of the page, moved inside of the pages there are.
+     * @param caret position of the caret on the page.
+     */
+    private void showPage(int page, int caret){
+        page = Math.max(0, Math.min(page, pages.getPageCount()-1));
+        if (page!=this.page || doc_text.getDocument().getLength()==0){
+            this.page = page;
+            doc_text.setText(pages.getPageText(page));
+        }
+        doc_text.setCaretPosition(Math.max(0, Math.min(caret, doc_text.getDocument().getLength())));
+        updatePageButtons();
+    }
+    
+    private void updatePageButtons(){
+        doc_page.setText("Page "+(page+1)+" of "+pages.getPageCount());
+        doc_previous.setEnabled(page>0);
+        doc_next.setEnabled(page<pages.getPageCount()-1);
+    }
+    
     public void updateFootnoteList(){
         String[] listData = new String[footnotes.size()];
         for (int q = 0; q < footnotes.size(); q++){
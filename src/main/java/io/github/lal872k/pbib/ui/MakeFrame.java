@@ -28,12 +28,16 @@ import java.awt.GridBagConstraints;
 import java.awt.GridLayout;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
 /**
  * Functions as a Popup menu were its main objective is to obtain a piece of info, in this case
- * <code>T</code>, and return it after a button is clicked.
+ * <code>T</code>, and return it after a button is clicked. The info is given through the 
+ * future from <code>{@link lal.pbib.ui.MakeFrame#getResult()}</code>, which is completed with
+ * null if the window is closed or canceled.
  * @author L. Arthur Lewis II
  * @param <T> the return type.
  */
@@ -42,7 +46,7 @@ public abstract class MakeFrame<T> {
     public static final String DEFAULT_FRAME_TITLE = "Retriever Window";
     private final String initialTitle;
     
-    private T t;
+    private final CompletableFuture<T> result;
     
     private final Component parentFrame;
     
@@ -52,6 +56,7 @@ public abstract class MakeFrame<T> {
     public MakeFrame(Component parentFrame){
         this.parentFrame = parentFrame;
         initialTitle = DEFAULT_FRAME_TITLE;
+        result = new CompletableFuture();
     }
     
     public MakeFrame(Component parentFrame, String initialTitle){
@@ -61,6 +66,7 @@ public abstract class MakeFrame<T> {
         } else {
             this.initialTitle = DEFAULT_FRAME_TITLE;
         }
+        result = new CompletableFuture();
     }
     
     public abstract void initializeComponents();
@@ -110,24 +116,57 @@ public abstract class MakeFrame<T> {
     }
     
     public final void openFrame(){
-        initializeFrame();
-        initializeComponents();
-        styleComponents();
-        showFrame();
+        try {
+            initializeFrame();
+            initializeComponents();
+            styleComponents();
+            showFrame();
+        } catch (RuntimeException ex) {
+            // nobody is going to click anything, so don't leave anyone waiting for the result
+            result.completeExceptionally(ex);
+            throw ex;
+        }
     }
     
     public final void dispose(){
-        frame.dispose();
+        if (frame!=null){
+            frame.dispose();
+        }
+    }
+    
+    /**
+     * @return future completed once with what the user picked, or null if they canceled.
+     */
+    public final CompletableFuture<T> getResult(){
+        return result;
+    }
+    
+    /**
+     * waits for what the user picks. Don't call this on the Event Dispatch Thread.
+     * @return what the user picked, or null if they canceled or the window couldn't be opened.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public final T getContents() throws InterruptedException{
+        try {
+            return result.get();
+        } catch (ExecutionException ex) {
+            return null;
+        }
     }
     
-    public synchronized final T getContents() throws InterruptedException{
-        this.wait();
-        return t;
+    /**
+     * gives the result of the window, only the first call does anything.
+     * @param t what the user picked, or null if they canceled.
+     */
+    protected final void setContents(T t){
+        result.complete(t);
     }
     
-    protected synchronized final void setContents(T t){
-        this.t = t;
-        this.notify();
+    /**
+     * gives null as the result, as if the user canceled.
+     */
+    public final void cancel(){
+        setContents(null);
     }
     
     protected final Component getParentFrame(){
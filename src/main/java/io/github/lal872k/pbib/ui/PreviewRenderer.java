@@ -0,0 +1,164 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib.ui;
+
+import io.github.lal872k.pbib.CitationValues;
+import io.github.lal872k.pbib.CompiledReferenceCode;
+import io.github.lal872k.pbib.Source;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Keeps the bibliography and footnote preview of a form up to date without making the form 
+ * slow to type in.
+ * <p>
+ * Changes are put together until nothing has changed for 
+ * <code>{@link lal.pbib.ui.PreviewRenderer#DELAY}</code> milliseconds. The values in the form
+ * are then copied on the Event Dispatch Thread and the citations are made from the copy on 
+ * a background thread. Every update gets a number, and a finished preview is only shown if 
+ * no newer update was started, so a slow preview can't replace a newer one. The labels are 
+ * only changed on the Event Dispatch Thread.
+ * <p>
+ * The citations are made with a <code>{@link lal.pbib.CompiledReferenceCode.TextCache}</code> 
+ * for each code, so only the parts of the citation that depend on the fields that changed are
+ * made again.
+ * @author L. Arthur Lewis II
+ */
+public final class PreviewRenderer {
+    
+    /**
+     * time in milliseconds without changes before the preview is made.
+     */
+    public static final int DELAY = 150;
+    
+    /**
+     * one thread shared by all the previews, only the newest preview matters so they don't 
+     * need to be made at the same time.
+     */
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Citation Preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final JLabel bibText, footText;
+    
+    private final Timer timer;
+    
+    /**
+     * number of the newest update, used to throw away previews that finish too late.
+     */
+    private final AtomicLong generation;
+    
+    // only used on the Event Dispatch Thread
+    private Source source;
+    private CompiledReferenceCode.TextCache bibCache, footCache;
+    private CitationValues shown;
+    
+    /**
+     * @param bibText label showing the bibliography.
+     * @param footText label showing the footnote.
+     */
+    public PreviewRenderer(JLabel bibText, JLabel footText){
+        this.bibText = bibText;
+        this.footText = footText;
+        generation = new AtomicLong();
+        timer = new Timer(DELAY, l -> render());
+        timer.setRepeats(false);
+    }
+    
+    /**
+     * changes which source the preview is made from and updates the preview right away. Must
+     * be called on the Event Dispatch Thread.
+     * @param source source whose form is previewed, null to clear the preview.
+     */
+    public void setSource(Source source){
+        this.source = source;
+        bibCache = source==null ? null : source.getCompiledBibCode().newTextCache();
+        footCache = source==null ? null : source.getCompiledFootCode().newTextCache();
+        shown = null;
+        updateNow();
+    }
+    
+    /**
+     * updates the preview once the form stops changing. Must be called on the Event Dispatch 
+     * Thread, usually from a <code>DocumentListener</code>.
+     */
+    public void requestUpdate(){
+        timer.restart();
+    }
+    
+    /**
+     * starts updating the preview without waiting. Must be called on the Event Dispatch 
+     * Thread.
+     */
+    public void updateNow(){
+        timer.stop();
+        render();
+    }
+    
+    /**
+     * stops any update that hasn't been shown yet.
+     */
+    public void stop(){
+        timer.stop();
+        generation.incrementAndGet();
+    }
+    
+    private void render(){
+        Source current = source;
+        if (current==null){
+            generation.incrementAndGet();
+            bibText.setText("");
+            footText.setText("");
+            return;
+        }
+        // the form can only be read on this thread
+        CitationValues values = current.getFormValues();
+        if (values.equals(shown)){
+            return;
+        }
+        shown = values;
+        CompiledReferenceCode.TextCache bib = bibCache, foot = footCache;
+        long number = generation.incrementAndGet();
+        RENDERER.execute(() -> {
+            if (number!=generation.get()){
+                return;
+            }
+            String bibCitation = bib.getCitationText(values);
+            String footCitation = foot.getCitationText(values);
+            SwingUtilities.invokeLater(() -> {
+                if (number==generation.get()){
+                    bibText.setText(bibCitation);
+                    footText.setText(footCitation);
+                }
+            });
+        });
+    }
+
+}
@@ -29,9 +29,8 @@ import io.github.lal872k.pbib.BibConsole;
 import io.github.lal872k.pbib.Citation;
 import io.github.lal872k.pbib.CitationEditor;
 import io.github.lal872k.pbib.CitationRetriever;
-import io.github.lal872k.pbib.DocumentIO;
+import io.github.lal872k.pbib.DocumentSession;
 import io.github.lal872k.pbib.FootnoteRetriever;
-import io.github.lal872k.pbib.Retriever;
 import io.github.lal872k.pbib.SourceLibrary;
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -44,9 +43,13 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -76,16 +79,30 @@ public final class SourceManagerFrame extends MakeFrame{
     private JScrollPane citationScroll;
     
     private JPanel addCitations;
-    private JButton addBibliography, addFootnotes;
+    private JButton addBibliography, addFootnotes, saveDocument;
     
     private JPanel devDetails;
     private JLabel devName;
+    private JProgressBar taskProgress;
+    private JButton cancelTask;
     private static final String DEV_NAME = "L. Arthur Lewis II 2016";
     
     // other stuff
     private final ArrayList<Citation> cites;
     private final SourceLibrary library;
     
+    /**
+     * the document that is open, changes to it are only saved when save document is clicked.
+     */
+    private DocumentSession session;
+    private DocumentSession.Mode documentMode = DocumentSession.Mode.IN_MEMORY;
+    
+    /**
+     * the document task shown at the bottom of the window, only used on the Event Dispatch 
+     * Thread.
+     */
+    private DocumentTask task;
+    
     public SourceManagerFrame(SourceLibrary library){
         super(null, TITLE);
         cites = new ArrayList();
@@ -95,6 +112,16 @@ public final class SourceManagerFrame extends MakeFrame{
             console.println("Showing the library info screen...");
             showLibraryInfo();
         }));
+        BibConsole.getCommandHandler().addCommand(new Command("streaming", (console, arguments) -> {
+            if (arguments.length > 0){
+                if (arguments[0].equalsIgnoreCase("on")){
+                    documentMode = DocumentSession.Mode.STREAMING;
+                } else if (arguments[0].equalsIgnoreCase("off")){
+                    documentMode = DocumentSession.Mode.IN_MEMORY;
+                }
+            }
+            console.println("Documents opened from now on will use mode: "+documentMode);
+        }));
     }
     
     @Override
@@ -134,8 +161,11 @@ public final class SourceManagerFrame extends MakeFrame{
                 chooser.setAcceptAllFileFilterUsed(false);
                 int returnval = chooser.showDialog(null, "Select");
                 if (returnval == JFileChooser.APPROVE_OPTION){
-                    file = chooser.getSelectedFile();
-                    fileName.setText(file.getName());
+                    File selected = chooser.getSelectedFile();
+                    closeSession(() -> {
+                        file = selected;
+                        updateFileName();
+                    });
                 }
             }
         });
@@ -156,29 +186,33 @@ public final class SourceManagerFrame extends MakeFrame{
         
         addCitation = new JButton("Add Citation");
         addCitation.addActionListener(l -> {
-            // without thread the components inside citeframe are not visible
-            new Thread(() -> {
-                CitationRetriever citeGetter = new CitationRetriever(library, frame);
-                frame.setVisible(false);
-                if (citeGetter.retrieve() == Retriever.ReturnStatus.SELECTED){
-                    cites.add(citeGetter.getContents());
+            // the window is waited on without blocking the Event Dispatch Thread
+            CitationRetriever citeGetter = new CitationRetriever(library, frame);
+            frame.setVisible(false);
+            citeGetter.retrieveAsync().whenComplete((cite, ex) -> {
+                if (cite!=null){
+                    cites.add(cite);
                     updateSourcesList();
                 }
                 frame.setVisible(true);
-            }).start();
+            });
         });
         
         editCitation = new JButton("Edit Citation");
         editCitation.addActionListener(l -> {
-            new Thread(() -> {
-                CitationEditor citeEditor = new CitationEditor(frame, cites.get(citations.getSelectedIndex()));
-                frame.setVisible(false);
-                if (citeEditor.retrieve() == Retriever.ReturnStatus.SELECTED){
-                    cites.set(citations.getSelectedIndex(), citeEditor.getContents());
+            int index = citations.getSelectedIndex();
+            if (index==-1){
+                return;
+            }
+            CitationEditor citeEditor = new CitationEditor(frame, cites.get(index));
+            frame.setVisible(false);
+            citeEditor.retrieveAsync().whenComplete((cite, ex) -> {
+                if (cite!=null){
+                    cites.set(index, cite);
                     updateSourcesList();
                 }
                 frame.setVisible(true);
-            }).start();
+            });
         });
         
         removeCitation = new JButton("Remove Citation");
@@ -211,109 +245,73 @@ public final class SourceManagerFrame extends MakeFrame{
         
         addBibliography = new JButton("Add Bibliography");
         addBibliography.addActionListener(l -> {
-            new Thread(() -> {
-                // check for a selected file
-                if (file==null){
-                    JOptionPane.showMessageDialog(null, "No file selected", 
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
+            // check for a selected file
+            if (file==null){
+                JOptionPane.showMessageDialog(null, "No file selected", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-                // make sure there is a citaion
-                if (cites.isEmpty()){
-                    JOptionPane.showMessageDialog(null, "No citations added yet (click add citation to do so).", 
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-                
-                // get the citation they want
-                frame.setVisible(false);
-                BibCitationPicker bcp = new BibCitationPicker(cites.toArray(new Citation[0]), frame);
-                Citation[] bibCites = null;
-                bcp.retrieve();
-                if (bcp.retrieve()==Retriever.ReturnStatus.SELECTED){
-                    bibCites = bcp.getContents();
-                } else {
-                    frame.setVisible(true);
-                    return;
+            // make sure there is a citaion
+            if (cites.isEmpty()){
+                JOptionPane.showMessageDialog(null, "No citations added yet (click add citation to do so).", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            // get the citation they want
+            frame.setVisible(false);
+            BibCitationPicker bcp = new BibCitationPicker(cites.toArray(new Citation[0]), frame);
+            bcp.retrieveAsync().whenComplete((bibCites, ex) -> {
+                if (bibCites!=null){
+                    // added to the document when it is saved
+                    getSession().queueBibliography(bibCites);
+                    updateFileName();
                 }
                 frame.setVisible(true);
-
-                // load the document
-                DocumentIO dio = new DocumentIO(file);
-                try {
-                    dio.loadDocument();
-                } catch (IOException ex) {
-                    BibConsole.getConsole().printlnError("Failed to load file. Error Message: "+ex.getMessage());
-                    BibConsole.getConsole().show();
-                    ex.printStackTrace();
-                    return;
-                }
-
-                // add the bibliography
-                dio.addBibliography(bibCites);
-
-                // save to the document
-                try {
-                    dio.saveDocument();
-                } catch (IOException ex) {
-                    BibConsole.getConsole().printlnError("Failed to save file. Error Message: "+ex.getMessage());
-                    BibConsole.getConsole().show();
-                    ex.printStackTrace();
-                    return;
-                }
-            }).start();
+            });
         });
         
         addFootnotes = new JButton("Add Footnotes");
         addFootnotes.addActionListener(l -> {
-            new Thread(() -> {
-                // check for file
-                if (file==null){
-                    JOptionPane.showMessageDialog(null, "No file selected", 
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-                
-                // make sure there is a citaion
-                if (cites.isEmpty()){
-                    JOptionPane.showMessageDialog(null, "No citations added yet (click add citation to do so).", 
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-                
-                DocumentIO dio = new DocumentIO(file);
-                try {
-                    dio.loadDocument();
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                    BibConsole.getConsole().printlnError("Failed to load file. Error Message: "+ex.getMessage());
-                    JOptionPane.showMessageDialog(null, "There was an io issue with the file selected", 
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-                
-                frame.setVisible(false);
-                FootnoteRetriever fr = new FootnoteRetriever(dio.getText(), cites.toArray(new Citation[0]), frame);
-                if (fr.retrieve()==Retriever.ReturnStatus.SELECTED){
-                    dio.addFootnote(fr.getContents());
-                    try {
-                        dio.saveDocument();
-                    } catch (IOException ex) {
-                        BibConsole.getConsole().printlnError("Failed to save file. Error Message: "+ex.getMessage());
-                        JOptionPane.showMessageDialog(null, "There was an io issue with the file selected", 
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                        ex.printStackTrace();
-                    }
+            // check for file
+            if (file==null){
+                JOptionPane.showMessageDialog(null, "No file selected", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            // make sure there is a citaion
+            if (cites.isEmpty()){
+                JOptionPane.showMessageDialog(null, "No citations added yet (click add citation to do so).", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            // the footnote window opens right away and reads the document while it is open
+            DocumentSession current = getSession();
+            frame.setVisible(false);
+            FootnoteRetriever fr = new FootnoteRetriever(current, cites.toArray(new Citation[0]), frame);
+            fr.retrieveAsync().whenComplete((footnotes, ex) -> {
+                if (footnotes!=null){
+                    // added to the document when it is saved
+                    current.queueFootnotes(footnotes);
+                    updateFileName();
                 }
                 frame.setVisible(true);
-            }).start();
+            });
         });
         
+        saveDocument = new JButton("Save Document");
+        saveDocument.setEnabled(false);
+        saveDocument.addActionListener(l -> saveSession());
+        
         addCitations.add(Box.createHorizontalGlue());
         addCitations.add(addBibliography, BorderLayout.EAST);
         addCitations.add(Box.createRigidArea(new Dimension(5, 0)));
-        addCitations.add(addFootnotes, BorderLayout.LINE_END);
+        addCitations.add(addFootnotes, BorderLayout.EAST);
+        addCitations.add(Box.createRigidArea(new Dimension(5, 0)));
+        addCitations.add(saveDocument, BorderLayout.LINE_END);
         
         devDetails = new JPanel();
         devDetails.setLayout(new BoxLayout(devDetails, BoxLayout.X_AXIS));
@@ -321,6 +319,20 @@ public final class SourceManagerFrame extends MakeFrame{
         devName = new JLabel();
         devName.setText(DEV_NAME);
         
+        taskProgress = new JProgressBar();
+        taskProgress.setVisible(false);
+        
+        cancelTask = new JButton("Cancel");
+        cancelTask.setVisible(false);
+        cancelTask.addActionListener(l -> {
+            if (task!=null){
+                task.cancel(false);
+            }
+        });
+        
+        devDetails.add(taskProgress);
+        devDetails.add(Box.createRigidArea(new Dimension(5, 0)));
+        devDetails.add(cancelTask);
         devDetails.add(Box.createHorizontalGlue());
         devDetails.add(devName, BorderLayout.EAST);
         
@@ -348,7 +360,19 @@ public final class SourceManagerFrame extends MakeFrame{
     public void showFrame() {
         super.showFrame();
         frame.setMinimumSize(new Dimension(frame.getPreferredSize().width, 0));
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // ask about changes that haven't been saved before closing
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (task!=null){
+                    JOptionPane.showMessageDialog(frame, "Wait for the document to finish saving, or cancel it first.", 
+                            "Busy", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                closeSession(() -> System.exit(0));
+            }
+        });
     }
     
     @Override
@@ -367,9 +391,118 @@ public final class SourceManagerFrame extends MakeFrame{
         
         addBibliography.setFont(UNIVERSAL_FONT);
         addFootnotes.setFont(UNIVERSAL_FONT);
+        saveDocument.setFont(UNIVERSAL_FONT);
         
         devName.setFont(UNIVERSAL_FONT);
         devName.setFont(devName.getFont().deriveFont(Font.ITALIC));
+        cancelTask.setFont(UNIVERSAL_FONT);
+    }
+    
+    /**
+     * @return the session for the selected file, a new one is started if the file changed.
+     */
+    private synchronized DocumentSession getSession(){
+        if (session==null || !session.getFile().equals(file)){
+            session = new DocumentSession(file, documentMode);
+        }
+        return session;
+    }
+    
+    /**
+     * writes the queued changes to the file in the background, with the progress shown at 
+     * the bottom of the window.
+     * @return future completed on the Event Dispatch Thread once the changes are saved, it is
+     * canceled or completed exceptionally if they weren't.
+     */
+    private CompletableFuture<Void> saveSession(){
+        DocumentSession current = session;
+        if (current==null){
+            return CompletableFuture.completedFuture(null);
+        }
+        return runTask(new DocumentTask<Void>("Saving "+current.getFile().getName(), progress -> {
+            current.commit(progress);
+            return null;
+        })).whenComplete((result, ex) -> {
+            if (ex instanceof CancellationException){
+                BibConsole.getConsole().println("Saving was canceled, the file was left as it was.");
+            } else if (ex!=null){
+                Throwable cause = BackgroundTasks.getCause(ex);
+                cause.printStackTrace();
+                BibConsole.getConsole().printlnError("Failed to save file. Error Message: "+cause.getMessage());
+                JOptionPane.showMessageDialog(frame, "There was an io issue with the file selected", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            updateFileName();
+        });
+    }
+    
+    /**
+     * asks whether to save the changes to the current file before another file is picked or 
+     * the program is closed. Saving is done in the background.
+     * @param closed run on the Event Dispatch Thread once the session is closed, not run if 
+     * the user canceled or saving didn't work.
+     */
+    private void closeSession(Runnable closed){
+        if (session==null || !session.hasPendingChanges()){
+            session = null;
+            closed.run();
+            return;
+        }
+        int answer = JOptionPane.showConfirmDialog(frame, "Save the changes made to "+
+                session.getFile().getName()+"?", "Unsaved Changes", 
+                JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (answer==JOptionPane.YES_OPTION){
+            saveSession().whenComplete((result, ex) -> {
+                if (ex==null){
+                    session = null;
+                    closed.run();
+                }
+            });
+        } else if (answer==JOptionPane.NO_OPTION){
+            session = null;
+            closed.run();
+        }
+    }
+    
+    /**
+     * runs a document task with its progress shown at the bottom of the window. The buttons 
+     * that use the document can't be clicked until it is done.
+     * @param <T> type of the result.
+     * @param task the task.
+     * @return future completed on the Event Dispatch Thread when the task is done.
+     */
+    private <T> CompletableFuture<T> runTask(DocumentTask<T> task){
+        this.task = task;
+        task.setProgressBar(taskProgress);
+        task.setCancelButton(cancelTask);
+        setDocumentButtonsEnabled(false);
+        cancelTask.setVisible(true);
+        return task.start().whenComplete((result, ex) -> {
+            this.task = null;
+            cancelTask.setVisible(false);
+            setDocumentButtonsEnabled(true);
+        });
+    }
+    
+    private void setDocumentButtonsEnabled(boolean enabled){
+        chooseFile.setEnabled(enabled);
+        addBibliography.setEnabled(enabled);
+        addFootnotes.setEnabled(enabled);
+        saveDocument.setEnabled(enabled);
+    }
+    
+    /**
+     * shows the name of the file and whether it has changes that haven't been saved.
+     */
+    private void updateFileName(){
+        if (file==null){
+            fileName.setText("No File Selected");
+            saveDocument.setEnabled(false);
+            return;
+        }
+        boolean pending = session!=null && session.hasPendingChanges();
+        fileName.setText(pending ? file.getName()+" (unsaved changes)" : file.getName());
+        saveDocument.setEnabled(pending);
     }
     
     public void updateSourcesList(){
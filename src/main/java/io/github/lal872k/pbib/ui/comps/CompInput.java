@@ -51,6 +51,12 @@ public abstract class CompInput {
      */
     public abstract String getData();
     
+    /**
+     * puts data into the input, used to show the values of a citation that is being edited.
+     * @param data the data to put in the input.
+     */
+    public abstract void setData(String data);
+    
     /**
      * this is temporarily here because the input fields need to be listened to so the bibliography
      * & footnote preview can be updated whenever the input is updated.
@@ -91,8 +97,6 @@ public abstract class CompInput {
         return (name.indexOf(ReferenceCode.CONDITION_AND_OUTPUT_SEPARATOR)==-1 &&
                 name.indexOf(ReferenceCode.MULTIPLE_CONDITIONS_OR)==-1 &&
                 name.indexOf(ReferenceCode.MULTIPLE_CONDITIONS_AND)==-1 &&
-                !name.contentEquals(ReferenceCode.TRUE_PLACE_HOLDER) &&
-                !name.contentEquals(ReferenceCode.FALSE_PLACE_HOLDER) &&
                 !name.contains("{") && !name.contains("}") &&
                 !name.contains("(") && !name.contains(")") &&
                 name.indexOf(ReferenceCode.IF)==-1 && 
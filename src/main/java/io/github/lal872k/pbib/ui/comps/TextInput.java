@@ -130,6 +130,11 @@ public class TextInput extends CompInput{
         return input.getText();
     }
     
+    @Override
+    public final void setData(String data){
+        input.setText(data);
+    }
+    
     @Override
     public final void addDocListener(DocumentListener dl){
         input.getDocument().removeDocumentListener(dl);
@@ -0,0 +1,102 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.util.HashMap;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * checks the plain text made by <code>{@link lal.pbib.CompiledReferenceCode}</code>.
+ * @author L. Arthur Lewis II
+ */
+public class CompiledReferenceCodeTest {
+    
+    private static final String[] FIELDS = {"a", "b", "c"};
+    
+    private static Source newSource(String code){
+        Source source = new Source("Test", code, code);
+        for (String field : FIELDS){
+            source.addInput(new InputDefinition(field, field, InputDefinition.Kind.TEXT, null, 
+                    null, false, false));
+        }
+        source.compileCodes();
+        return source;
+    }
+    
+    /**
+     * @param values the values of a, b and c.
+     */
+    private static CitationValues values(Source source, String... values){
+        HashMap<String, String> map = new HashMap();
+        for (int q = 0; q < values.length; q++){
+            map.put(FIELDS[q], values[q]);
+        }
+        return CitationValues.of(source, map);
+    }
+    
+    private static String text(String code, String... values){
+        Source source = newSource(code);
+        return source.getCompiledBibCode().getCitationText(values(source, values));
+    }
+    
+    @Test
+    public void references(){
+        assertEquals("Smith, Book.", text("{@a}, {@b}.", "Smith", "Book"));
+        assertEquals(", .", text("{@a}, {@b}."));
+        assertEquals("[]", text("[{@z}]", "Smith"));
+    }
+    
+    @Test
+    public void ifStatements(){
+        assertEquals("Smith. ", text("{@a}{?a:. }{@b}{?b:. }", "Smith"));
+        assertEquals("no b", text("{?!b:no b}", "Smith"));
+        assertEquals("", text("{?z:unknown}", "Smith", "Book", "2016"));
+    }
+    
+    @Test
+    public void andIsCheckedBeforeOr(){
+        String code = "{?a+b|c:yes}";
+        assertEquals("yes", text(code, "", "", "2016"));
+        assertEquals("yes", text(code, "Smith", "Book"));
+        assertEquals("", text(code, "Smith"));
+        assertEquals("", text("{?a+(b|c):yes}", "", "", "2016"));
+    }
+    
+    @Test
+    public void textCacheMatchesCitationText(){
+        Source source = newSource("{@a}{?a+b:, }{@b}{?!c:[no c]}{?c|(a+!b):(}{@c}{?c:)}.");
+        CompiledReferenceCode code = source.getCompiledBibCode();
+        CompiledReferenceCode.TextCache cache = code.newTextCache();
+        String[] options = {"", "x", "yy"};
+        Random random = new Random(1);
+        for (int q = 0; q < 1000; q++){
+            CitationValues values = values(source, options[random.nextInt(3)], 
+                    options[random.nextInt(3)], options[random.nextInt(3)]);
+            assertEquals(code.getCitationText(values), cache.getCitationText(values));
+        }
+    }
+
+}
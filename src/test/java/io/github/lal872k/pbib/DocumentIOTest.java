@@ -0,0 +1,203 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
+
+/**
+ * checks how <code>{@link lal.pbib.DocumentIO}</code> orders the bibliography and where it
+ * puts the footnote references.
+ * @author L. Arthur Lewis II
+ */
+public class DocumentIOTest {
+    
+    /**
+     * @return citation whose bibliography is the text given.
+     */
+    static Citation newCitation(String text){
+        Source source = new Source("Test", "{@title}", "{@title}");
+        source.addInput(new InputDefinition("Title", "title", InputDefinition.Kind.TEXT, null, 
+                null, false, false));
+        return new Citation(text, source.getFilledCopy(Collections.singletonMap("title", text)), 
+                Citation.TypeOfSource.PRIMARY);
+    }
+    
+    /**
+     * @param paragraphs text of the runs in each paragraph.
+     * @return a word document with the paragraphs, deleted when the tests are done.
+     */
+    static File newDocument(String[]... paragraphs) throws IOException {
+        XWPFDocument doc = new XWPFDocument();
+        // word always saves a styles part, the footnote styles are added to it
+        doc.createStyles();
+        for (String[] runs : paragraphs){
+            XWPFParagraph paragraph = doc.createParagraph();
+            for (String run : runs){
+                paragraph.createRun().setText(run);
+            }
+        }
+        File file = File.createTempFile("pbib", ".docx");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)){
+            doc.write(out);
+        }
+        return file;
+    }
+    
+    static DocumentIO load(File file) throws IOException {
+        DocumentIO io = new DocumentIO(file);
+        io.loadDocument();
+        return io;
+    }
+    
+    static Footnote[] newFootnotes(int... positions){
+        Footnote[] footnotes = new Footnote[positions.length];
+        for (int q = 0; q < positions.length; q++){
+            footnotes[q] = new Footnote(newCitation("Note "+q), positions[q]);
+        }
+        return footnotes;
+    }
+    
+    /**
+     * @param ids where the id of each footnote reference is added, in the order they are in.
+     * @return text of the document with a * for each footnote reference.
+     */
+    static String getMarkedText(DocumentIO io, ArrayList<BigInteger> ids){
+        DocumentPositionIndex index = io.getPositionIndex();
+        StringBuilder text = new StringBuilder();
+        for (int p = 0; p < index.getParagraphCount(); p++){
+            if (p>0){
+                text.append('\n');
+            }
+            for (CTR run : index.getParagraph(p).getRArray()){
+                for (int q = 0; q < run.sizeOfFootnoteReferenceArray(); q++){
+                    text.append('*');
+                    ids.add(run.getFootnoteReferenceArray(q).getId());
+                }
+                for (CTText t : run.getTArray()){
+                    text.append(t.getStringValue());
+                }
+            }
+        }
+        return text.toString();
+    }
+    
+    @Test
+    public void sortTextSkipsArticles(){
+        assertEquals("Zoo", DocumentIO.getSortText("The Zoo"));
+        assertEquals("Apple", DocumentIO.getSortText("An Apple"));
+        assertEquals("Book", DocumentIO.getSortText("a Book"));
+        assertEquals("Cat", DocumentIO.getSortText("THE  Cat"));
+    }
+    
+    @Test
+    public void sortTextKeepsWordsStartingWithArticles(){
+        assertEquals("Theory", DocumentIO.getSortText("Theory"));
+        assertEquals("Anthem", DocumentIO.getSortText("Anthem"));
+        assertEquals("The", DocumentIO.getSortText("The"));
+        assertEquals("A", DocumentIO.getSortText("A"));
+    }
+    
+    @Test
+    public void sortTextSkipsToTheFirstLetter(){
+        assertEquals("Quoted\"", DocumentIO.getSortText("\"Quoted\""));
+        assertEquals("Zoo", DocumentIO.getSortText("[The Zoo"));
+        assertEquals("Zoo", DocumentIO.getSortText("The \"Zoo"));
+        assertEquals("", DocumentIO.getSortText("1984 "));
+        assertEquals("", DocumentIO.getSortText(""));
+    }
+    
+    @Test
+    public void sortAlphabetically(){
+        String[] texts = {"The Zoo", "banana", "An Apple", "\"Cherry\"", "apple"};
+        ArrayList<Citation> cites = new ArrayList();
+        for (String text : texts){
+            cites.add(newCitation(text));
+        }
+        DocumentIO.sortAlphabetically(cites);
+        
+        // upper and lower case are the same, so An Apple stays before apple
+        String[] sorted = {"An Apple", "apple", "banana", "\"Cherry\"", "The Zoo"};
+        assertEquals(sorted.length, cites.size());
+        for (int q = 0; q < sorted.length; q++){
+            assertEquals(sorted[q], cites.get(q).getName());
+        }
+    }
+    
+    @Test
+    public void footnoteReferences() throws IOException {
+        DocumentIO io = load(newDocument(new String[]{"Hello ", "world"}, 
+                new String[]{"Second"}));
+        // given out of order, with two at the same position and one past the end
+        io.addFootnote(newFootnotes(12, 0, 8, 100, 6, 11, 8, 18));
+        
+        ArrayList<BigInteger> ids = new ArrayList();
+        assertEquals("*Hello *wo**rld*\n*Second*", getMarkedText(io, ids));
+        assertEquals("Hello world\nSecond", io.getText());
+        
+        // the footnotes are numbered in the order they are in the document
+        assertEquals(7, ids.size());
+        for (int q = 1; q < ids.size(); q++){
+            assertTrue(ids.get(q-1).compareTo(ids.get(q))<0);
+        }
+    }
+    
+    @Test
+    public void footnoteReferencesInEmptyParagraphs() throws IOException {
+        DocumentIO io = load(newDocument(new String[0], new String[]{"Text"}, new String[0]));
+        io.addFootnote(newFootnotes(0, 3, 6));
+        assertEquals("*\nTe*xt\n*", getMarkedText(io, new ArrayList()));
+    }
+    
+    @Test
+    public void footnoteReferencesMatchAddingOneAtATime() throws IOException {
+        File file = newDocument(new String[]{"The ", "quick", " brown"}, 
+                new String[]{"fox ", "jumps"}, new String[]{"over"});
+        int[] positions = {20, 4, 0, 9, 15, 9, 21, 26, 3};
+        
+        DocumentIO all = load(file);
+        all.addFootnote(newFootnotes(positions));
+        
+        DocumentIO single = load(file);
+        for (Footnote footnote : newFootnotes(positions)){
+            single.addFootnote(footnote);
+        }
+        
+        assertEquals(getMarkedText(single, new ArrayList()), 
+                getMarkedText(all, new ArrayList()));
+    }
+
+}
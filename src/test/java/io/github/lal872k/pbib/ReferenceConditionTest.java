@@ -0,0 +1,127 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.util.BitSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * checks how <code>{@link lal.pbib.ReferenceCondition}</code> parses and evaluates the 
+ * conditions of if statements.
+ * @author L. Arthur Lewis II
+ */
+public class ReferenceConditionTest {
+    
+    private static final String[] NAMES = {"a", "b", "c", "ab"};
+    
+    /**
+     * @return whether the condition is true when only the given fields are filled in.
+     */
+    private static boolean isTrue(String condition, String... filled){
+        BitSet bits = new BitSet();
+        for (String name : filled){
+            for (int q = 0; q < NAMES.length; q++){
+                if (NAMES[q].equals(name)){
+                    bits.set(q);
+                }
+            }
+        }
+        return ReferenceCondition.parse(condition, NAMES).isTrue(bits);
+    }
+    
+    /**
+     * checks a condition against every way a, b and c can be filled in.
+     */
+    private static void assertMatches(String condition, Expected expected){
+        for (int q = 0; q < 8; q++){
+            boolean a = (q & 1)!=0, b = (q & 2)!=0, c = (q & 4)!=0;
+            BitSet bits = new BitSet();
+            bits.set(0, a);
+            bits.set(1, b);
+            bits.set(2, c);
+            assertEquals(condition+" with a="+a+" b="+b+" c="+c, expected.isTrue(a, b, c), 
+                    ReferenceCondition.parse(condition, NAMES).isTrue(bits));
+        }
+    }
+    
+    private interface Expected {
+        boolean isTrue(boolean a, boolean b, boolean c);
+    }
+    
+    @Test
+    public void andIsCheckedBeforeOr(){
+        assertMatches("a+b|c", (a, b, c) -> (a && b) || c);
+        assertMatches("c|a+b", (a, b, c) -> c || (a && b));
+        assertMatches("a|b+c", (a, b, c) -> a || (b && c));
+        assertTrue(isTrue("a+b|c", "c"));
+        assertFalse(isTrue("a+b|c", "a"));
+    }
+    
+    @Test
+    public void parenthesisAreCheckedFirst(){
+        assertMatches("a+(b|c)", (a, b, c) -> a && (b || c));
+        assertMatches("(a|b)+c", (a, b, c) -> (a || b) && c);
+        assertMatches("((a))", (a, b, c) -> a);
+    }
+    
+    @Test
+    public void inverse(){
+        assertMatches("!a", (a, b, c) -> !a);
+        assertMatches("!a+b", (a, b, c) -> !a && b);
+        assertMatches("!(a|b)", (a, b, c) -> !(a || b));
+        assertMatches("!!c", (a, b, c) -> c);
+    }
+    
+    @Test
+    public void spacesAreIgnored(){
+        assertMatches(" a + b | c ", (a, b, c) -> (a && b) || c);
+        assertMatches("! a", (a, b, c) -> !a);
+    }
+    
+    @Test
+    public void nameContainingAnotherName(){
+        assertTrue(isTrue("ab", "ab"));
+        assertFalse(isTrue("a", "ab"));
+        assertFalse(isTrue("ab", "a", "b"));
+        assertTrue(isTrue("!ab+a", "a"));
+    }
+    
+    @Test
+    public void unknownNameIsNeverFilled(){
+        assertFalse(isTrue("x", "a", "b", "c"));
+        assertTrue(isTrue("!x"));
+        assertTrue(isTrue("x|a", "a"));
+        assertFalse(isTrue("", "a"));
+    }
+    
+    @Test
+    public void missingParenthesisIsAtTheEnd(){
+        assertMatches("a+(b|c", (a, b, c) -> a && (b || c));
+        assertMatches("a)|c", (a, b, c) -> a);
+    }
+
+}
@@ -0,0 +1,180 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * checks that a snapshot written by <code>{@link lal.pbib.SourceLibraryCache}</code> reads back 
+ * as the same library, and that a snapshot which can't be used is ignored.
+ * @author L. Arthur Lewis II
+ */
+public class SourceLibraryCacheTest {
+    
+    private static final byte[] HASH = hash("library");
+    
+    private static byte[] hash(String text){
+        try {
+            return SourceLibraryCache.hash(new ByteArrayInputStream(
+                    text.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException ex){
+            throw new AssertionError(ex);
+        }
+    }
+    
+    /**
+     * @return a library with every kind of input and style and some missing strings.
+     */
+    private static SourceLibrary newLibrary(){
+        Source book = new Source("Book", "{@author}. {@title}.", "{@author}{?title:, }{@title}");
+        book.addInput(new InputDefinition("Author", "author", InputDefinition.Kind.TEXT, 
+                "Who wrote it", "Smith", true, false));
+        book.addInput(new InputDefinition("Title", "title", InputDefinition.Kind.TEXT, 
+                null, null, false, true));
+        book.addInput(new InputDefinition("Link", "link", InputDefinition.Kind.LINK, 
+                "", "http://example.com", true, true));
+        book.addInput(new InputDefinition("Date", "date", InputDefinition.Kind.DATE, 
+                "Écrit le", null, false, false));
+        Source empty = new Source("Empty", "x", "y");
+        
+        SourceLibrary lib = new SourceLibrary();
+        lib.addSource(new SourceCategory("Books", new Source[]{book, empty}));
+        lib.addSource(new SourceCategory(null, new Source[0]));
+        
+        SourceLibraryInfo info = new SourceLibraryInfo();
+        Contribution developers = new Contribution();
+        developers.setTitle("Developers");
+        developers.addContributer("A");
+        developers.addContributer(null);
+        info.addContribution(developers);
+        info.addContribution(new Contribution());
+        Update update = new Update();
+        update.setVersion("1.0");
+        update.setRelease("2016");
+        update.addBulletPoint("First");
+        update.addBulletPoint(null);
+        info.addUpdate(update);
+        info.addParagraph(new Paragraph("Hello", Paragraph.TextAlignment.JUSTIFIED, 
+                Paragraph.FontType.HEADER3, 20));
+        info.addParagraph(new Paragraph(null, Paragraph.TextAlignment.LEFT, 
+                Paragraph.FontType.REG, 0));
+        lib.setInfo(info);
+        return lib;
+    }
+    
+    private static SourceLibraryCache newCache() throws IOException {
+        File file = File.createTempFile("pbib", ".snapshot");
+        file.deleteOnExit();
+        return new SourceLibraryCache(file);
+    }
+    
+    /**
+     * @return index of the first byte of <code>part</code> in <code>data</code>.
+     */
+    private static int indexOf(byte[] data, byte[] part){
+        for (int q = 0; q <= data.length-part.length; q++){
+            if (Arrays.equals(Arrays.copyOfRange(data, q, q+part.length), part)){
+                return q;
+            }
+        }
+        throw new AssertionError("not found");
+    }
+    
+    @Test
+    public void roundTrip() throws IOException {
+        SourceLibrary lib = newLibrary();
+        SourceLibraryCache cache = newCache();
+        cache.write(lib, HASH);
+        SourceLibrary read = cache.read(HASH);
+        assertNotNull(read);
+        assertEquals(SourceLibraryReaderTest.describe(lib), 
+                SourceLibraryReaderTest.describe(read));
+        assertTrue(SourceLibraryReaderTest.describe(read).contains(
+                "  para null LEFT REG 0\n"));
+    }
+    
+    @Test
+    public void withoutLibraryInfo() throws IOException {
+        SourceLibrary lib = newLibrary();
+        lib.setInfo(null);
+        SourceLibraryCache cache = newCache();
+        cache.write(lib, HASH);
+        assertEquals(SourceLibraryReaderTest.describe(lib), 
+                SourceLibraryReaderTest.describe(cache.read(HASH)));
+    }
+    
+    @Test
+    public void wrongHash() throws IOException {
+        SourceLibraryCache cache = newCache();
+        cache.write(newLibrary(), HASH);
+        assertNull(cache.read(hash("other library")));
+    }
+    
+    @Test
+    public void missingSnapshot() throws IOException {
+        SourceLibraryCache cache = newCache();
+        assertTrue(cache.getFile().delete());
+        assertNull(cache.read(HASH));
+    }
+    
+    @Test
+    public void truncatedSnapshot() throws IOException {
+        SourceLibraryCache cache = newCache();
+        cache.write(newLibrary(), HASH);
+        byte[] data = Files.readAllBytes(cache.getFile().toPath());
+        // cut in the header, in the hash, and in the library itself
+        for (int length : new int[]{6, 20, data.length/2, data.length-1}){
+            Files.write(cache.getFile().toPath(), Arrays.copyOf(data, length));
+            assertNull("cut at "+length, cache.read(HASH));
+        }
+    }
+    
+    @Test
+    public void unknownKind() throws IOException {
+        SourceLibraryCache cache = newCache();
+        cache.write(newLibrary(), HASH);
+        byte[] data = Files.readAllBytes(cache.getFile().toPath());
+        // the kind is the byte after the name, which is written as its length and then its bytes
+        int kind = indexOf(data, new byte[]{0, 0, 0, 4, 'l', 'i', 'n', 'k'})+8;
+        assertEquals(InputDefinition.Kind.LINK.ordinal(), data[kind]);
+        data[kind] = (byte) InputDefinition.Kind.values().length;
+        Files.write(cache.getFile().toPath(), data);
+        assertNull(cache.read(HASH));
+        
+        data[kind] = -1;
+        Files.write(cache.getFile().toPath(), data);
+        assertNull(cache.read(HASH));
+    }
+
+}
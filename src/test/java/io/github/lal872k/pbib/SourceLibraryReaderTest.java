@@ -0,0 +1,248 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import nu.xom.ParsingException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * checks that <code>{@link lal.pbib.StreamingSourceLibraryReader}</code> reads a library the
+ * same as the XOM reader in <code>{@link lal.pbib.SourceLibraryReader}</code>, printing the 
+ * same errors for the parts that are invalid.
+ * @author L. Arthur Lewis II
+ */
+public class SourceLibraryReaderTest {
+    
+    /**
+     * a library with every kind of mistake the readers check for.
+     */
+    private static final String LIBRARY = 
+        "<sources>\n" + 
+        "  <cat title=\"Books\">\n" + 
+        "    <source title=\"Book\">\n" + 
+        "      <bib val=\"{@author}. {@title}.\"/>\n" + 
+        "      <foot val=\"{@author}{?title:, }{@title}\"/>\n" + 
+        "      <input>\n" + 
+        "        <text title=\"Author\" name=\"author\" bold=\"true\" desc=\"Who wrote it\" ex=\"Smith\"/>\n" + 
+        "        <text title=\"Title\" name=\"title\" italic=\"TRUE\"/>\n" + 
+        "        <link title=\"Link\" name=\"link\"/>\n" + 
+        "        <date title=\"Date\" name=\"date\" bold=\"no\"/>\n" + 
+        "        <text name=\"untitled\"/>\n" + 
+        "        <text title=\"No Name\"/>\n" + 
+        "        <text title=\"Bad Name\" name=\"a+b\"/>\n" + 
+        "        <color title=\"Color\" name=\"color\"/>\n" + 
+        "      </input>\n" + 
+        "    </source>\n" + 
+        "    <source><bib val=\"x\"/><foot val=\"x\"/><input/></source>\n" + 
+        "    <source title=\"No Bib\"><foot val=\"x\"/><input/></source>\n" + 
+        "    <source title=\"Bad Bib\"><bib val=\"{{@a}}\"/><foot val=\"x\"/><input/></source>\n" + 
+        "    <source title=\"No Foot\"><bib val=\"x\"/><input/></source>\n" + 
+        "    <source title=\"Bad Foot\"><bib val=\"x\"/><foot val=\"}\"/><input/></source>\n" + 
+        "    <source title=\"No Input\"><bib val=\"x\"/><foot val=\"x\"/></source>\n" + 
+        "    <source title=\"Twice\">\n" + 
+        "      <bib val=\"first\"/><bib val=\"second\"/><foot val=\"f\"/>\n" + 
+        "      <input><text title=\"A\" name=\"a\"/></input><input><text title=\"B\" name=\"b\"/></input>\n" + 
+        "      <other/>\n" + 
+        "    </source>\n" + 
+        "  </cat>\n" + 
+        "  <cat><source title=\"Untitled\"/></cat>\n" + 
+        "  <cat title=\"Empty\"><other/></cat>\n" + 
+        "  <cat title=\"Invalid\"><source title=\"Nothing\"/></cat>\n" + 
+        "  <libinfo>\n" + 
+        "    <title val=\"Test Library\"/>\n" + 
+        "    <contribution title=\"Developers\"><contributer name=\"A\"/><contributer name=\"B\"/></contribution>\n" + 
+        "    <contribution><contributer/></contribution>\n" + 
+        "    <updatehistory>\n" + 
+        "      <update rel=\"2016\" ver=\"1.0\"><bullet val=\"First\"/><bullet/></update>\n" + 
+        "      <update title=\"Second\"/>\n" + 
+        "    </updatehistory>\n" + 
+        "    <instructions>\n" + 
+        "      <para val=\"Hello\" alignment=\"CENTER\" indent=\"20\"/>\n" + 
+        "      <para/>\n" + 
+        "    </instructions>\n" + 
+        "  </libinfo>\n" + 
+        "  <libinfo><title val=\"Ignored\"/></libinfo>\n" + 
+        "</sources>\n";
+    
+    /**
+     * what was read and which errors were printed while reading it.
+     */
+    private static final class Read {
+        
+        private final String library;
+        private final String errors;
+        
+        Read(String library, String errors){
+            this.library = library;
+            this.errors = errors;
+        }
+    
+    }
+    
+    private static Read read(String xml, SourceLibraryReader.Parser parser) 
+            throws ParsingException, IOException {
+        return read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), parser);
+    }
+    
+    private static Read read(InputStream in, SourceLibraryReader.Parser parser) 
+            throws ParsingException, IOException {
+        BibConsole.setHeadless(true);
+        SourceLibraryReader.Parser before = SourceLibraryReader.getParser();
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setErr(new PrintStream(errors, true, "UTF-8"));
+            SourceLibraryReader.setParser(parser);
+            SourceLibrary library = SourceLibraryReader.loadSourceLibrary(in, "test.xml");
+            return new Read(describe(library), errors.toString("UTF-8"));
+        } finally {
+            System.setErr(err);
+            SourceLibraryReader.setParser(before);
+        }
+    }
+    
+    /**
+     * @return everything that was read from the library as text, one line per part.
+     */
+    static String describe(SourceLibrary library){
+        StringBuilder text = new StringBuilder();
+        for (SourceCategory category : library.getSources()){
+            text.append("category ").append(category.getTitle()).append('\n');
+            for (Source source : category.getSourceTypes()){
+                text.append("  source ").append(source.getTitle()).append(" bib=")
+                        .append(source.getBibCode()).append(" foot=")
+                        .append(source.getFootCode()).append('\n');
+                for (InputDefinition in : source.getInputDefinitions()){
+                    text.append("    ").append(in.getKind()).append(' ')
+                            .append(in.getTitle()).append(" name=").append(in.getName())
+                            .append(" desc=").append(in.getDescription())
+                            .append(" ex=").append(in.getExample())
+                            .append(" bold=").append(in.isBold())
+                            .append(" italic=").append(in.isItalic()).append('\n');
+                }
+            }
+        }
+        SourceLibraryInfo info = library.getInfo();
+        if (info==null){
+            return text.append("no info\n").toString();
+        }
+        text.append("info ").append(info.getTitle()).append('\n');
+        for (Contribution cont : info.getContributions()){
+            text.append("  contribution ").append(cont.getTitle())
+                    .append(cont.getContributers()).append('\n');
+        }
+        for (Update update : info.getUpdates()){
+            text.append("  update ").append(update.getTitle()).append(" rel=")
+                    .append(update.getRelease()).append(" ver=").append(update.getVersion())
+                    .append(update.getBulletPoints()).append('\n');
+        }
+        for (Paragraph para : info.getParagraphs()){
+            text.append("  para ").append(para.getText()).append(' ')
+                    .append(para.getTextAlignment()).append(' ').append(para.getFontType())
+                    .append(' ').append(para.getTextIndent()).append('\n');
+        }
+        return text.toString();
+    }
+    
+    private static void assertSameRead(String xml) throws ParsingException, IOException {
+        Read xom = read(xml, SourceLibraryReader.Parser.XOM);
+        Read stax = read(xml, SourceLibraryReader.Parser.STAX);
+        assertEquals(xom.library, stax.library);
+        assertEquals(xom.errors, stax.errors);
+    }
+    
+    @Test
+    public void invalidLibrary() throws ParsingException, IOException {
+        assertSameRead(LIBRARY);
+        
+        // the valid parts are kept
+        String library = read(LIBRARY, SourceLibraryReader.Parser.STAX).library;
+        assertEquals(
+                "category Books\n" + 
+                "  source Book bib={@author}. {@title}. foot={@author}{?title:, }{@title}\n" + 
+                "    TEXT Author name=author desc=Who wrote it ex=Smith bold=true italic=false\n" + 
+                "    TEXT Title name=title desc=null ex=null bold=false italic=true\n" + 
+                "    LINK Link name=link desc=null ex=null bold=false italic=false\n" + 
+                "    DATE Date name=date desc=null ex=null bold=false italic=false\n" + 
+                "  source Twice bib=first foot=f\n" + 
+                "    TEXT A name=a desc=null ex=null bold=false italic=false\n" + 
+                "category Invalid\n", 
+                library.substring(0, library.indexOf("info ")));
+        
+        String[] errors = {
+            "Input in Book is missing a title value.", 
+            "Input No Name is missing a name value.", 
+            "Input Bad Name is has an invalid name value.", 
+            "Input Color has an unknown type: color", 
+            "Source Type #2 in Books is missing a title attribute.", 
+            "Source Type No Bib is missing a <bib> node.", 
+            "Source Type Bad Bib has an invalid bibliography code: curly brackets inside curly brackets.", 
+            "Source Type No Foot is missing a <foot> node.", 
+            "Source Type Bad Foot has an invalid footnote code: to many closing brackets.", 
+            "Source Type No Input is missing a <input> node.", 
+            "Source #2 is missing a title attribute.", 
+            "Source #3 doesn't contain any source types.", 
+            "Source Type Nothing is missing a <bib> node."
+        };
+        assertEquals(String.join(System.lineSeparator(), errors)+System.lineSeparator(), 
+                read(LIBRARY, SourceLibraryReader.Parser.STAX).errors);
+    }
+    
+    @Test
+    public void libraryInfoWithoutTitleHistoryOrInstructions() 
+            throws ParsingException, IOException {
+        String xml = "<sources><libinfo><contribution title=\"Developers\"/></libinfo></sources>";
+        assertSameRead(xml);
+        assertEquals("info null\n  contribution Developers[]\n", 
+                read(xml, SourceLibraryReader.Parser.XOM).library);
+    }
+    
+    @Test
+    public void withoutLibraryInfo() throws ParsingException, IOException {
+        String xml = "<sources><cat title=\"Empty\"/></sources>";
+        assertSameRead(xml);
+        assertEquals("no info\n", read(xml, SourceLibraryReader.Parser.STAX).library);
+    }
+    
+    @Test
+    public void defaultLibrary() throws ParsingException, IOException {
+        Read xom, stax;
+        try (InputStream in = getClass().getResourceAsStream(SourceLibraryReader.DEFAULT_LIBRARY)){
+            xom = read(in, SourceLibraryReader.Parser.XOM);
+        }
+        try (InputStream in = getClass().getResourceAsStream(SourceLibraryReader.DEFAULT_LIBRARY)){
+            stax = read(in, SourceLibraryReader.Parser.STAX);
+        }
+        assertEquals(xom.library, stax.library);
+        assertEquals("", stax.errors);
+    }
+
+}
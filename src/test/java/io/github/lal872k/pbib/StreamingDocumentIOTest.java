@@ -0,0 +1,205 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import static io.github.lal872k.pbib.DocumentIOTest.getMarkedText;
+import static io.github.lal872k.pbib.DocumentIOTest.load;
+import static io.github.lal872k.pbib.DocumentIOTest.newCitation;
+import static io.github.lal872k.pbib.DocumentIOTest.newDocument;
+import static io.github.lal872k.pbib.DocumentIOTest.newFootnotes;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
+
+/**
+ * checks that <code>{@link lal.pbib.StreamingDocumentIO}</code> makes the same document as 
+ * <code>{@link lal.pbib.DocumentIO}</code>.
+ * @author L. Arthur Lewis II
+ */
+public class StreamingDocumentIOTest {
+    
+    private static final String[][] PARAGRAPHS = {
+        {"The ", "quick", " brown"}, 
+        {}, 
+        {"fox ", "jumps"}, 
+        {"over"}
+    };
+    
+    /**
+     * positions at the start and end of runs, in the middle of them, in the empty paragraph, 
+     * at the end of the last paragraph and past the end of the document.
+     */
+    private static final int[] POSITIONS = {0, 3, 4, 4, 9, 12, 15, 16, 17, 21, 26, 27, 31, 
+        32, 100};
+    
+    /**
+     * adds the footnotes and bibliography the same way 
+     * <code>{@link lal.pbib.DocumentSession}</code> does when it isn't streaming.
+     */
+    private static void writeInMemory(File file, Citation[] bibliography, 
+            Footnote[] footnotes) throws IOException {
+        DocumentIO io = load(file);
+        io.addFootnote(footnotes);
+        if (bibliography!=null){
+            io.addBibliography(bibliography);
+        }
+        io.setBackups(0);
+        io.saveDocument();
+    }
+    
+    private static void writeStreaming(File file, Citation[] bibliography, 
+            Footnote[] footnotes) throws IOException {
+        StreamingDocumentIO io = new StreamingDocumentIO(file);
+        io.setBackups(0);
+        io.write(bibliography, footnotes);
+    }
+    
+    private static File copy(File file) throws IOException {
+        File copy = File.createTempFile("pbib", ".docx");
+        copy.deleteOnExit();
+        Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+    
+    /**
+     * @return number of runs in each paragraph, so an empty run left behind shows up.
+     */
+    private static String getRunCounts(DocumentIO io){
+        DocumentPositionIndex index = io.getPositionIndex();
+        int[] counts = new int[index.getParagraphCount()];
+        for (int p = 0; p < counts.length; p++){
+            counts[p] = index.getParagraph(p).sizeOfRArray();
+        }
+        return Arrays.toString(counts);
+    }
+    
+    private static Citation[] newBibliography(){
+        Citation second = newCitation("Zebra");
+        second.setSourceType(Citation.TypeOfSource.SECONDARY);
+        return new Citation[]{newCitation("The Book"), second, newCitation("An Article")};
+    }
+    
+    @Test
+    public void sameAsInMemory() throws IOException {
+        File file = newDocument(PARAGRAPHS);
+        File memory = copy(file), streaming = copy(file);
+        writeInMemory(memory, newBibliography(), newFootnotes(POSITIONS));
+        writeStreaming(streaming, newBibliography(), newFootnotes(POSITIONS));
+        
+        DocumentIO expected = load(memory), actual = load(streaming);
+        assertEquals(getMarkedText(expected, new ArrayList()), 
+                getMarkedText(actual, new ArrayList()));
+        assertEquals(getRunCounts(expected), getRunCounts(actual));
+    }
+    
+    @Test
+    public void footnotesOnly() throws IOException {
+        File file = newDocument(PARAGRAPHS);
+        File memory = copy(file), streaming = copy(file);
+        writeInMemory(memory, null, newFootnotes(4, 9, 15, 21));
+        writeStreaming(streaming, null, newFootnotes(4, 9, 15, 21));
+        
+        DocumentIO actual = load(streaming);
+        assertEquals("The *quick* brown*\n\nfox *jumps\nover", 
+                getMarkedText(actual, new ArrayList()));
+        assertEquals("[6, 0, 3, 1]", getRunCounts(actual));
+        DocumentIO expected = load(memory);
+        assertEquals(getMarkedText(expected, new ArrayList()), 
+                getMarkedText(actual, new ArrayList()));
+        assertEquals(getRunCounts(expected), getRunCounts(actual));
+    }
+    
+    @Test
+    public void storedEntriesStayStored() throws IOException {
+        byte[] picture = new byte[20000];
+        new Random(1).nextBytes(picture);
+        CRC32 crc = new CRC32();
+        crc.update(picture);
+        
+        // the same document with a picture that isn't compressed
+        File file = newDocument(PARAGRAPHS);
+        File stored = copy(file);
+        try (ZipFile zip = new ZipFile(file); 
+                ZipOutputStream out = new ZipOutputStream(new FileOutputStream(stored))){
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()){
+                ZipEntry entry = entries.nextElement();
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                try (InputStream in = zip.getInputStream(entry)){
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer))!=-1){
+                        out.write(buffer, 0, read);
+                    }
+                }
+                out.closeEntry();
+            }
+            ZipEntry entry = new ZipEntry("word/media/image1.png");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(picture.length);
+            entry.setCompressedSize(picture.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(picture);
+            out.closeEntry();
+        }
+        
+        writeStreaming(stored, newBibliography(), newFootnotes(POSITIONS));
+        
+        try (ZipFile zip = new ZipFile(stored)){
+            ZipEntry entry = zip.getEntry("word/media/image1.png");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(picture.length, entry.getSize());
+            assertEquals(picture.length, entry.getCompressedSize());
+            assertEquals(crc.getValue(), entry.getCrc());
+            byte[] read = new byte[picture.length];
+            try (InputStream in = zip.getInputStream(entry)){
+                int length = 0, count;
+                while ((count = in.read(read, length, read.length-length))>0){
+                    length += count;
+                }
+                assertEquals(picture.length, length);
+            }
+            assertEquals(Arrays.toString(picture), Arrays.toString(read));
+            // the rewritten parts are still deflated
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("word/document.xml").getMethod());
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 L. Arthur Lewis II.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.lal872k.pbib.ui;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * checks the positions <code>{@link lal.pbib.ui.DocumentPages}</code> keeps against the 
+ * positions in the whole text.
+ * @author L. Arthur Lewis II
+ */
+public class DocumentPagesTest {
+    
+    /**
+     * @return a text over three pages with empty paragraphs on both sides of the first page 
+     * break and at the end.
+     */
+    private static String[] newParagraphs(){
+        String[] paragraphs = new String[2*DocumentPages.PAGE_SIZE+50];
+        for (int q = 0; q < paragraphs.length; q++){
+            boolean empty = q%7==0 || q==DocumentPages.PAGE_SIZE-1 || q==DocumentPages.PAGE_SIZE
+                    || q==paragraphs.length-1;
+            paragraphs[q] = empty ? "" : "paragraph "+q;
+        }
+        return paragraphs;
+    }
+    
+    /**
+     * @return position of the first character of the paragraph, counted from the text.
+     */
+    private static int getStart(String text, int paragraph){
+        int start = 0;
+        for (int q = 0; q < paragraph; q++){
+            start = text.indexOf('\n', start)+1;
+        }
+        return start;
+    }
+    
+    @Test
+    public void pageStarts(){
+        String text = String.join("\n", newParagraphs());
+        DocumentPages pages = new DocumentPages(text);
+        assertEquals(3, pages.getPageCount());
+        assertEquals(text.length(), pages.getLength());
+        for (int page = 0; page < pages.getPageCount(); page++){
+            int start = getStart(text, page*DocumentPages.PAGE_SIZE);
+            assertEquals(start, pages.getPageStart(page));
+            // the page text is everything up to the new line before the next page
+            int end = page+1 < pages.getPageCount() ? 
+                    pages.getPageStart(page+1)-1 : text.length();
+            assertEquals(text.substring(start, end), pages.getPageText(page));
+        }
+        assertEquals(text.length(), pages.getPageStart(pages.getPageCount()));
+    }
+    
+    @Test
+    public void findPage(){
+        String text = String.join("\n", newParagraphs());
+        DocumentPages pages = new DocumentPages(text);
+        // every position is on the page of the paragraph it's in or the new line after it
+        int paragraph = 0;
+        for (int position = 0; position <= text.length(); position++){
+            assertEquals("position "+position, DocumentPages.getPage(paragraph), 
+                    pages.findPage(position));
+            if (position < text.length() && text.charAt(position)=='\n'){
+                paragraph++;
+            }
+        }
+    }
+    
+    @Test
+    public void pageBreak(){
+        String text = String.join("\n", newParagraphs());
+        DocumentPages pages = new DocumentPages(text);
+        // the last paragraph of the first page is empty so it ends at its own new line
+        int newLine = getStart(text, DocumentPages.PAGE_SIZE)-1;
+        assertEquals('\n', text.charAt(newLine));
+        assertEquals(getStart(text, DocumentPages.PAGE_SIZE-1), newLine);
+        assertEquals(0, pages.findPage(newLine));
+        assertEquals(1, pages.findPage(newLine+1));
+        assertEquals(newLine+1, pages.getPageStart(1));
+        assertEquals(2, pages.findPage(text.length()));
+        assertEquals(2, pages.findPage(text.length()+1));
+    }
+    
+    @Test
+    public void emptyText(){
+        DocumentPages pages = new DocumentPages("");
+        assertEquals(1, pages.getParagraphCount());
+        assertEquals(1, pages.getPageCount());
+        assertEquals(0, pages.getPageStart(0));
+        assertEquals(0, pages.findPage(0));
+        assertEquals("", pages.getPageText(0));
+        
+        pages = new DocumentPages();
+        assertEquals(0, pages.getParagraphCount());
+        assertEquals(1, pages.getPageCount());
+        assertEquals(0, pages.getPageStart(0));
+        assertEquals(0, pages.findPage(0));
+        assertEquals("", pages.getPageText(0));
+        
+        pages = new DocumentPages("\n\n");
+        assertEquals(3, pages.getParagraphCount());
+        assertEquals(2, pages.getLength());
+        assertEquals("\n\n", pages.getPageText(0));
+    }
+    
+    @Test
+    public void addSameAsText(){
+        String[] paragraphs = newParagraphs();
+        String text = String.join("\n", paragraphs);
+        DocumentPages whole = new DocumentPages(text);
+        DocumentPages added = new DocumentPages();
+        for (int q = 0; q < paragraphs.length; q++){
+            added.add(paragraphs[q]);
+            assertEquals(q+1, added.getParagraphCount());
+            assertEquals(getStart(text, q)+paragraphs[q].length(), added.getLength());
+        }
+        assertEquals(whole.getParagraphCount(), added.getParagraphCount());
+        assertEquals(whole.getPageCount(), added.getPageCount());
+        assertEquals(whole.getLength(), added.getLength());
+        for (int page = 0; page <= whole.getPageCount(); page++){
+            assertEquals(whole.getPageStart(page), added.getPageStart(page));
+            assertEquals(whole.getPageText(page), added.getPageText(page));
+        }
+        for (int position = 0; position <= text.length(); position++){
+            assertEquals(whole.findPage(position), added.findPage(position));
+        }
+    }
+
+}